@@ -0,0 +1,91 @@
+package benchmark;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.pattern.PatternsCS;
+import akka.util.Timeout;
+import com.typesafe.config.ConfigFactory;
+import group.enums.DeviceStorage;
+import manager.DeviceManager;
+import manager.DeviceManagerRouter;
+import persistence.EventJournal;
+import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-process fleet of homes x devicesPerHome, created through the same messages the routes send.
+ */
+final class Fleet {
+
+    static final Timeout TIMEOUT = new Timeout(Duration.create(30, TimeUnit.SECONDS));
+
+    final ActorSystem system;
+    final DeviceManagerRouter deviceManagers;
+    final List<String> homeNames = new ArrayList<>();
+    final List<String> deviceNames = new ArrayList<>();
+
+    Fleet(int homes, int devicesPerHome, DeviceStorage storage) throws Exception {
+        this(homes, devicesPerHome, storage, "");
+    }
+
+    Fleet(int homes, int devicesPerHome, DeviceStorage storage, String config) throws Exception {
+        this(homes, devicesPerHome, storage, config, null);
+    }
+
+    /**
+     * With a persistence directory every change is journaled there, as with iot.persistence.enabled.
+     */
+    Fleet(int homes, int devicesPerHome, DeviceStorage storage, String config, File persistenceDirectory) throws Exception {
+        system = ActorSystem.create("benchmark", ConfigFactory.parseString(config)
+                .withFallback(ConfigFactory.parseString(
+                        "akka.loglevel = WARNING\n" +
+                        "iot.persistence.enabled = false\n" +
+                        "iot.persistence.reading-log.enabled = false\n" +
+                        "iot.persistence.directory = \"" + persistenceDirectory + "\"\n"))
+                .withFallback(ConfigFactory.load()));
+        deviceManagers = DeviceManagerRouter.create(system, persistenceDirectory == null
+                ? EventJournal.disabled()
+                : EventJournal.start(system, EventJournal.recover(system)));
+
+        for (int device = 0; device < devicesPerHome; device++) {
+            deviceNames.add("device-" + device);
+        }
+
+        for (int home = 0; home < homes; home++) {
+            String homeName = "home-" + home;
+            homeNames.add(homeName);
+
+            await(ask(homeName, new DeviceManager.CreateHome(homeName, deviceNames, storage)));
+        }
+    }
+
+    CompletionStage<Object> ask(String homeName, Object message) {
+        ActorRef shard = deviceManagers.forHome(homeName);
+
+        return PatternsCS.ask(shard, message, TIMEOUT);
+    }
+
+    Map<String, Double> increments(double increment) {
+        Map<String, Double> deviceToTemperature = new HashMap<>(deviceNames.size() * 2);
+
+        deviceNames.forEach(device -> deviceToTemperature.put(device, increment));
+
+        return deviceToTemperature;
+    }
+
+    static <T> T await(CompletionStage<T> stage) throws Exception {
+        return stage.toCompletableFuture().get(TIMEOUT.duration().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    void shutdown() throws Exception {
+        Await.result(system.terminate(), TIMEOUT.duration());
+    }
+}
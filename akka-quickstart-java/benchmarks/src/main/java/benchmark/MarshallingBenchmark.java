@@ -0,0 +1,85 @@
+package benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import manager.DeviceManager;
+import model.Temperatures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The JSON work Jackson.marshaller() and Jackson.unmarshaller() do for GET /iot and POST /iot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarshallingBenchmark {
+
+    @Param({"10", "100"})
+    public int homes;
+
+    @Param({"10", "100", "1000"})
+    public int devicesPerHome;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectReader temperaturesReader = objectMapper.readerFor(Temperatures.class);
+
+    private DeviceManager.RespondDevicesInHome devicesInHome;
+    private Temperatures temperatures;
+    private byte[] temperaturesJson;
+
+    @Setup(Level.Trial)
+    public void createPayloads() throws Exception {
+        Map<String, List<Map.Entry<String, Double>>> homeToDevices = new HashMap<>();
+        Map<String, Double> deviceToTemperature = new HashMap<>();
+
+        for (int device = 0; device < devicesPerHome; device++) {
+            deviceToTemperature.put("device-" + device, 20.0 + device % 10);
+        }
+
+        for (int home = 0; home < homes; home++) {
+            List<Map.Entry<String, Double>> devices = new ArrayList<>();
+            deviceToTemperature.forEach((device, value) -> devices.add(new AbstractMap.SimpleEntry<>(device, value)));
+            homeToDevices.put("home-" + home, devices);
+        }
+
+        devicesInHome = new DeviceManager.RespondDevicesInHome(homeToDevices);
+        temperatures = new Temperatures("home-0", deviceToTemperature);
+        temperaturesJson = objectMapper.writeValueAsBytes(temperatures);
+    }
+
+    @Benchmark
+    public byte[] writeDevicesInHomes() throws Exception {
+        return objectMapper.writeValueAsBytes(devicesInHome.getHomeToDevices());
+    }
+
+    @Benchmark
+    public byte[] writeTemperatures() throws Exception {
+        return objectMapper.writeValueAsBytes(temperatures);
+    }
+
+    @Benchmark
+    public Temperatures readTemperatures() throws Exception {
+        return temperaturesReader.readValue(temperaturesJson);
+    }
+}
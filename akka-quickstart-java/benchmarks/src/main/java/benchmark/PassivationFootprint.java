@@ -0,0 +1,117 @@
+package benchmark;
+
+import group.enums.DeviceStorage;
+import manager.DeviceManager;
+import metrics.IotMetrics;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap used by a fleet with every home running, once every home has been passivated, and again once
+ * every home has been started by a read, with the time those first reads took.
+ *
+ * java -cp target/benchmarks.jar benchmark.PassivationFootprint 10000 100 ACTORS
+ *
+ * Every change is journaled as with persistence.conf, so the heap includes the journal's view
+ * of every home, which passivation does not shrink. Pass no-journal as the fourth argument to leave it out.
+ *
+ * Best run with a fixed heap (-Xms = -Xmx) so that the used heap after a full GC is comparable.
+ */
+public class PassivationFootprint {
+
+    private static final long IDLE_SECONDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int homes = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int devicesPerHome = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        DeviceStorage storage = args.length > 2 ? DeviceStorage.valueOf(args[2]) : DeviceStorage.ACTORS;
+        boolean journal = args.length <= 3 || !"no-journal".equals(args[3]);
+        File persistenceDirectory = journal ? Files.createTempDirectory("passivation-footprint").toFile() : null;
+
+        Fleet fleet = new Fleet(homes, devicesPerHome, storage,
+                "iot.passivation.idle-timeout = " + IDLE_SECONDS + "s\n" +
+                "iot.heating.periodic = false\n",
+                persistenceDirectory);
+
+        try {
+            //Every device gets a reading, so the packed state holds them all
+            setTemperatures(fleet);
+            long running = usedHeap();
+
+            awaitPassivated(fleet, homes);
+            long passivated = usedHeap();
+            long packed = IotMetrics.PASSIVATED_HOMES.get();
+
+            long start = System.nanoTime();
+            readAll(fleet);
+            long rehydrationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            long rehydrated = usedHeap();
+
+            System.out.println(String.format("homes=%d devicesPerHome=%d storage=%s journal=%s",
+                    homes, devicesPerHome, storage, journal));
+            System.out.println(String.format("running     %,d KB", running / 1024));
+            System.out.println(String.format("passivated  %,d KB (%d homes packed)", passivated / 1024, packed));
+            System.out.println(String.format("rehydrated  %,d KB in %d ms, %.1f us per home", rehydrated / 1024,
+                    rehydrationMillis, rehydrationMillis * 1000.0 / homes));
+        } finally {
+            fleet.shutdown();
+
+            if (persistenceDirectory != null) {
+                for (File file : persistenceDirectory.listFiles()) {
+                    Files.delete(file.toPath());
+                }
+                Files.delete(persistenceDirectory.toPath());
+            }
+        }
+    }
+
+    private static void setTemperatures(Fleet fleet) throws Exception {
+        List<CompletableFuture<Object>> replies = new ArrayList<>(fleet.homeNames.size());
+
+        for (String homeName : fleet.homeNames) {
+            replies.add(fleet.ask(homeName, new DeviceManager.SetTemperatures(homeName, fleet.increments(21.0)))
+                    .toCompletableFuture());
+        }
+
+        Fleet.await(CompletableFuture.allOf(replies.toArray(new CompletableFuture<?>[0])));
+    }
+
+    private static void readAll(Fleet fleet) throws Exception {
+        List<CompletableFuture<Object>> replies = new ArrayList<>(fleet.homeNames.size());
+
+        for (String homeName : fleet.homeNames) {
+            replies.add(fleet.ask(homeName, new DeviceManager.GetHomeTemperature(homeName)).toCompletableFuture());
+        }
+
+        Fleet.await(CompletableFuture.allOf(replies.toArray(new CompletableFuture<?>[0])));
+    }
+
+    private static void awaitPassivated(Fleet fleet, int homes) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(IDLE_SECONDS * 2 + homes / 1000);
+
+        while (IotMetrics.PASSIVATED_HOMES.get() < homes || IotMetrics.LIVE_HOMES.get() > 0) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Only " + IotMetrics.PASSIVATED_HOMES.get() + " of "
+                        + homes + " homes passivated in time");
+            }
+
+            Thread.sleep(100);
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,84 @@
+package benchmark;
+
+import group.enums.DeviceStorage;
+import manager.DeviceManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips through the actors for the read and write paths of the routes.
+ * Each benchmark picks a random home so that all homes of the fleet stay warm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+
+    @Param({"10", "100"})
+    public int homes;
+
+    @Param({"10", "100", "1000"})
+    public int devicesPerHome;
+
+    @Param({"ACTORS", "COLUMNAR"})
+    public DeviceStorage storage;
+
+    private Fleet fleet;
+
+    @Setup(Level.Trial)
+    public void createFleet() throws Exception {
+        fleet = new Fleet(homes, devicesPerHome, storage);
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdownFleet() throws Exception {
+        fleet.shutdown();
+    }
+
+    private String randomHome() {
+        return fleet.homeNames.get(ThreadLocalRandom.current().nextInt(homes));
+    }
+
+    @Benchmark
+    public Object homeTemperatureFromSnapshot() throws Exception {
+        String homeName = randomHome();
+
+        return Fleet.await(fleet.ask(homeName, new DeviceManager.GetHomeTemperature(homeName)));
+    }
+
+    @Benchmark
+    public Object homeTemperatureFromDevices() throws Exception {
+        String homeName = randomHome();
+
+        return Fleet.await(fleet.ask(homeName, new DeviceManager.GetHomeTemperature(homeName, 0L)));
+    }
+
+    @Benchmark
+    public Object addTemperatures() throws Exception {
+        String homeName = randomHome();
+
+        return Fleet.await(fleet.ask(homeName, new DeviceManager.SetTemperatures(homeName, fleet.increments(0.0))));
+    }
+
+    @Benchmark
+    public Object allDevicesInHomes() throws Exception {
+        return Fleet.await(fleet.deviceManagers.getDevicesInHomes(Fleet.TIMEOUT));
+    }
+}
@@ -0,0 +1,104 @@
+package benchmark;
+
+import device.temperature.CompressedSeries;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compression and scan speed of the long term series of one device over 30 days of readings,
+ * as an indoor sensor reports them: every interval seconds with some jitter, the temperature moving
+ * by half a degree now and then. Setup prints the readings, the bytes per reading and the ratio
+ * against 16 bytes per raw reading. encode and scan handle the whole series per operation, so the
+ * readings per second are the score times the readings printed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SeriesBenchmark {
+
+    private static final long DAYS = 30;
+
+    @Param({"10", "60"})
+    public int intervalSeconds;
+
+    private final CompressedSeries.Settings settings =
+            new CompressedSeries.Settings(TimeUnit.HOURS.toMillis(2), TimeUnit.DAYS.toMillis(90));
+
+    private long[] timestamps;
+    private double[] values;
+    private CompressedSeries series;
+
+    @Setup(Level.Trial)
+    public void createReadings() {
+        final int points = (int) (TimeUnit.DAYS.toSeconds(DAYS) / intervalSeconds);
+        final Random random = new Random(42);
+
+        timestamps = new long[points];
+        values = new double[points];
+
+        long timestamp = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(DAYS);
+        double value = 21.0;
+        for (int i = 0; i < points; i++) {
+            timestamp += TimeUnit.SECONDS.toMillis(intervalSeconds) + (random.nextInt(10) == 0 ? random.nextInt(2000) : 0);
+            if (random.nextInt(20) == 0) {
+                value += random.nextBoolean() ? 0.5 : -0.5;
+            }
+
+            timestamps[i] = timestamp;
+            values[i] = value;
+        }
+
+        series = record();
+
+        System.out.println(String.format("%n%d readings in %d bytes, %.2f bytes per reading, %.1fx smaller than raw",
+                series.count(), series.sizeInBytes(), (double) series.sizeInBytes() / series.count(),
+                16.0 * series.count() / series.sizeInBytes()));
+    }
+
+    private CompressedSeries record() {
+        CompressedSeries recorded = new CompressedSeries(settings);
+
+        for (int i = 0; i < timestamps.length; i++) {
+            recorded.record(timestamps[i], values[i]);
+        }
+
+        return recorded;
+    }
+
+    @Benchmark
+    public CompressedSeries encode() {
+        return record();
+    }
+
+    @Benchmark
+    public void scan(Blackhole blackhole) {
+        series.scan(Long.MIN_VALUE, Long.MAX_VALUE, (timestamp, value) -> {
+            blackhole.consume(timestamp);
+            blackhole.consume(value);
+        });
+    }
+
+    @Benchmark
+    public Object rangeOfOneDay() {
+        final long to = timestamps[timestamps.length - 1];
+
+        return series.range(to - TimeUnit.DAYS.toMillis(1), to, TimeUnit.HOURS.toMillis(1));
+    }
+}
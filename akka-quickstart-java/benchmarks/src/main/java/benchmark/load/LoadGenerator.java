@@ -0,0 +1,301 @@
+package benchmark.load;
+
+import akka.actor.ActorSystem;
+import akka.http.javadsl.Http;
+import akka.http.javadsl.ServerBinding;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.HttpResponse;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.stream.ThrottleMode;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import manager.DeviceManagerRouter;
+import model.Home;
+import model.Temperatures;
+import persistence.EventJournal;
+import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+import server.IotServer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * End to end load against the routes. For every combination of homes and devices per home it starts
+ * a fresh server in-process on a free port, creates the homes through POST /api/home, then sends the
+ * configured mix of requests at a fixed rate and prints latency percentiles and failures per route.
+ *
+ * java -cp target/benchmarks.jar benchmark.load.LoadGenerator --homes=10,100,1000 --devices=10,100 --rate=2000
+ *
+ * The rate is open loop up to --in-flight outstanding requests, past that the generator waits for
+ * responses, so a saturated server shows up as a lower achieved rate as well as higher latencies.
+ *
+ * --dispatchers=bulkhead,shared runs every combination twice: with the dispatchers shipped in
+ * application.conf, and with every group of actors on the default dispatcher. Heating fan-out against
+ * cheap reads shows what the separate pools buy in tail latency:
+ *
+ * java -cp target/benchmarks.jar benchmark.load.LoadGenerator --homes=1000 --devices=100 \
+ *     --mix=heating:20,get-heating:80 --dispatchers=bulkhead,shared
+ *
+ * --targets=http://127.0.0.1:8082,http://127.0.0.1:8083 drives servers that are already running,
+ * such as the nodes of a cluster, instead of starting one in-process, spreading the requests over
+ * every target. scripts/cluster-load.sh in the application uses it to compare cluster sizes.
+ */
+public class LoadGenerator {
+
+    private static final String SERVER_CONFIG =
+            "akka.loglevel = WARNING\n" +
+            "iot.persistence.enabled = false\n";
+
+    private static final String SHARED_DISPATCHER_CONFIG =
+            "iot.dispatchers.http = akka.actor.default-dispatcher\n" +
+            "iot.dispatchers.manager = akka.actor.default-dispatcher\n" +
+            "iot.dispatchers.homes = akka.actor.default-dispatcher\n" +
+            "iot.dispatchers.queries = akka.actor.default-dispatcher\n" +
+            "iot.dispatchers.journal = akka.actor.default-dispatcher\n";
+
+    private static final String CLIENT_CONFIG =
+            "akka.loglevel = WARNING\n" +
+            "akka.http.host-connection-pool.max-connections = 64\n" +
+            "akka.http.host-connection-pool.max-open-requests = 1024\n";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LoadSettings settings;
+    private final ActorSystem client;
+    private final Materializer materializer;
+
+    private LoadGenerator(LoadSettings settings, ActorSystem client) {
+        this.settings = settings;
+        this.client = client;
+        this.materializer = ActorMaterializer.create(client);
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadSettings settings = LoadSettings.parse(args);
+        ActorSystem client = ActorSystem.create("load-client",
+                ConfigFactory.parseString(CLIENT_CONFIG).withFallback(ConfigFactory.load()));
+
+        try {
+            LoadGenerator generator = new LoadGenerator(settings, client);
+
+            if (settings.targets.length > 0) {
+                for (int homes : settings.homes) {
+                    for (int devicesPerHome : settings.devicesPerHome) {
+                        generator.measure("targets=" + settings.targets.length,
+                                Arrays.asList(settings.targets), homes, devicesPerHome);
+                    }
+                }
+
+                return;
+            }
+
+            for (String dispatchers : settings.dispatchers) {
+                for (int homes : settings.homes) {
+                    for (int devicesPerHome : settings.devicesPerHome) {
+                        generator.run(dispatchers, homes, devicesPerHome);
+                    }
+                }
+            }
+        } finally {
+            Await.result(client.terminate(), Duration.create(30, TimeUnit.SECONDS));
+        }
+    }
+
+    private void run(String dispatchers, int homes, int devicesPerHome) throws Exception {
+        Config serverConfig = ConfigFactory.parseString(SERVER_CONFIG).withFallback(ConfigFactory.load());
+
+        if (dispatchers.equals("shared")) {
+            serverConfig = ConfigFactory.parseString(SHARED_DISPATCHER_CONFIG).withFallback(serverConfig);
+        } else if (!dispatchers.equals("bulkhead")) {
+            throw new IllegalArgumentException("Unknown dispatchers " + dispatchers + ", expected bulkhead or shared");
+        }
+
+        ActorSystem server = ActorSystem.create("iot-system", serverConfig);
+
+        try {
+            DeviceManagerRouter deviceManagers = DeviceManagerRouter.create(server, EventJournal.disabled());
+            ServerBinding binding = new IotServer(server, deviceManagers)
+                    .bind(server, "localhost", 0)
+                    .toCompletableFuture()
+                    .get(10, TimeUnit.SECONDS);
+
+            measure("dispatchers=" + dispatchers,
+                    Collections.singletonList("http://localhost:" + binding.localAddress().getPort()), homes, devicesPerHome);
+
+            binding.unbind().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        } finally {
+            Await.result(server.terminate(), Duration.create(30, TimeUnit.SECONDS));
+        }
+    }
+
+    private void measure(String label, List<String> baseUris, int homes, int devicesPerHome) throws Exception {
+        List<String> deviceNames = deviceNames(devicesPerHome);
+        //Running servers keep the homes of the previous combinations, so every combination gets its own names
+        List<String> homeNames = createHomes(baseUris.get(0), "home-" + homes + "x" + devicesPerHome + "-", homes, deviceNames);
+
+        //Warm up with the same load, then measure
+        drive(baseUris, homeNames, deviceNames, settings.warmupSeconds);
+        Map<LoadOperation, RouteStats> stats = drive(baseUris, homeNames, deviceNames, settings.seconds);
+
+        print(label, homes, devicesPerHome, stats);
+    }
+
+    private static List<String> deviceNames(int devicesPerHome) {
+        List<String> deviceNames = new ArrayList<>(devicesPerHome);
+
+        for (int device = 0; device < devicesPerHome; device++) {
+            deviceNames.add("device-" + device);
+        }
+
+        return deviceNames;
+    }
+
+    private List<String> createHomes(String baseUri, String prefix, int homes, List<String> deviceNames) throws Exception {
+        List<String> homeNames = new ArrayList<>(homes);
+
+        for (int home = 0; home < homes; home++) {
+            String homeName = prefix + home;
+            homeNames.add(homeName);
+
+            HttpResponse response = send(HttpRequest.POST(baseUri + "/api/home")
+                    .withEntity(ContentTypes.APPLICATION_JSON,
+                            objectMapper.writeValueAsBytes(new Home(homeName, deviceNames))))
+                    .toCompletableFuture()
+                    .get(30, TimeUnit.SECONDS);
+
+            if (response.status().intValue() != 200) {
+                throw new IllegalStateException("Creating " + homeName + " failed with " + response.status());
+            }
+        }
+
+        return homeNames;
+    }
+
+    private Map<LoadOperation, RouteStats> drive(List<String> baseUris,
+                                                 List<String> homeNames,
+                                                 List<String> deviceNames,
+                                                 int seconds) throws Exception {
+        final Map<LoadOperation, RouteStats> stats = new EnumMap<>(LoadOperation.class);
+        settings.mix.keySet().forEach(operation -> stats.put(operation, new RouteStats()));
+
+        final List<LoadOperation> weightedOperations = new ArrayList<>();
+        settings.mix.forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                weightedOperations.add(operation);
+            }
+        });
+
+        Source.repeat(1)
+                .take((long) settings.rate * seconds)
+                .throttle(settings.rate, FiniteDuration.create(1, TimeUnit.SECONDS), settings.rate, ThrottleMode.shaping())
+                .mapAsyncUnordered(settings.maxInFlight, tick -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    LoadOperation operation = weightedOperations.get(random.nextInt(weightedOperations.size()));
+                    String homeName = homeNames.get(random.nextInt(homeNames.size()));
+                    String baseUri = baseUris.get(random.nextInt(baseUris.size()));
+
+                    return timed(request(baseUri, operation, homeName, deviceNames), stats.get(operation));
+                })
+                .runWith(Sink.ignore(), materializer)
+                .toCompletableFuture()
+                .get(seconds * 10L + 60, TimeUnit.SECONDS);
+
+        return stats;
+    }
+
+    private HttpRequest request(String baseUri, LoadOperation operation, String homeName, List<String> deviceNames)
+            throws Exception {
+        switch (operation) {
+            case POST_TEMPERATURES:
+                Map<String, Double> deviceToTemperature = new HashMap<>();
+                deviceNames.forEach(device -> deviceToTemperature.put(device, 0.0));
+
+                return HttpRequest.POST(baseUri + "/iot")
+                        .withEntity(ContentTypes.APPLICATION_JSON,
+                                objectMapper.writeValueAsBytes(new Temperatures(homeName, deviceToTemperature)));
+            case GET_HOME_TEMPERATURE:
+                return HttpRequest.GET(baseUri + "/api/home/" + homeName + "/temperature");
+            case GET_ALL_HOMES:
+                return HttpRequest.GET(baseUri + "/iot");
+            case PUT_HEATING:
+                return HttpRequest.PUT(baseUri + "/iot/heating");
+            case GET_HOME_HEATING:
+                return HttpRequest.GET(baseUri + "/api/home/" + homeName + "/heating");
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    private CompletionStage<Object> timed(HttpRequest request, RouteStats stats) {
+        final long start = System.nanoTime();
+
+        return send(request)
+                .thenCompose(response -> response.entity()
+                        .toStrict(settings.requestTimeoutMillis, materializer)
+                        .thenApply(entity -> response.status().isSuccess()))
+                .handle((success, failure) -> {
+                    if (failure != null) {
+                        if (isTimeout(failure)) {
+                            stats.timeout();
+                        } else {
+                            stats.error();
+                        }
+                    } else if (success) {
+                        stats.success((System.nanoTime() - start) / 1000);
+                    } else {
+                        stats.error();
+                    }
+
+                    return null;
+                });
+    }
+
+    private CompletionStage<HttpResponse> send(HttpRequest request) {
+        CompletableFuture<HttpResponse> response = Http.get(client)
+                .singleRequest(request, materializer)
+                .toCompletableFuture();
+
+        client.scheduler().scheduleOnce(
+                FiniteDuration.create(settings.requestTimeoutMillis, TimeUnit.MILLISECONDS),
+                () -> response.completeExceptionally(new TimeoutException("No response in time")),
+                client.dispatcher());
+
+        return response;
+    }
+
+    private static boolean isTimeout(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+
+        return cause instanceof TimeoutException
+                || cause.getClass().getSimpleName().contains("Timeout");
+    }
+
+    private void print(String label, int homes, int devicesPerHome, Map<LoadOperation, RouteStats> stats) {
+        System.out.println();
+        System.out.println(String.format("%s homes=%d devicesPerHome=%d rate=%d/s seconds=%d",
+                label, homes, devicesPerHome, settings.rate, settings.seconds));
+        System.out.println(RouteStats.header());
+
+        stats.forEach((operation, routeStats) -> System.out.println(routeStats.format(operation.getRoute())));
+
+        long answered = stats.values().stream().mapToLong(RouteStats::successes).sum();
+        System.out.println(String.format("achieved %.1f requests/s", (double) answered / settings.seconds));
+    }
+}
@@ -0,0 +1,30 @@
+package benchmark.load;
+
+import java.util.Arrays;
+
+enum LoadOperation {
+    POST_TEMPERATURES("post", "POST /iot"),
+    GET_HOME_TEMPERATURE("temperature", "GET /api/home/{h}/temperature"),
+    GET_ALL_HOMES("all", "GET /iot"),
+    PUT_HEATING("heating", "PUT /iot/heating"),
+    GET_HOME_HEATING("get-heating", "GET /api/home/{h}/heating");
+
+    private final String name;
+    private final String route;
+
+    LoadOperation(String name, String route) {
+        this.name = name;
+        this.route = route;
+    }
+
+    String getRoute() {
+        return route;
+    }
+
+    static LoadOperation fromName(String name) {
+        return Arrays.stream(values())
+                .filter(operation -> operation.name.equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown operation " + name));
+    }
+}
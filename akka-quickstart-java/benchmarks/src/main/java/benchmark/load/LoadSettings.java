@@ -0,0 +1,86 @@
+package benchmark.load;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Command line settings of the load generator, given as --name=value.
+ */
+final class LoadSettings {
+
+    int[] homes = {10, 100};
+    int[] devicesPerHome = {10, 100};
+    int rate = 500;
+    int seconds = 20;
+    int warmupSeconds = 5;
+    int maxInFlight = 256;
+    long requestTimeoutMillis = 5000;
+    String[] dispatchers = {"bulkhead"};
+    String[] targets = {};
+    final Map<LoadOperation, Integer> mix = new LinkedHashMap<>();
+
+    private LoadSettings() {
+        mix.put(LoadOperation.POST_TEMPERATURES, 40);
+        mix.put(LoadOperation.GET_HOME_TEMPERATURE, 40);
+        mix.put(LoadOperation.GET_ALL_HOMES, 10);
+        mix.put(LoadOperation.PUT_HEATING, 10);
+    }
+
+    static LoadSettings parse(String[] args) {
+        LoadSettings settings = new LoadSettings();
+        Map<String, String> values = new HashMap<>();
+
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+
+            values.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+
+        if (values.containsKey("homes")) {
+            settings.homes = parseInts(values.get("homes"));
+        }
+        if (values.containsKey("devices")) {
+            settings.devicesPerHome = parseInts(values.get("devices"));
+        }
+        if (values.containsKey("rate")) {
+            settings.rate = Integer.parseInt(values.get("rate"));
+        }
+        if (values.containsKey("seconds")) {
+            settings.seconds = Integer.parseInt(values.get("seconds"));
+        }
+        if (values.containsKey("warmup")) {
+            settings.warmupSeconds = Integer.parseInt(values.get("warmup"));
+        }
+        if (values.containsKey("in-flight")) {
+            settings.maxInFlight = Integer.parseInt(values.get("in-flight"));
+        }
+        if (values.containsKey("timeout")) {
+            settings.requestTimeoutMillis = Long.parseLong(values.get("timeout"));
+        }
+        if (values.containsKey("dispatchers")) {
+            settings.dispatchers = values.get("dispatchers").split(",");
+        }
+        if (values.containsKey("targets")) {
+            settings.targets = values.get("targets").split(",");
+        }
+        if (values.containsKey("mix")) {
+            settings.mix.clear();
+
+            //e.g. --mix=post:40,temperature:40,all:10,heating:10
+            for (String weight : values.get("mix").split(",")) {
+                String[] operationAndWeight = weight.split(":");
+                settings.mix.put(LoadOperation.fromName(operationAndWeight[0]), Integer.parseInt(operationAndWeight[1]));
+            }
+        }
+
+        return settings;
+    }
+
+    private static int[] parseInts(String value) {
+        return Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+}
@@ -0,0 +1,58 @@
+package benchmark.load;
+
+import java.util.Arrays;
+
+/**
+ * Latencies and failures of one route during a measurement. Latencies are kept exactly
+ * (in microseconds) and sorted once when the report is printed.
+ */
+final class RouteStats {
+
+    private long[] latencies = new long[1024];
+    private int count = 0;
+    private long errors = 0;
+    private long timeouts = 0;
+
+    synchronized void success(long latencyMicros) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = latencyMicros;
+    }
+
+    synchronized long successes() {
+        return count;
+    }
+
+    synchronized void error() {
+        errors++;
+    }
+
+    synchronized void timeout() {
+        timeouts++;
+    }
+
+    synchronized String format(String route) {
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+
+        return String.format("%-32s %9d %7d %8d %9.2f %9.2f %9.2f",
+                route, count, errors, timeouts,
+                percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999));
+    }
+
+    static String header() {
+        return String.format("%-32s %9s %7s %8s %9s %9s %9s",
+                "route", "ok", "errors", "timeouts", "p50 ms", "p99 ms", "p999 ms");
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+
+        return sorted[Math.max(index, 0)] / 1000.0;
+    }
+}
@@ -0,0 +1,103 @@
+#!/usr/bin/env bash
+# Multi-node load test of cluster mode on one Linux host. For every cluster size in NODES it starts that
+# many IotMain JVMs with cluster.conf on 127.0.0.1, waits until all of them are Up, drives them with the
+# load generator spreading the requests over every node, then stops the cluster. With a rate above what
+# one node sustains, "achieved ... requests/s" grows with the number of nodes.
+#
+# Build first, from the application directory:
+#   mvn package dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+#   (cd benchmarks && mvn package)
+# Then:
+#   scripts/cluster-load.sh --homes=1000 --devices=10
+#   NODES="1 2 3 4" RATE=40000 HEAP=2g scripts/cluster-load.sh --homes=1000 --devices=100
+# Any option is passed on to benchmark.load.LoadGenerator. Node logs and results go to target/cluster-load.
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+NODES=${NODES:-"1 2 4"}
+RATE=${RATE:-20000}
+HEAP=${HEAP:-1g}
+FIRST_REMOTE_PORT=2551
+FIRST_HTTP_PORT=8082
+APP_CLASSPATH="target/classes:$(cat target/classpath.txt)"
+LOAD_JAR=benchmarks/target/benchmarks.jar
+OUT=target/cluster-load
+
+mkdir -p "$OUT"
+rm -f "$OUT/stdin"
+mkfifo "$OUT/stdin"
+# IotMain stops when its standard input ends: the nodes read from this pipe, which stays open until we exit
+exec 3<>"$OUT/stdin"
+
+pids=()
+
+stop_nodes() {
+    for pid in "${pids[@]}"; do
+        kill "$pid" 2>/dev/null || true
+    done
+    for pid in "${pids[@]}"; do
+        wait "$pid" 2>/dev/null || true
+    done
+    pids=()
+}
+trap stop_nodes EXIT
+
+start_node() {
+    local index=$1
+    java -Xmx"$HEAP" -Dconfig.resource=cluster.conf \
+        -Dakka.remote.netty.tcp.port=$((FIRST_REMOTE_PORT + index)) \
+        -Diot.http.port=$((FIRST_HTTP_PORT + index)) \
+        -cp "$APP_CLASSPATH" IotMain < "$OUT/stdin" > "$OUT/node-$index.log" 2>&1 &
+    pids+=($!)
+}
+
+# The seed node logs every member it moves to Up, itself included
+wait_for_members() {
+    local nodes=$1
+    for _ in $(seq 1 120); do
+        if [ "$(grep -c 'to \[Up\]' "$OUT/node-0.log" || true)" -ge "$nodes" ]; then
+            return 0
+        fi
+        sleep 1
+    done
+    echo "Cluster of $nodes nodes did not come up, see $OUT/node-*.log" >&2
+    return 1
+}
+
+wait_for_http() {
+    local port=$1
+    for _ in $(seq 1 120); do
+        if curl -sf -o /dev/null "http://127.0.0.1:$port/api"; then
+            return 0
+        fi
+        sleep 1
+    done
+    echo "Node on port $port did not answer HTTP" >&2
+    return 1
+}
+
+for nodes in $NODES; do
+    echo "=== $nodes node(s) ==="
+    targets=()
+
+    for index in $(seq 0 $((nodes - 1))); do
+        start_node "$index"
+        targets+=("http://127.0.0.1:$((FIRST_HTTP_PORT + index))")
+    done
+
+    wait_for_members "$nodes"
+    for index in $(seq 0 $((nodes - 1))); do
+        wait_for_http $((FIRST_HTTP_PORT + index))
+    done
+
+    java -cp "$LOAD_JAR" benchmark.load.LoadGenerator \
+        --targets="$(IFS=,; echo "${targets[*]}")" --rate="$RATE" "$@" | tee "$OUT/load-$nodes.txt"
+
+    stop_nodes
+done
+
+echo
+echo "=== Achieved throughput by cluster size ==="
+for nodes in $NODES; do
+    echo "$nodes node(s): $(grep achieved "$OUT/load-$nodes.txt" | paste -sd ' ' -)"
+done
@@ -1,17 +1,15 @@
 import java.io.IOException;
+import java.util.Collection;
 import java.util.concurrent.CompletionStage;
 
-import akka.NotUsed;
 import akka.actor.ActorSystem;
-import akka.actor.ActorRef;
-import akka.http.javadsl.ConnectHttp;
-import akka.http.javadsl.Http;
 import akka.http.javadsl.ServerBinding;
-import akka.http.javadsl.model.HttpRequest;
-import akka.http.javadsl.model.HttpResponse;
-import akka.stream.ActorMaterializer;
-import akka.stream.javadsl.Flow;
-import manager.DeviceManager;
+import cluster.IotCluster;
+import com.typesafe.config.Config;
+import manager.DeviceManagerRouter;
+import persistence.EventJournal;
+import persistence.FleetState;
+import persistence.HomeState;
 import server.IotServer;
 
 public class IotMain {
@@ -20,19 +18,39 @@ public class IotMain {
         ActorSystem system = ActorSystem.create("iot-system");
 
         try {
-            final Http http = Http.get(system);
-            final ActorMaterializer materializer = ActorMaterializer.create(system);
+            final Config config = system.settings().config();
+            final boolean clusterEnabled = config.getBoolean("iot.cluster.enabled");
+            EventJournal journal = EventJournal.disabled();
+            FleetState recovered = null;
 
-            ActorRef deviceManager = system.actorOf(DeviceManager.props(), "deviceManager");
+            //A node's journal could not follow the homes moved to another node
+            if (clusterEnabled && config.getBoolean("iot.persistence.enabled")) {
+                throw new IllegalStateException(
+                        "iot.persistence.enabled is not supported with iot.cluster.enabled, homes are kept in memory only");
+            } else if (config.getBoolean("iot.persistence.enabled")) {
+                recovered = EventJournal.recover(system);
+                journal = EventJournal.start(system, recovered);
+            }
+
+            DeviceManagerRouter deviceManagers = clusterEnabled
+                    ? IotCluster.start(system, journal)
+                    : DeviceManagerRouter.create(system, journal);
+
+            if (recovered != null) {
+                final Collection<HomeState> homes = recovered.getHomes();
+
+                System.out.println("Restoring " + homes.size() + " homes");
+                deviceManagers.restore(homes);
+            }
 
             //In order to access all directives we need an instance where the routes are define.
-            IotServer app = new IotServer(system, deviceManager);
+            IotServer app = new IotServer(system, deviceManagers);
 
-            final Flow<HttpRequest, HttpResponse, NotUsed> routeFlow = app.createRoute().flow(system, materializer);
-            final CompletionStage<ServerBinding> binding = http.bindAndHandle(routeFlow,
-                    ConnectHttp.toHost("localhost", 8082), materializer);
+            final String host = config.getString("iot.http.host");
+            final int port = config.getInt("iot.http.port");
+            final CompletionStage<ServerBinding> binding = app.bind(system, host, port);
 
-            System.out.println("IotServer online at http://localhost:8082/\nPress RETURN to stop...");
+            System.out.println("IotServer online at http://" + host + ":" + port + "/\nPress RETURN to stop...");
             System.in.read(); // let it run until user presses return
 
             binding
@@ -0,0 +1,86 @@
+package cluster;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSelection;
+import akka.actor.Props;
+import akka.cluster.Cluster;
+import akka.cluster.Member;
+import akka.cluster.MemberStatus;
+import akka.pattern.PatternsCS;
+import akka.util.Timeout;
+import heating.HeatingScheduler;
+import model.HeatingStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stands for the {@link HeatingScheduler} of every node in cluster mode. Each node only evaluates the homes
+ * its own managers host, so a pass is run on every node that is up, and the status adds up theirs.
+ */
+public class ClusterHeatingScheduler extends AbstractActor {
+
+    private static final Timeout STATUS_TIMEOUT = new Timeout(3, TimeUnit.SECONDS);
+
+    private final Cluster cluster = Cluster.get(getContext().getSystem());
+    //Every node starts its scheduler under the same path
+    private final String schedulerPath;
+
+    public ClusterHeatingScheduler(ActorRef localScheduler) {
+        this.schedulerPath = localScheduler.path().toStringWithoutAddress();
+    }
+
+    public static Props props(ActorRef localScheduler) {
+        return Props.create(ClusterHeatingScheduler.class, localScheduler);
+    }
+
+    private List<ActorSelection> schedulers() {
+        List<ActorSelection> schedulers = new ArrayList<>();
+
+        for (Member member : cluster.state().getMembers()) {
+            if (member.status().equals(MemberStatus.up())) {
+                schedulers.add(getContext().actorSelection(member.address() + schedulerPath));
+            }
+        }
+
+        return schedulers;
+    }
+
+    private void onRunPass(HeatingScheduler.RunPass runPass) {
+        schedulers().forEach(scheduler -> scheduler.tell(runPass, ActorRef.noSender()));
+    }
+
+    //A node not answering in time is left out, the status then only covers the homes of the others
+    private void onGetStatus(HeatingScheduler.GetStatus getStatus) {
+        final List<CompletableFuture<HeatingStatus>> statuses = new ArrayList<>();
+
+        for (ActorSelection scheduler : schedulers()) {
+            statuses.add(PatternsCS.ask(scheduler, getStatus, STATUS_TIMEOUT)
+                    .thenApply(obj -> (HeatingStatus) obj)
+                    .exceptionally(exc -> null)
+                    .toCompletableFuture());
+        }
+
+        final CompletableFuture<HeatingStatus> merged = CompletableFuture
+                .allOf(statuses.toArray(new CompletableFuture[0]))
+                .thenApply(done -> statuses.stream()
+                        .map(CompletableFuture::join)
+                        .filter(Objects::nonNull)
+                        .reduce(HeatingStatus::merge)
+                        .orElseThrow(() -> new IllegalStateException("No heating scheduler answered")));
+
+        PatternsCS.pipe(merged, getContext().dispatcher()).to(getSender());
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(HeatingScheduler.RunPass.class, this::onRunPass)
+                .match(HeatingScheduler.GetStatus.class, this::onGetStatus)
+                .build();
+    }
+}
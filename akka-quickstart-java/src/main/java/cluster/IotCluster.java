@@ -0,0 +1,119 @@
+package cluster;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.cluster.sharding.ClusterSharding;
+import akka.cluster.sharding.ClusterShardingSettings;
+import akka.cluster.sharding.ShardCoordinator;
+import akka.cluster.sharding.ShardRegion;
+import dispatch.IotDispatchers;
+import heating.HeatingScheduler;
+import manager.DeviceManager;
+import manager.DeviceManagerRouter;
+import persistence.EventJournal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the {@link DeviceManager} shards as cluster sharded entities, so the homes are spread over
+ * every node of the cluster instead of living in one JVM.
+ *
+ * Each of the iot.cluster.manager-entities managers is an entity, placed on a node by Cluster Sharding
+ * when it gets its first message. Every node builds the same {@link DeviceManagerRouter} over one local
+ * {@link ManagerShardProxy} per entity, so the consistent hash of a home name picks the same entity on
+ * every node, and any node's routes can serve any home.
+ *
+ * Managers are moved when shards are rebalanced, such as after a node joined, or when their node leaves
+ * the cluster: the manager packs its homes as if they were passivated and hands them to the manager
+ * started in its place through the shard region, which holds them until that manager is placed.
+ * Homes are only kept in memory, those of a node that crashed or was downed are lost.
+ */
+public final class IotCluster {
+
+    private static final String MANAGER_TYPE_NAME = "deviceManager";
+
+    private IotCluster() {
+    }
+
+    /**
+     * A message for the manager entity with the given number.
+     */
+    public static final class ManagerEnvelope {
+        private final int entity;
+        private final Object message;
+
+        public ManagerEnvelope(int entity, Object message) {
+            this.entity = entity;
+            this.message = message;
+        }
+
+        public int getEntity() {
+            return entity;
+        }
+
+        public Object getMessage() {
+            return message;
+        }
+    }
+
+    //The entity id is the manager's actor name, the region holds the messages until the entity is placed again
+    static final class RegionSuccessor implements DeviceManager.Successor {
+
+        @Override
+        public void tell(ActorSystem system, ActorRef manager, Object message, ActorRef sender) {
+            ClusterSharding.get(system).shardRegion(MANAGER_TYPE_NAME)
+                    .tell(new ManagerEnvelope(Integer.parseInt(manager.path().name()), message), sender);
+        }
+    }
+
+    static final class ManagerMessageExtractor implements ShardRegion.MessageExtractor {
+
+        @Override
+        public String entityId(Object message) {
+            return message instanceof ManagerEnvelope ? String.valueOf(((ManagerEnvelope) message).getEntity()) : null;
+        }
+
+        @Override
+        public Object entityMessage(Object message) {
+            return ((ManagerEnvelope) message).getMessage();
+        }
+
+        @Override
+        public String shardId(Object message) {
+            //One entity per shard, so a shard is the unit both of placement and of the managers' state
+            return entityId(message);
+        }
+    }
+
+    public static DeviceManagerRouter start(ActorSystem system, EventJournal journal) {
+        final int entities = system.settings().config().getInt("iot.cluster.manager-entities");
+        final String managerDispatcher = IotDispatchers.lookup(system, IotDispatchers.MANAGER);
+
+        //Every node evaluates the heating of the homes its own managers host
+        final ActorRef heatingScheduler = system.actorOf(
+                HeatingScheduler.props(system.settings().config().getConfig("iot.heating")).withDispatcher(managerDispatcher),
+                "heatingScheduler");
+
+        final ClusterShardingSettings settings = ClusterShardingSettings.create(system);
+        final ActorRef region = ClusterSharding.get(system).start(
+                MANAGER_TYPE_NAME,
+                DeviceManager.props(journal, heatingScheduler, new RegionSuccessor()).withDispatcher(managerDispatcher),
+                settings,
+                new ManagerMessageExtractor(),
+                new ShardCoordinator.LeastShardAllocationStrategy(
+                        settings.tuningParameters().leastShardAllocationRebalanceThreshold(),
+                        settings.tuningParameters().leastShardAllocationMaxSimultaneousRebalance()),
+                new DeviceManager.HandOff());
+
+        List<ActorRef> shards = new ArrayList<>(entities);
+        for (int entity = 0; entity < entities; entity++) {
+            shards.add(system.actorOf(
+                    ManagerShardProxy.props(region, entity).withDispatcher(managerDispatcher), "deviceManager-" + entity));
+        }
+
+        //The routes run passes and read the status on every node
+        return new DeviceManagerRouter(shards, system.actorOf(
+                ClusterHeatingScheduler.props(heatingScheduler).withDispatcher(managerDispatcher), "clusterHeatingScheduler"));
+    }
+}
@@ -0,0 +1,549 @@
+package cluster;
+
+import akka.serialization.SerializerWithStringManifest;
+import device.TemperatureDevice;
+import group.DeviceGroup;
+import group.enums.DeviceStorage;
+import group.enums.HeatingSettings;
+import heating.HeatingScheduler;
+import manager.DeviceManager;
+import model.HeatingSetting;
+import model.HeatingStatus;
+import model.HistoryBucket;
+import model.HomeSeries;
+import model.HomeStats;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary format of the messages sent to and answered by the sharded device managers, bound to the
+ * protocol classes in application.conf. Each message is written field by field with a short manifest
+ * naming its class, in the same style as the journal, instead of Java serialization's class descriptors.
+ */
+public class IotSerializer extends SerializerWithStringManifest {
+
+    private static final int IDENTIFIER = 7707;
+
+    private static final String MANAGER_ENVELOPE = "ME";
+    private static final String REQUEST_TRACK_DEVICE = "RTD";
+    private static final String CHANGE_HEATING_SETTINGS = "CHS";
+    private static final String GET_HEATING_SETTINGS = "GHS";
+    private static final String GET_HOMES_NUMBER = "GHN";
+    private static final String IF_HOME_EXISTS = "IHE";
+    private static final String GET_DEVICES_IN_HOMES = "GDH";
+    private static final String GET_HOME_NAMES = "GNA";
+    private static final String RESPOND_HOME_NAMES = "RHN";
+    private static final String RESPOND_DEVICES_IN_HOME = "RDH";
+    private static final String RESPOND_HOMES_NUMBER = "RNU";
+    private static final String HOME_CREATED = "HCR";
+    private static final String HOME_ALREADY_EXISTS = "HAE";
+    private static final String DEVICE_REGISTERED = "DRE";
+    private static final String CREATE_HOME = "CRH";
+    private static final String SET_TEMPERATURES = "STE";
+    private static final String GET_HOME_TEMPERATURE = "GHT";
+    private static final String GET_HOME_STATS = "GST";
+    private static final String GET_DEVICE_HISTORY = "GDV";
+    private static final String HOMES_WITH_TEMPERATURE_CHANGED = "HWC";
+    private static final String RESPOND_ALL_TEMPERATURES = "RAT";
+    private static final String HEATING_SETTING = "HSE";
+    private static final String HOME_STATS = "HST";
+    private static final String RESPOND_HISTORY = "RHI";
+    private static final String SCAN_HOME_SERIES = "SHS";
+    private static final String HOME_SERIES = "HSR";
+    private static final String GET_CHANGES_SINCE = "GCS";
+    private static final String RESPOND_CHANGES = "RCH";
+    private static final String HOMES_HANDED_OFF = "HHO";
+    private static final String RUN_HEATING_PASS = "RHP";
+    private static final String GET_HEATING_STATUS = "GHH";
+    private static final String HEATING_STATUS = "HSS";
+
+    @Override
+    public int identifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    public String manifest(Object message) {
+        if (message instanceof IotCluster.ManagerEnvelope) return MANAGER_ENVELOPE;
+        if (message instanceof DeviceManager.RequestTrackDevice) return REQUEST_TRACK_DEVICE;
+        if (message instanceof DeviceManager.ChangeHeatingSettings) return CHANGE_HEATING_SETTINGS;
+        if (message instanceof DeviceManager.GetHeatingSettings) return GET_HEATING_SETTINGS;
+        if (message instanceof DeviceManager.GetHomesNumber) return GET_HOMES_NUMBER;
+        if (message instanceof DeviceManager.IfHomeExists) return IF_HOME_EXISTS;
+        if (message instanceof DeviceManager.GetDevicesInHomes) return GET_DEVICES_IN_HOMES;
+        if (message instanceof DeviceManager.GetHomeNames) return GET_HOME_NAMES;
+        if (message instanceof DeviceManager.RespondHomeNames) return RESPOND_HOME_NAMES;
+        if (message instanceof DeviceManager.RespondDevicesInHome) return RESPOND_DEVICES_IN_HOME;
+        if (message instanceof DeviceManager.RespondHomesNumber) return RESPOND_HOMES_NUMBER;
+        if (message instanceof DeviceManager.HomeCreated) return HOME_CREATED;
+        if (message instanceof DeviceManager.HomeAlreadyExists) return HOME_ALREADY_EXISTS;
+        if (message instanceof DeviceManager.DeviceRegistered) return DEVICE_REGISTERED;
+        if (message instanceof DeviceManager.CreateHome) return CREATE_HOME;
+        if (message instanceof DeviceManager.SetTemperatures) return SET_TEMPERATURES;
+        if (message instanceof DeviceManager.GetHomeTemperature) return GET_HOME_TEMPERATURE;
+        if (message instanceof DeviceManager.GetHomeStats) return GET_HOME_STATS;
+        if (message instanceof DeviceManager.GetDeviceHistory) return GET_DEVICE_HISTORY;
+        if (message instanceof DeviceGroup.HomesWithTemperatureChanged) return HOMES_WITH_TEMPERATURE_CHANGED;
+        if (message instanceof DeviceGroup.RespondAllTemperatures) return RESPOND_ALL_TEMPERATURES;
+        if (message instanceof HeatingSetting) return HEATING_SETTING;
+        if (message instanceof HomeStats) return HOME_STATS;
+        if (message instanceof TemperatureDevice.RespondHistory) return RESPOND_HISTORY;
+        if (message instanceof DeviceManager.ScanHomeSeries) return SCAN_HOME_SERIES;
+        if (message instanceof HomeSeries) return HOME_SERIES;
+        if (message instanceof DeviceManager.GetChangesSince) return GET_CHANGES_SINCE;
+        if (message instanceof DeviceManager.RespondChanges) return RESPOND_CHANGES;
+        if (message instanceof DeviceManager.HomesHandedOff) return HOMES_HANDED_OFF;
+        if (message instanceof HeatingScheduler.RunPass) return RUN_HEATING_PASS;
+        if (message instanceof HeatingScheduler.GetStatus) return GET_HEATING_STATUS;
+        if (message instanceof HeatingStatus) return HEATING_STATUS;
+
+        throw new IllegalArgumentException("Cannot serialize " + message.getClass().getName());
+    }
+
+    @Override
+    public byte[] toBinary(Object message) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write(message, out);
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Object fromBinary(byte[] bytes, String manifest) throws NotSerializableException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            return read(in, manifest);
+        } catch (IOException exc) {
+            throw new NotSerializableException("Cannot read " + manifest + ": " + exc.getMessage());
+        }
+    }
+
+    private void write(Object message, DataOutput out) throws IOException {
+        if (message instanceof IotCluster.ManagerEnvelope) {
+            IotCluster.ManagerEnvelope envelope = (IotCluster.ManagerEnvelope) message;
+            out.writeInt(envelope.getEntity());
+            out.writeUTF(manifest(envelope.getMessage()));
+            write(envelope.getMessage(), out);
+        } else if (message instanceof DeviceManager.RequestTrackDevice) {
+            DeviceManager.RequestTrackDevice track = (DeviceManager.RequestTrackDevice) message;
+            out.writeUTF(track.groupId);
+            out.writeUTF(track.deviceId);
+        } else if (message instanceof DeviceManager.ChangeHeatingSettings) {
+            DeviceManager.ChangeHeatingSettings change = (DeviceManager.ChangeHeatingSettings) message;
+            out.writeUTF(change.getHomeName());
+            out.writeBoolean(change.isBlockHeating());
+        } else if (message instanceof DeviceManager.GetHeatingSettings) {
+            out.writeUTF(((DeviceManager.GetHeatingSettings) message).getHomeName());
+        } else if (message instanceof DeviceManager.IfHomeExists) {
+            out.writeUTF(((DeviceManager.IfHomeExists) message).getHomeName());
+        } else if (message instanceof DeviceManager.GetHomeNames) {
+            DeviceManager.GetHomeNames getHomeNames = (DeviceManager.GetHomeNames) message;
+            writeNullableString(getHomeNames.getAfter(), out);
+            out.writeInt(getHomeNames.getLimit());
+        } else if (message instanceof DeviceManager.RespondHomeNames) {
+            writeStrings(((DeviceManager.RespondHomeNames) message).getHomeNames(), out);
+        } else if (message instanceof DeviceManager.RespondDevicesInHome) {
+            writeHomeToDevices(((DeviceManager.RespondDevicesInHome) message).getHomeToDevices(), out);
+        } else if (message instanceof DeviceManager.RespondHomesNumber) {
+            out.writeInt(((DeviceManager.RespondHomesNumber) message).homesNumber);
+        } else if (message instanceof DeviceManager.HomeCreated) {
+            DeviceManager.HomeCreated homeCreated = (DeviceManager.HomeCreated) message;
+            out.writeUTF(homeCreated.homeName);
+            writeStrings(homeCreated.getTemperatureDevices(), out);
+        } else if (message instanceof DeviceManager.DeviceRegistered) {
+            out.writeUTF(((DeviceManager.DeviceRegistered) message).deviceName);
+        } else if (message instanceof DeviceManager.CreateHome) {
+            DeviceManager.CreateHome createHome = (DeviceManager.CreateHome) message;
+            out.writeUTF(createHome.getHomeName());
+            writeStrings(createHome.getTemperatureDevices(), out);
+            out.writeByte(createHome.getStorage().ordinal());
+        } else if (message instanceof DeviceManager.SetTemperatures) {
+            DeviceManager.SetTemperatures setTemperatures = (DeviceManager.SetTemperatures) message;
+            out.writeUTF(setTemperatures.getHomeName());
+            writeTemperatures(setTemperatures.getDeviceToTemperature(), out);
+        } else if (message instanceof DeviceManager.GetHomeTemperature) {
+            DeviceManager.GetHomeTemperature getHomeTemperature = (DeviceManager.GetHomeTemperature) message;
+            out.writeUTF(getHomeTemperature.getHomeName());
+            out.writeBoolean(getHomeTemperature.getMaxStalenessMillis() != null);
+            if (getHomeTemperature.getMaxStalenessMillis() != null) {
+                out.writeLong(getHomeTemperature.getMaxStalenessMillis());
+            }
+        } else if (message instanceof DeviceManager.GetHomeStats) {
+            out.writeUTF(((DeviceManager.GetHomeStats) message).getHomeName());
+        } else if (message instanceof DeviceManager.GetDeviceHistory) {
+            DeviceManager.GetDeviceHistory getDeviceHistory = (DeviceManager.GetDeviceHistory) message;
+            out.writeUTF(getDeviceHistory.getHomeName());
+            out.writeUTF(getDeviceHistory.getDeviceId());
+            out.writeLong(getDeviceHistory.getReadHistory().getFrom());
+            out.writeLong(getDeviceHistory.getReadHistory().getTo());
+            out.writeLong(getDeviceHistory.getReadHistory().getStep());
+        } else if (message instanceof DeviceGroup.HomesWithTemperatureChanged) {
+            writeStrings(((DeviceGroup.HomesWithTemperatureChanged) message).getHomesWithTemperatureChanged(), out);
+        } else if (message instanceof DeviceGroup.RespondAllTemperatures) {
+            DeviceGroup.RespondAllTemperatures temperatures = (DeviceGroup.RespondAllTemperatures) message;
+            writeNullableString(temperatures.getHouseName(), out);
+            writeTemperatures(temperatures.getTemperatures(), out);
+        } else if (message instanceof HeatingSetting) {
+            HeatingSetting heatingSetting = (HeatingSetting) message;
+            out.writeByte(heatingSettings(heatingSetting).ordinal());
+            out.writeBoolean(heatingSetting.isUserTurnedOff());
+        } else if (message instanceof HomeStats) {
+            HomeStats homeStats = (HomeStats) message;
+            writeNullableString(homeStats.getHomeName(), out);
+            out.writeInt(homeStats.getDevices());
+            writeNullableDouble(homeStats.getAverage(), out);
+            writeNullableDouble(homeStats.getMin(), out);
+            writeNullableDouble(homeStats.getMax(), out);
+        } else if (message instanceof TemperatureDevice.RespondHistory) {
+            TemperatureDevice.RespondHistory history = (TemperatureDevice.RespondHistory) message;
+            out.writeUTF(history.getDeviceId());
+            writeBuckets(history.getBuckets(), out);
+        } else if (message instanceof DeviceManager.ScanHomeSeries) {
+            DeviceManager.ScanHomeSeries scanHomeSeries = (DeviceManager.ScanHomeSeries) message;
+            out.writeUTF(scanHomeSeries.getHomeName());
+            out.writeLong(scanHomeSeries.getScanSeries().getFrom());
+            out.writeLong(scanHomeSeries.getScanSeries().getTo());
+            out.writeLong(scanHomeSeries.getScanSeries().getStep());
+        } else if (message instanceof HomeSeries) {
+            HomeSeries homeSeries = (HomeSeries) message;
+            writeNullableString(homeSeries.getHomeName(), out);
+            out.writeInt(homeSeries.getDevices() == null ? -1 : homeSeries.getDevices().size());
+            if (homeSeries.getDevices() != null) {
+                for (Map.Entry<String, List<HistoryBucket>> device : homeSeries.getDevices().entrySet()) {
+                    out.writeUTF(device.getKey());
+                    writeBuckets(device.getValue(), out);
+                }
+            }
+        } else if (message instanceof DeviceManager.GetChangesSince) {
+            DeviceManager.GetChangesSince getChangesSince = (DeviceManager.GetChangesSince) message;
+            out.writeBoolean(getChangesSince.getEpoch() != null);
+            if (getChangesSince.getEpoch() != null) {
+                out.writeLong(getChangesSince.getEpoch());
+            }
+            out.writeLong(getChangesSince.getSince());
+        } else if (message instanceof DeviceManager.RespondChanges) {
+            DeviceManager.RespondChanges changes = (DeviceManager.RespondChanges) message;
+            out.writeLong(changes.getEpoch());
+            out.writeLong(changes.getSequence());
+            out.writeBoolean(changes.isReset());
+            writeHomeToDevices(changes.getHomeToDevices(), out);
+            writeStrings(changes.getRemovedHomes(), out);
+            out.writeInt(changes.getRemovedDevices().size());
+            for (Map.Entry<String, List<String>> home : changes.getRemovedDevices().entrySet()) {
+                out.writeUTF(home.getKey());
+                writeStrings(home.getValue(), out);
+            }
+        } else if (message instanceof DeviceManager.HomesHandedOff) {
+            //Each home is already packed in the snapshot format
+            Map<String, byte[]> homes = ((DeviceManager.HomesHandedOff) message).getHomes();
+            out.writeInt(homes.size());
+            for (Map.Entry<String, byte[]> home : homes.entrySet()) {
+                out.writeUTF(home.getKey());
+                out.writeInt(home.getValue().length);
+                out.write(home.getValue());
+            }
+        } else if (message instanceof HeatingStatus) {
+            HeatingStatus status = (HeatingStatus) message;
+            out.writeLong(status.getPeriodMillis());
+            out.writeInt(status.getHomes());
+            out.writeInt(status.getPending());
+            out.writeInt(status.getInFlight());
+            out.writeInt(status.getMaxConcurrent());
+            out.writeLong(status.getLastLagMillis());
+            out.writeLong(status.getMaxLagMillis());
+            out.writeLong(status.getOldestEvaluationMillis());
+            out.writeLong(status.getEvaluated());
+            out.writeLong(status.getTimedOut());
+            out.writeLong(status.getSkipped());
+        }
+        //GetHomesNumber, GetDevicesInHomes, HomeAlreadyExists, RunPass and GetStatus have no fields
+    }
+
+    private Object read(DataInput in, String manifest) throws IOException {
+        switch (manifest) {
+            case MANAGER_ENVELOPE:
+                final int entity = in.readInt();
+                return new IotCluster.ManagerEnvelope(entity, read(in, in.readUTF()));
+            case REQUEST_TRACK_DEVICE:
+                return new DeviceManager.RequestTrackDevice(in.readUTF(), in.readUTF());
+            case CHANGE_HEATING_SETTINGS:
+                return new DeviceManager.ChangeHeatingSettings(in.readUTF(), in.readBoolean());
+            case GET_HEATING_SETTINGS:
+                return new DeviceManager.GetHeatingSettings(in.readUTF());
+            case GET_HOMES_NUMBER:
+                return new DeviceManager.GetHomesNumber();
+            case IF_HOME_EXISTS:
+                return new DeviceManager.IfHomeExists(in.readUTF());
+            case GET_DEVICES_IN_HOMES:
+                return new DeviceManager.GetDevicesInHomes();
+            case GET_HOME_NAMES:
+                return new DeviceManager.GetHomeNames(readNullableString(in), in.readInt());
+            case RESPOND_HOME_NAMES:
+                return new DeviceManager.RespondHomeNames(readStrings(in));
+            case RESPOND_DEVICES_IN_HOME:
+                return new DeviceManager.RespondDevicesInHome(readHomeToDevices(in));
+            case RESPOND_HOMES_NUMBER:
+                return new DeviceManager.RespondHomesNumber(in.readInt());
+            case HOME_CREATED:
+                return new DeviceManager.HomeCreated(in.readUTF(), readStrings(in));
+            case HOME_ALREADY_EXISTS:
+                return new DeviceManager.HomeAlreadyExists();
+            case DEVICE_REGISTERED:
+                return new DeviceManager.DeviceRegistered(in.readUTF());
+            case CREATE_HOME:
+                return new DeviceManager.CreateHome(in.readUTF(), readStrings(in), DeviceStorage.values()[in.readByte()]);
+            case SET_TEMPERATURES:
+                return new DeviceManager.SetTemperatures(in.readUTF(), readTemperatures(in));
+            case GET_HOME_TEMPERATURE:
+                final String homeName = in.readUTF();
+                return new DeviceManager.GetHomeTemperature(homeName, in.readBoolean() ? in.readLong() : null);
+            case GET_HOME_STATS:
+                return new DeviceManager.GetHomeStats(in.readUTF());
+            case GET_DEVICE_HISTORY:
+                return new DeviceManager.GetDeviceHistory(in.readUTF(), in.readUTF(),
+                        new TemperatureDevice.ReadHistory(in.readLong(), in.readLong(), in.readLong()));
+            case HOMES_WITH_TEMPERATURE_CHANGED:
+                return new DeviceGroup.HomesWithTemperatureChanged(readStrings(in));
+            case RESPOND_ALL_TEMPERATURES:
+                return new DeviceGroup.RespondAllTemperatures(readNullableString(in), readTemperatures(in));
+            case HEATING_SETTING:
+                return new HeatingSetting(HeatingSettings.values()[in.readByte()], in.readBoolean());
+            case HOME_STATS:
+                return new HomeStats(readNullableString(in), in.readInt(),
+                        readNullableDouble(in), readNullableDouble(in), readNullableDouble(in));
+            case RESPOND_HISTORY:
+                return new TemperatureDevice.RespondHistory(in.readUTF(), readBuckets(in));
+            case SCAN_HOME_SERIES:
+                return new DeviceManager.ScanHomeSeries(in.readUTF(),
+                        new TemperatureDevice.ScanSeries(in.readLong(), in.readLong(), in.readLong()));
+            case HOME_SERIES:
+                return new HomeSeries(readNullableString(in), readDeviceSeries(in));
+            case GET_CHANGES_SINCE:
+                final Long epoch = in.readBoolean() ? in.readLong() : null;
+                return new DeviceManager.GetChangesSince(epoch, in.readLong());
+            case RESPOND_CHANGES:
+                return readChanges(in);
+            case HOMES_HANDED_OFF:
+                return readHomesHandedOff(in);
+            case RUN_HEATING_PASS:
+                return new HeatingScheduler.RunPass();
+            case GET_HEATING_STATUS:
+                return new HeatingScheduler.GetStatus();
+            case HEATING_STATUS:
+                return new HeatingStatus(in.readLong(), in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                        in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong());
+            default:
+                throw new IOException("Unknown manifest " + manifest);
+        }
+    }
+
+    //HeatingSetting only keeps the setting's value and description, the value tells the settings apart
+    private static HeatingSettings heatingSettings(HeatingSetting heatingSetting) {
+        for (HeatingSettings heatingSettings : HeatingSettings.values()) {
+            if (heatingSettings.getValue() == heatingSetting.getValue()
+                    && heatingSettings.getSetting().equals(heatingSetting.getSetting())) {
+                return heatingSettings;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown heating setting " + heatingSetting.getSetting());
+    }
+
+    private static void writeNullableString(String value, DataOutput out) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullableDouble(Double value, DataOutput out) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static Double readNullableDouble(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readDouble() : null;
+    }
+
+    //Collections are written as their size, -1 for null, followed by the elements
+    private static void writeStrings(List<String> values, DataOutput out) throws IOException {
+        out.writeInt(values == null ? -1 : values.size());
+        if (values != null) {
+            for (String value : values) {
+                out.writeUTF(value);
+            }
+        }
+    }
+
+    private static List<String> readStrings(DataInput in) throws IOException {
+        final int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(in.readUTF());
+        }
+
+        return values;
+    }
+
+    private static void writeTemperatures(Map<String, Double> temperatures, DataOutput out) throws IOException {
+        out.writeInt(temperatures == null ? -1 : temperatures.size());
+        if (temperatures != null) {
+            for (Map.Entry<String, Double> temperature : temperatures.entrySet()) {
+                out.writeUTF(temperature.getKey());
+                writeNullableDouble(temperature.getValue(), out);
+            }
+        }
+    }
+
+    private static Map<String, Double> readTemperatures(DataInput in) throws IOException {
+        final int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+
+        Map<String, Double> temperatures = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            temperatures.put(in.readUTF(), readNullableDouble(in));
+        }
+
+        return temperatures;
+    }
+
+    private static void writeHomeToDevices(Map<String, List<Map.Entry<String, Double>>> homeToDevices, DataOutput out)
+            throws IOException {
+        out.writeInt(homeToDevices == null ? -1 : homeToDevices.size());
+        if (homeToDevices == null) {
+            return;
+        }
+
+        for (Map.Entry<String, List<Map.Entry<String, Double>>> home : homeToDevices.entrySet()) {
+            out.writeUTF(home.getKey());
+            out.writeInt(home.getValue().size());
+
+            for (Map.Entry<String, Double> device : home.getValue()) {
+                out.writeUTF(device.getKey());
+                writeNullableDouble(device.getValue(), out);
+            }
+        }
+    }
+
+    private static Map<String, List<Map.Entry<String, Double>>> readHomeToDevices(DataInput in) throws IOException {
+        final int homes = in.readInt();
+        if (homes < 0) {
+            return null;
+        }
+
+        Map<String, List<Map.Entry<String, Double>>> homeToDevices = new HashMap<>(homes * 2);
+        for (int home = 0; home < homes; home++) {
+            final String homeName = in.readUTF();
+            final int devices = in.readInt();
+
+            List<Map.Entry<String, Double>> deviceReadings = new ArrayList<>(devices);
+            for (int device = 0; device < devices; device++) {
+                deviceReadings.add(new AbstractMap.SimpleEntry<>(in.readUTF(), readNullableDouble(in)));
+            }
+
+            homeToDevices.put(homeName, deviceReadings);
+        }
+
+        return homeToDevices;
+    }
+
+    private static DeviceManager.RespondChanges readChanges(DataInput in) throws IOException {
+        final long epoch = in.readLong();
+        final long sequence = in.readLong();
+        final boolean reset = in.readBoolean();
+        final Map<String, List<Map.Entry<String, Double>>> homeToDevices = readHomeToDevices(in);
+        final List<String> removedHomes = readStrings(in);
+        final int homes = in.readInt();
+
+        Map<String, List<String>> removedDevices = new HashMap<>(homes * 2);
+        for (int home = 0; home < homes; home++) {
+            removedDevices.put(in.readUTF(), readStrings(in));
+        }
+
+        return new DeviceManager.RespondChanges(epoch, sequence, reset, homeToDevices, removedHomes, removedDevices);
+    }
+
+    private static DeviceManager.HomesHandedOff readHomesHandedOff(DataInput in) throws IOException {
+        final int homes = in.readInt();
+
+        Map<String, byte[]> packedHomes = new HashMap<>(homes * 2);
+        for (int home = 0; home < homes; home++) {
+            final String homeName = in.readUTF();
+            final byte[] packed = new byte[in.readInt()];
+            in.readFully(packed);
+            packedHomes.put(homeName, packed);
+        }
+
+        return new DeviceManager.HomesHandedOff(packedHomes);
+    }
+
+    private static void writeBuckets(List<HistoryBucket> buckets, DataOutput out) throws IOException {
+        out.writeInt(buckets == null ? -1 : buckets.size());
+        if (buckets != null) {
+            for (HistoryBucket bucket : buckets) {
+                out.writeLong(bucket.getFrom());
+                out.writeInt(bucket.getCount());
+                out.writeDouble(bucket.getMin());
+                out.writeDouble(bucket.getMax());
+                out.writeDouble(bucket.getAvg());
+            }
+        }
+    }
+
+    private static List<HistoryBucket> readBuckets(DataInput in) throws IOException {
+        final int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+
+        List<HistoryBucket> buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new HistoryBucket(in.readLong(), in.readInt(), in.readDouble(), in.readDouble(), in.readDouble()));
+        }
+
+        return buckets;
+    }
+
+    private static Map<String, List<HistoryBucket>> readDeviceSeries(DataInput in) throws IOException {
+        final int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+
+        Map<String, List<HistoryBucket>> deviceSeries = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            deviceSeries.put(in.readUTF(), readBuckets(in));
+        }
+
+        return deviceSeries;
+    }
+}
@@ -0,0 +1,31 @@
+package cluster;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+
+/**
+ * Local stand-in for one sharded {@link manager.DeviceManager} entity: wraps whatever it receives
+ * for that entity and forwards it to the shard region, keeping the original sender for the reply.
+ */
+public class ManagerShardProxy extends AbstractActor {
+
+    private final ActorRef region;
+    private final int entity;
+
+    public ManagerShardProxy(ActorRef region, int entity) {
+        this.region = region;
+        this.entity = entity;
+    }
+
+    public static Props props(ActorRef region, int entity) {
+        return Props.create(ManagerShardProxy.class, region, entity);
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .matchAny(message -> region.forward(new IotCluster.ManagerEnvelope(entity, message), getContext()))
+                .build();
+    }
+}
@@ -1,13 +1,19 @@
 package device;
 
+import java.util.List;
 import java.util.Optional;
 
 import akka.actor.AbstractActor;
 import akka.actor.Props;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
+import device.temperature.CompressedSeries;
+import device.temperature.ReadingHistory;
 import device.temperature.RecordTemperature;
+import group.DeviceGroup;
 import manager.DeviceManager;
+import metrics.IotMetrics;
+import model.HistoryBucket;
 
 public class TemperatureDevice extends AbstractActor {
     private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
@@ -16,13 +22,72 @@ public class TemperatureDevice extends AbstractActor {
 
     private final String deviceId;
 
-    public TemperatureDevice(String groupId, String deviceId) {
+    private final ReadingHistory history;
+
+    private final CompressedSeries series;
+
+    //Immutable, the same acknowledgement is sent for every reading
+    private final TemperatureRecorded recorded;
+
+    public TemperatureDevice(String groupId,
+                             String deviceId,
+                             int historySize,
+                             CompressedSeries.Settings seriesSettings,
+                             double temperature,
+                             byte[] packedSeries) {
         this.groupId = groupId;
         this.deviceId = deviceId;
+        this.history = new ReadingHistory(historySize);
+        this.series = packedSeries == null
+                ? new CompressedSeries(seriesSettings)
+                : CompressedSeries.fromBytes(packedSeries, seriesSettings);
+        this.recorded = new TemperatureRecorded(deviceId);
+        this.lastTemperatureReading = temperature;
+
+        //The history of a device started again holds the latest readings of its series
+        series.scanLatest(historySize, history::record);
+    }
+
+    public static Props props(String groupId,
+                              String deviceId,
+                              int historySize,
+                              CompressedSeries.Settings seriesSettings,
+                              double temperature) {
+        return props(groupId, deviceId, historySize, seriesSettings, temperature, null);
+    }
+
+    public static Props props(String groupId,
+                              String deviceId,
+                              int historySize,
+                              CompressedSeries.Settings seriesSettings,
+                              double temperature,
+                              byte[] packedSeries) {
+        return Props.create(TemperatureDevice.class, groupId, deviceId, historySize, seriesSettings, temperature,
+                packedSeries);
     }
 
-    public static Props props(String groupId, String deviceId) {
-        return Props.create(TemperatureDevice.class, groupId, deviceId);
+    /**
+     * Asked by a home being passivated, answered with a {@link SeriesPacked}.
+     */
+    public static final class PackSeries {
+    }
+
+    public static final class SeriesPacked {
+        private final String deviceId;
+        private final byte[] series;
+
+        public SeriesPacked(String deviceId, byte[] series) {
+            this.deviceId = deviceId;
+            this.series = series;
+        }
+
+        public String getDeviceId() {
+            return deviceId;
+        }
+
+        public byte[] getSeries() {
+            return series;
+        }
     }
 
     public static final class TemperatureRecorded {
@@ -62,15 +127,89 @@ public class TemperatureDevice extends AbstractActor {
         }
     }
 
-    private Double lastTemperatureReading = 25.0;
+    public static final double INITIAL_TEMPERATURE = 25.0;
+
+    public static final class ReadHistory {
+        private final long from;
+        private final long to;
+        private final long step;
+
+        public ReadHistory(long from, long to, long step) {
+            this.from = from;
+            this.to = to;
+            this.step = step;
+        }
+
+        public long getFrom() {
+            return from;
+        }
+
+        public long getTo() {
+            return to;
+        }
+
+        public long getStep() {
+            return step;
+        }
+    }
+
+    /**
+     * Like {@link ReadHistory}, over the compressed long term series. Answered with a {@link RespondHistory}.
+     */
+    public static final class ScanSeries {
+        private final long from;
+        private final long to;
+        private final long step;
+
+        public ScanSeries(long from, long to, long step) {
+            this.from = from;
+            this.to = to;
+            this.step = step;
+        }
+
+        public long getFrom() {
+            return from;
+        }
+
+        public long getTo() {
+            return to;
+        }
+
+        public long getStep() {
+            return step;
+        }
+    }
+
+    public static final class RespondHistory {
+        private final String deviceId;
+        private final List<HistoryBucket> buckets;
+
+        public RespondHistory(String deviceId, List<HistoryBucket> buckets) {
+            this.deviceId = deviceId;
+            this.buckets = buckets;
+        }
+
+        public String getDeviceId() {
+            return deviceId;
+        }
+
+        public List<HistoryBucket> getBuckets() {
+            return buckets;
+        }
+    }
+
+    //Always set, the device starts from the temperature it is created with
+    private double lastTemperatureReading;
 
     @Override
     public void preStart() {
+        IotMetrics.LIVE_DEVICES.increment();
         log.info("Device actor {}-{} started", groupId, deviceId);
     }
 
     @Override
     public void postStop() {
+        IotMetrics.LIVE_DEVICES.decrement();
         log.info("Device actor {}-{} stopped", groupId, deviceId);
     }
 
@@ -88,8 +227,26 @@ public class TemperatureDevice extends AbstractActor {
                     }
                 })
                 .match(RecordTemperature.class, r -> {
+                    final long now = System.currentTimeMillis();
+                    final double previousReading = lastTemperatureReading;
                     lastTemperatureReading += r.getValue();
-                    getSender().tell(new TemperatureRecorded(deviceId), getSelf());
+                    history.record(now, lastTemperatureReading);
+                    series.record(now, lastTemperatureReading);
+                    getSender().tell(recorded, getSelf());
+                    //The group already holds an unchanged value, see DeviceGroup.flushTemperatures
+                    if (lastTemperatureReading != previousReading) {
+                        getContext().getParent().tell(
+                                new DeviceGroup.TemperatureChanged(groupId, deviceId, lastTemperatureReading), getSelf());
+                    }
+                })
+                .match(ReadHistory.class, r -> {
+                    getSender().tell(new RespondHistory(deviceId, history.range(r.getFrom(), r.getTo(), r.getStep())), getSelf());
+                })
+                .match(ScanSeries.class, r -> {
+                    getSender().tell(new RespondHistory(deviceId, series.range(r.getFrom(), r.getTo(), r.getStep())), getSelf());
+                })
+                .match(PackSeries.class, r -> {
+                    getSender().tell(new SeriesPacked(deviceId, series.count() == 0 ? null : series.toBytes()), getSelf());
                 })
                 .match(ReadTemperature.class, r -> {
                     getSender().tell(new RespondTemperature(this.groupId, r.requestId, lastTemperatureReading), getSelf());
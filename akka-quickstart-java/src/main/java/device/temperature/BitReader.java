@@ -0,0 +1,44 @@
+package device.temperature;
+
+/**
+ * Reads back what a {@link BitWriter} wrote, most significant bit first.
+ */
+public final class BitReader {
+
+    private final byte[] bytes;
+    private final int bitLength;
+    private int position = 0;
+
+    public BitReader(byte[] bytes, int bitLength) {
+        this.bytes = bytes;
+        this.bitLength = bitLength;
+    }
+
+    public boolean readBit() {
+        return readBits(1) != 0;
+    }
+
+    public long readBits(int bits) {
+        if (position + bits > bitLength) {
+            throw new IllegalStateException("Reading " + bits + " bits at " + position + " of " + bitLength);
+        }
+
+        long value = 0;
+
+        while (bits > 0) {
+            final int available = 8 - (position & 7);
+            final int read = Math.min(available, bits);
+            final int chunk = (bytes[position >>> 3] >>> (available - read)) & ((1 << read) - 1);
+
+            value = (value << read) | chunk;
+            position += read;
+            bits -= read;
+        }
+
+        return value;
+    }
+
+    public boolean hasMore() {
+        return position < bitLength;
+    }
+}
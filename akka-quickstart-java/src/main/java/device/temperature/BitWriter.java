@@ -0,0 +1,60 @@
+package device.temperature;
+
+import java.util.Arrays;
+
+/**
+ * Appends values of any width up to 64 bits to a growing byte array, most significant bit first.
+ */
+public final class BitWriter {
+
+    private byte[] bytes;
+    private int bitLength = 0;
+
+    public BitWriter(int initialBytes) {
+        this.bytes = new byte[Math.max(initialBytes, 8)];
+    }
+
+    public void writeBit(boolean bit) {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * Writes the lowest bits of the value.
+     */
+    public void writeBits(long value, int bits) {
+        ensureCapacity(bits);
+
+        while (bits > 0) {
+            final int free = 8 - (bitLength & 7);
+            final int written = Math.min(free, bits);
+            final int chunk = (int) (value >>> (bits - written)) & ((1 << written) - 1);
+
+            bytes[bitLength >>> 3] |= chunk << (free - written);
+            bitLength += written;
+            bits -= written;
+        }
+    }
+
+    private void ensureCapacity(int bits) {
+        final int needed = (bitLength + bits + 7) >>> 3;
+
+        if (needed > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(needed, bytes.length * 2));
+        }
+    }
+
+    public int bitLength() {
+        return bitLength;
+    }
+
+    /**
+     * The bytes written so far without copying, valid up to {@link #bitLength()}.
+     */
+    byte[] buffer() {
+        return bytes;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, (bitLength + 7) >>> 3);
+    }
+}
@@ -0,0 +1,201 @@
+package device.temperature;
+
+import com.typesafe.config.Config;
+import model.HistoryBucket;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long term readings of one device: an open {@link SeriesEncoder} taking new readings and the blocks
+ * sealed before it, each covering block-duration. Blocks entirely older than the retention are dropped.
+ * Timestamps are kept to the second.
+ */
+public final class CompressedSeries {
+
+    /**
+     * Shared by every series of a home, read from iot.device.series.
+     */
+    public static final class Settings {
+        private final long blockMillis;
+        private final long retentionMillis;
+
+        public Settings(long blockMillis, long retentionMillis) {
+            this.blockMillis = blockMillis;
+            this.retentionMillis = retentionMillis;
+        }
+
+        public static Settings from(Config config) {
+            return new Settings(config.getDuration("iot.device.series.block-duration", TimeUnit.MILLISECONDS),
+                    config.getDuration("iot.device.series.retention", TimeUnit.MILLISECONDS));
+        }
+    }
+
+    public interface PointConsumer {
+        void accept(long timestampMillis, double value);
+    }
+
+    private static final int INITIAL_BLOCK_BYTES = 64;
+
+    private final Settings settings;
+    private final Deque<SeriesBlock> sealed = new ArrayDeque<>();
+    private SeriesEncoder open;
+
+    public CompressedSeries(Settings settings) {
+        this.settings = settings;
+    }
+
+    public void record(long timestampMillis, double value) {
+        if (open != null && timestampMillis - open.fromMillis() >= settings.blockMillis) {
+            sealed.addLast(open.seal());
+            open = null;
+
+            while (!sealed.isEmpty() && timestampMillis - sealed.peekFirst().toMillis() > settings.retentionMillis) {
+                sealed.removeFirst();
+            }
+        }
+
+        if (open == null) {
+            open = new SeriesEncoder(INITIAL_BLOCK_BYTES);
+        }
+
+        open.append(timestampMillis, value);
+    }
+
+    /**
+     * Hands every reading in [from, to) to the consumer in the order recorded, decoding only the
+     * blocks overlapping the range.
+     */
+    public void scan(long from, long to, PointConsumer consumer) {
+        for (SeriesBlock block : sealed) {
+            if (block.toMillis() >= from && block.fromMillis() < to) {
+                scan(block.decoder(), from, to, consumer);
+            }
+        }
+
+        if (open != null && open.toMillis() >= from && open.fromMillis() < to) {
+            scan(open.decoder(), from, to, consumer);
+        }
+    }
+
+    /**
+     * Hands at least the latest readings, fewer only if fewer were recorded, to the consumer in the order
+     * recorded, decoding only the newest blocks that hold them.
+     */
+    public void scanLatest(int readings, PointConsumer consumer) {
+        if (readings <= 0) {
+            return;
+        }
+
+        int covered = open == null ? 0 : open.count();
+        int firstBlock = sealed.size();
+
+        for (Iterator<SeriesBlock> newest = sealed.descendingIterator(); newest.hasNext() && covered < readings; ) {
+            covered += newest.next().count();
+            firstBlock--;
+        }
+
+        int block = 0;
+        for (SeriesBlock sealedBlock : sealed) {
+            if (block++ >= firstBlock) {
+                scan(sealedBlock.decoder(), Long.MIN_VALUE, Long.MAX_VALUE, consumer);
+            }
+        }
+
+        if (open != null) {
+            scan(open.decoder(), Long.MIN_VALUE, Long.MAX_VALUE, consumer);
+        }
+    }
+
+    private static void scan(SeriesDecoder decoder, long from, long to, PointConsumer consumer) {
+        while (decoder.next()) {
+            final long timestamp = decoder.timestampMillis();
+
+            if (timestamp >= from && timestamp < to) {
+                consumer.accept(timestamp, decoder.value());
+            }
+        }
+    }
+
+    /**
+     * Downsamples the readings recorded in [from, to) into buckets of step milliseconds.
+     */
+    public List<HistoryBucket> range(long from, long to, long step) {
+        final HistoryBuckets buckets = new HistoryBuckets(from, to, step);
+
+        scan(from, to, buckets::add);
+
+        return buckets.toList();
+    }
+
+    public int count() {
+        int count = open == null ? 0 : open.count();
+
+        for (SeriesBlock block : sealed) {
+            count += block.count();
+        }
+
+        return count;
+    }
+
+    /**
+     * Every block with the open one sealed, for a home kept packed while its actors are stopped.
+     * Readings recorded after {@link #fromBytes(byte[], Settings)} start a new block.
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + (int) sizeInBytes());
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(sealed.size() + (open == null ? 0 : 1));
+
+            for (SeriesBlock block : sealed) {
+                block.write(out);
+            }
+            if (open != null) {
+                open.seal().write(out);
+            }
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    public static CompressedSeries fromBytes(byte[] bytes, Settings settings) {
+        CompressedSeries series = new CompressedSeries(settings);
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            final int blocks = in.readInt();
+
+            for (int block = 0; block < blocks; block++) {
+                series.sealed.addLast(SeriesBlock.read(in));
+            }
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+
+        return series;
+    }
+
+    /**
+     * Bytes of compressed readings, without the object headers.
+     */
+    public long sizeInBytes() {
+        long size = open == null ? 0 : open.sizeInBytes();
+
+        for (SeriesBlock block : sealed) {
+            size += block.sizeInBytes();
+        }
+
+        return size;
+    }
+}
@@ -0,0 +1,180 @@
+package device.temperature;
+
+import model.HistoryBucket;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Devices of one home stored as rows of primitive columns: the current value, the time of the last
+ * update, the sequence number of the last change and the reading history. The row of a device is found through an index of the device ids,
+ * so updating or reading a device is an array access instead of a message to an actor.
+ */
+public final class DeviceTable {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int historySize;
+    private final CompressedSeries.Settings seriesSettings;
+    private final Map<String, Integer> rows = new HashMap<>();
+
+    private String[] ids = new String[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private long[] updatedAt = new long[INITIAL_CAPACITY];
+    private long[] changedAt = new long[INITIAL_CAPACITY];
+    private ReadingHistory[] histories = new ReadingHistory[INITIAL_CAPACITY];
+    private CompressedSeries[] series = new CompressedSeries[INITIAL_CAPACITY];
+    private int size = 0;
+
+    private final ReadingStats stats = new ReadingStats(this::forEachValue);
+
+    public DeviceTable(int historySize, CompressedSeries.Settings seriesSettings) {
+        this.historySize = historySize;
+        this.seriesSettings = seriesSettings;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the row of the device, or -1 when the home has no such device.
+     */
+    public int rowOf(String deviceId) {
+        Integer row = rows.get(deviceId);
+
+        return row == null ? -1 : row;
+    }
+
+    public int add(String deviceId, double value, long timestamp) {
+        int row = rowOf(deviceId);
+        if (row >= 0) {
+            return row;
+        }
+
+        if (size == ids.length) {
+            final int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            values = Arrays.copyOf(values, capacity);
+            updatedAt = Arrays.copyOf(updatedAt, capacity);
+            changedAt = Arrays.copyOf(changedAt, capacity);
+            histories = Arrays.copyOf(histories, capacity);
+            series = Arrays.copyOf(series, capacity);
+        }
+
+        row = size++;
+        ids[row] = deviceId;
+        values[row] = value;
+        updatedAt[row] = timestamp;
+        rows.put(deviceId, row);
+        stats.add(value);
+
+        return row;
+    }
+
+    /**
+     * Starts the row's series again from a packed one, its history holding the latest readings of it.
+     */
+    public void restoreSeries(int row, byte[] packedSeries) {
+        histories[row] = new ReadingHistory(historySize);
+        series[row] = CompressedSeries.fromBytes(packedSeries, seriesSettings);
+        series[row].scanLatest(historySize, histories[row]::record);
+    }
+
+    /**
+     * The row's series packed by {@link CompressedSeries#toBytes()}, null if the device never reported.
+     */
+    public byte[] packedSeries(int row) {
+        return series[row] == null ? null : series[row].toBytes();
+    }
+
+    public String id(int row) {
+        return ids[row];
+    }
+
+    public double value(int row) {
+        return values[row];
+    }
+
+    public long updatedAt(int row) {
+        return updatedAt[row];
+    }
+
+    /**
+     * Stamps the row with the sequence number of its last change, see group.HomeVersions.
+     */
+    public void changed(int row, long sequence) {
+        changedAt[row] = sequence;
+    }
+
+    /**
+     * Adds the increment to the device's value and returns the new value.
+     */
+    public double increment(int row, double increment, long timestamp) {
+        final double value = values[row] + increment;
+
+        stats.replace(values[row], value);
+        values[row] = value;
+        updatedAt[row] = timestamp;
+
+        //Histories are created on the first reading, devices which never report cost no history
+        if (histories[row] == null) {
+            histories[row] = new ReadingHistory(historySize);
+            series[row] = new CompressedSeries(seriesSettings);
+        }
+        histories[row].record(timestamp, value);
+        series[row].record(timestamp, value);
+
+        return value;
+    }
+
+    public List<HistoryBucket> history(int row, long from, long to, long step) {
+        final ReadingHistory history = histories[row] == null ? new ReadingHistory(0) : histories[row];
+
+        return history.range(from, to, step);
+    }
+
+    public List<HistoryBucket> series(int row, long from, long to, long step) {
+        final CompressedSeries rowSeries = series[row] == null ? new CompressedSeries(seriesSettings) : series[row];
+
+        return rowSeries.range(from, to, step);
+    }
+
+    public ReadingStats stats() {
+        return stats;
+    }
+
+    public void forEachValue(DoubleConsumer consumer) {
+        for (int row = 0; row < size; row++) {
+            consumer.accept(values[row]);
+        }
+    }
+
+    public Map<String, Double> values() {
+        Map<String, Double> deviceToValue = new HashMap<>((int) (size / 0.75f) + 1);
+
+        for (int row = 0; row < size; row++) {
+            deviceToValue.put(ids[row], values[row]);
+        }
+
+        return deviceToValue;
+    }
+
+    /**
+     * Values of the devices changed after the sequence number since.
+     */
+    public Map<String, Double> changedSince(long since) {
+        Map<String, Double> deviceToValue = new HashMap<>();
+
+        for (int row = 0; row < size; row++) {
+            if (changedAt[row] > since) {
+                deviceToValue.put(ids[row], values[row]);
+            }
+        }
+
+        return deviceToValue;
+    }
+}
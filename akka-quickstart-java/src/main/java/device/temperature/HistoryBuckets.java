@@ -0,0 +1,67 @@
+package device.temperature;
+
+import model.HistoryBucket;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Downsamples readings in [from, to) into buckets of step milliseconds, in primitive arrays.
+ * Readings outside the range are ignored and buckets without readings are left out.
+ */
+final class HistoryBuckets {
+
+    private final long from;
+    private final long to;
+    private final long step;
+
+    private final int[] counts;
+    private final double[] min;
+    private final double[] max;
+    private final double[] sum;
+
+    HistoryBuckets(long from, long to, long step) {
+        //Without adding step to the range, which overflows for a step close to Long.MAX_VALUE
+        final long range = to - from;
+        final int bucketCount = range <= 0 ? 0 : (int) (Math.floorDiv(range - 1, step) + 1);
+
+        this.from = from;
+        this.to = to;
+        this.step = step;
+        this.counts = new int[bucketCount];
+        this.min = new double[bucketCount];
+        this.max = new double[bucketCount];
+        this.sum = new double[bucketCount];
+    }
+
+    void add(long timestamp, double value) {
+        if (timestamp < from || timestamp >= to) {
+            return;
+        }
+
+        final int bucket = (int) ((timestamp - from) / step);
+
+        if (counts[bucket] == 0) {
+            min[bucket] = value;
+            max[bucket] = value;
+        } else {
+            min[bucket] = Math.min(min[bucket], value);
+            max[bucket] = Math.max(max[bucket], value);
+        }
+        sum[bucket] += value;
+        counts[bucket]++;
+    }
+
+    List<HistoryBucket> toList() {
+        List<HistoryBucket> buckets = new ArrayList<>();
+
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            if (counts[bucket] > 0) {
+                buckets.add(new HistoryBucket(from + bucket * step, counts[bucket],
+                        min[bucket], max[bucket], sum[bucket] / counts[bucket]));
+            }
+        }
+
+        return buckets;
+    }
+}
@@ -0,0 +1,59 @@
+package device.temperature;
+
+import model.HistoryBucket;
+
+import java.util.List;
+
+/**
+ * Fixed size ring buffer of the latest readings of one device, stored in two primitive arrays.
+ * Recording never allocates; a device with a capacity of n readings costs 16 * n bytes plus
+ * the two array headers, whatever the number of readings recorded so far.
+ */
+public final class ReadingHistory {
+
+    private final long[] timestamps;
+    private final double[] values;
+
+    private int next = 0;
+    private int size = 0;
+
+    public ReadingHistory(int capacity) {
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    public void record(long timestamp, double value) {
+        if (timestamps.length == 0) {
+            return;
+        }
+
+        timestamps[next] = timestamp;
+        values[next] = value;
+
+        next = next + 1 == timestamps.length ? 0 : next + 1;
+        if (size < timestamps.length) {
+            size++;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Downsamples the readings recorded in [from, to) into buckets of step milliseconds.
+     * Buckets without readings are left out.
+     */
+    public List<HistoryBucket> range(long from, long to, long step) {
+        final HistoryBuckets buckets = new HistoryBuckets(from, to, step);
+        final int oldest = next - size < 0 ? next - size + timestamps.length : next - size;
+
+        for (int i = 0; i < size; i++) {
+            final int index = (oldest + i) % timestamps.length;
+
+            buckets.add(timestamps[index], values[index]);
+        }
+
+        return buckets.toList();
+    }
+}
@@ -0,0 +1,105 @@
+package device.temperature;
+
+import java.util.function.DoubleConsumer;
+
+/**
+ * Running sum, count, minimum and maximum of the current readings of a home's devices.
+ * Adding, removing or replacing a reading is O(1). When the reading that held the minimum or the
+ * maximum changes away from it, the extreme is only marked stale and recomputed from the
+ * readings the next time it is asked for.
+ */
+public final class ReadingStats {
+
+    /**
+     * The current readings, walked when a stale minimum or maximum has to be recomputed.
+     */
+    public interface Readings {
+        void forEach(DoubleConsumer consumer);
+    }
+
+    private final Readings readings;
+
+    private double sum = 0;
+    private int count = 0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private boolean extremesStale = false;
+
+    public ReadingStats(Readings readings) {
+        this.readings = readings;
+    }
+
+    public void add(double value) {
+        sum += value;
+        count++;
+
+        if (!extremesStale) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+    }
+
+    public void remove(double value) {
+        sum -= value;
+        count--;
+
+        if (value <= min || value >= max) {
+            extremesStale = true;
+        }
+    }
+
+    public void replace(double previous, double value) {
+        sum += value - previous;
+
+        if (extremesStale) {
+            return;
+        }
+
+        if ((previous <= min && value > previous) || (previous >= max && value < previous)) {
+            extremesStale = true;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Average of the readings, or NaN for a home without devices.
+     */
+    public double getAverage() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    public double getMin() {
+        refreshExtremes();
+        return count == 0 ? Double.NaN : min;
+    }
+
+    public double getMax() {
+        refreshExtremes();
+        return count == 0 ? Double.NaN : max;
+    }
+
+    private void refreshExtremes() {
+        if (!extremesStale) {
+            return;
+        }
+
+        final double[] recomputed = {0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        readings.forEach(value -> {
+            recomputed[0] += value;
+            recomputed[1] = Math.min(recomputed[1], value);
+            recomputed[2] = Math.max(recomputed[2], value);
+        });
+
+        //The walk also gives an exact sum, dropping the rounding errors the running sum picked up
+        sum = recomputed[0];
+        min = recomputed[1];
+        max = recomputed[2];
+        extremesStale = false;
+    }
+}
@@ -0,0 +1,64 @@
+package device.temperature;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A sealed block of compressed readings and the time range it covers.
+ */
+public final class SeriesBlock {
+
+    private final long fromMillis;
+    private final long toMillis;
+    private final int count;
+    private final byte[] bytes;
+    private final int bitLength;
+
+    SeriesBlock(long fromMillis, long toMillis, int count, byte[] bytes, int bitLength) {
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        this.count = count;
+        this.bytes = bytes;
+        this.bitLength = bitLength;
+    }
+
+    public long fromMillis() {
+        return fromMillis;
+    }
+
+    public long toMillis() {
+        return toMillis;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int sizeInBytes() {
+        return bytes.length;
+    }
+
+    public SeriesDecoder decoder() {
+        return new SeriesDecoder(bytes, bitLength, count);
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeLong(fromMillis);
+        out.writeLong(toMillis);
+        out.writeInt(count);
+        out.writeInt(bitLength);
+        out.write(bytes);
+    }
+
+    static SeriesBlock read(DataInput in) throws IOException {
+        final long fromMillis = in.readLong();
+        final long toMillis = in.readLong();
+        final int count = in.readInt();
+        final int bitLength = in.readInt();
+        final byte[] bytes = new byte[(bitLength + 7) >>> 3];
+        in.readFully(bytes);
+
+        return new SeriesBlock(fromMillis, toMillis, count, bytes, bitLength);
+    }
+}
@@ -0,0 +1,89 @@
+package device.temperature;
+
+/**
+ * Streams the readings of a block written by {@link SeriesEncoder} one at a time, without allocating:
+ * call {@link #next()} and read {@link #timestampMillis()} and {@link #value()} while it returns true.
+ */
+public final class SeriesDecoder {
+
+    private final BitReader bits;
+    private final int count;
+
+    private int read = 0;
+    private long seconds;
+    private long delta = 0;
+    private long valueBits;
+    private int leading;
+    private int trailing;
+
+    SeriesDecoder(byte[] bytes, int bitLength, int count) {
+        this.bits = new BitReader(bytes, bitLength);
+        this.count = count;
+    }
+
+    public boolean next() {
+        if (read == count) {
+            return false;
+        }
+
+        if (read == 0) {
+            seconds = bits.readBits(64);
+            valueBits = bits.readBits(64);
+        } else {
+            readTimestamp();
+            readValue();
+        }
+
+        read++;
+        return true;
+    }
+
+    private void readTimestamp() {
+        final long deltaOfDelta;
+
+        if (!bits.readBit()) {
+            deltaOfDelta = 0;
+        } else if (!bits.readBit()) {
+            deltaOfDelta = signed(bits.readBits(7), 7);
+        } else if (!bits.readBit()) {
+            deltaOfDelta = signed(bits.readBits(9), 9);
+        } else if (!bits.readBit()) {
+            deltaOfDelta = signed(bits.readBits(12), 12);
+        } else {
+            deltaOfDelta = (int) bits.readBits(32);
+        }
+
+        delta += deltaOfDelta;
+        seconds += delta;
+    }
+
+    //The buckets hold -2^(n-1) + 1 to 2^(n-1), written as their lowest n bits
+    private static long signed(long value, int bits) {
+        return value > 1L << (bits - 1) ? value - (1L << bits) : value;
+    }
+
+    private void readValue() {
+        if (!bits.readBit()) {
+            return;
+        }
+
+        if (bits.readBit()) {
+            leading = (int) bits.readBits(5);
+            int meaningful = (int) bits.readBits(6);
+            if (meaningful == 0) {
+                meaningful = 64;
+            }
+            trailing = 64 - leading - meaningful;
+        }
+
+        valueBits ^= bits.readBits(64 - leading - trailing) << trailing;
+    }
+
+    public long timestampMillis() {
+        return seconds * 1000;
+    }
+
+    public double value() {
+        return Double.longBitsToDouble(valueBits);
+    }
+}
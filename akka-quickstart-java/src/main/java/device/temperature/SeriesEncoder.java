@@ -0,0 +1,137 @@
+package device.temperature;
+
+/**
+ * Compresses one block of a device's readings as in Facebook's Gorilla: timestamps as the delta of
+ * their deltas and values as the XOR with the previous value. Readings taken at a steady interval
+ * cost 1 bit of timestamp, an unchanged temperature 1 bit of value.
+ *
+ * Timestamps are kept in seconds. Layout: the first timestamp in 64 bits and the first value in
+ * 64 bits, then for every further reading its delta of delta and its XOR as described in
+ * {@link #appendTimestamp(long)} and {@link #appendValue(long)}.
+ */
+public final class SeriesEncoder {
+
+    private final BitWriter bits;
+
+    private int count = 0;
+    private long fromMillis;
+    private long toMillis;
+    private long previousSeconds;
+    private long previousDelta = 0;
+    private long previousValue;
+    private int previousLeading = -1;
+    private int previousTrailing = 0;
+
+    public SeriesEncoder(int initialBytes) {
+        this.bits = new BitWriter(initialBytes);
+    }
+
+    public void append(long timestampMillis, double value) {
+        final long seconds = Math.floorDiv(timestampMillis, 1000);
+        final long valueBits = Double.doubleToRawLongBits(value);
+
+        if (count == 0) {
+            bits.writeBits(seconds, 64);
+            bits.writeBits(valueBits, 64);
+            fromMillis = timestampMillis;
+            toMillis = timestampMillis;
+        } else {
+            appendTimestamp(seconds);
+            appendValue(valueBits);
+            fromMillis = Math.min(fromMillis, timestampMillis);
+            toMillis = Math.max(toMillis, timestampMillis);
+        }
+
+        previousSeconds = seconds;
+        previousValue = valueBits;
+        count++;
+    }
+
+    /**
+     * '0' for an unchanged delta, else '10', '110', '1110' or '1111' followed by the delta of delta
+     * in 7, 9, 12 or 32 bits.
+     */
+    private void appendTimestamp(long seconds) {
+        final long delta = seconds - previousSeconds;
+        final long deltaOfDelta = delta - previousDelta;
+        previousDelta = delta;
+
+        if (deltaOfDelta == 0) {
+            bits.writeBits(0b0, 1);
+        } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+            bits.writeBits(0b10, 2);
+            bits.writeBits(deltaOfDelta, 7);
+        } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+            bits.writeBits(0b110, 3);
+            bits.writeBits(deltaOfDelta, 9);
+        } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+            bits.writeBits(0b1110, 4);
+            bits.writeBits(deltaOfDelta, 12);
+        } else {
+            bits.writeBits(0b1111, 4);
+            bits.writeBits(deltaOfDelta, 32);
+        }
+    }
+
+    /**
+     * '0' for an unchanged value. Else '1', then '0' and the meaningful bits of the XOR when they fit
+     * in the window of the previous XOR, or '1', the leading zeros in 5 bits, the number of meaningful
+     * bits in 6 bits (0 for 64) and the meaningful bits.
+     */
+    private void appendValue(long valueBits) {
+        final long xor = valueBits ^ previousValue;
+
+        if (xor == 0) {
+            bits.writeBits(0b0, 1);
+            return;
+        }
+
+        final int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        final int trailing = Long.numberOfTrailingZeros(xor);
+
+        if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+            bits.writeBits(0b10, 2);
+            bits.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+        } else {
+            final int meaningful = 64 - leading - trailing;
+
+            bits.writeBits(0b11, 2);
+            bits.writeBits(leading, 5);
+            bits.writeBits(meaningful & 63, 6);
+            bits.writeBits(xor >>> trailing, meaningful);
+
+            previousLeading = leading;
+            previousTrailing = trailing;
+        }
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public long fromMillis() {
+        return fromMillis;
+    }
+
+    public long toMillis() {
+        return toMillis;
+    }
+
+    public int sizeInBytes() {
+        return (bits.bitLength() + 7) >>> 3;
+    }
+
+    /**
+     * Reads the block as written so far, without copying it.
+     */
+    public SeriesDecoder decoder() {
+        return new SeriesDecoder(bits.buffer(), bits.bitLength(), count);
+    }
+
+    /**
+     * The block trimmed to its size, no more readings can be appended to it.
+     */
+    public SeriesBlock seal() {
+        return new SeriesBlock(fromMillis, toMillis, count, bits.toByteArray(), bits.bitLength());
+    }
+}
@@ -0,0 +1,24 @@
+package dispatch;
+
+import akka.actor.ActorSystem;
+
+/**
+ * Names of the dispatchers each group of actors runs on, read from iot.dispatchers.
+ * Every group gets its own pool by default, so a burst in one of them (e.g. the heating fan-out
+ * over all homes) does not queue up behind the others' work.
+ */
+public final class IotDispatchers {
+
+    public static final String HTTP = "http";
+    public static final String MANAGER = "manager";
+    public static final String HOMES = "homes";
+    public static final String QUERIES = "queries";
+    public static final String JOURNAL = "journal";
+
+    private IotDispatchers() {
+    }
+
+    public static String lookup(ActorSystem system, String role) {
+        return system.settings().config().getString("iot.dispatchers." + role);
+    }
+}
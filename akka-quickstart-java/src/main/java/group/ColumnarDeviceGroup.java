@@ -0,0 +1,169 @@
+package group;
+
+import device.TemperatureDevice;
+import device.temperature.DeviceTable;
+import device.temperature.ReadingStats;
+import group.enums.DeviceStorage;
+import manager.DeviceManager;
+import metrics.IotMetrics;
+import model.HistoryBucket;
+import model.HomeSeries;
+import persistence.EventJournal;
+import persistence.HomeState;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A home whose devices are rows of a {@link DeviceTable} instead of {@link TemperatureDevice} actors.
+ * Recording and reading temperatures are array operations inside this actor, without a message or a
+ * query actor per device, while the replies are the same as those of a {@link DeviceGroup}.
+ */
+public class ColumnarDeviceGroup extends DeviceGroup {
+
+    private final DeviceTable devices;
+
+    public ColumnarDeviceGroup(String groupId, EventJournal journal, HomeState restoredState) {
+        super(groupId, journal, restoredState);
+        this.devices = new DeviceTable(historySize, seriesSettings);
+    }
+
+    @Override
+    void restoreDevice(String deviceId, double temperature, byte[] packedSeries) {
+        final int row = devices.add(deviceId, temperature, System.currentTimeMillis());
+
+        if (packedSeries != null) {
+            devices.restoreSeries(row, packedSeries);
+        }
+    }
+
+    @Override
+    void packSeries() {
+        for (int row = 0; row < devices.size(); row++) {
+            final byte[] series = devices.packedSeries(row);
+
+            if (series != null) {
+                packedSeries.put(devices.id(row), series);
+            }
+        }
+    }
+
+    @Override
+    void onTrackDevice(DeviceManager.RequestTrackDevice trackMsg) {
+        if (!groupId.equals(trackMsg.groupId)) {
+            log.warning(
+                    "Ignoring TrackDevice request for {}. This actor is responsible for {}.",
+                    trackMsg.groupId, groupId
+            );
+            return;
+        }
+
+        if (devices.rowOf(trackMsg.deviceId) < 0) {
+            final int row = devices.add(trackMsg.deviceId, TemperatureDevice.INITIAL_TEMPERATURE, System.currentTimeMillis());
+            journal.deviceTracked(groupId, trackMsg.deviceId);
+            devices.changed(row, changed());
+        }
+
+        getSender().tell(new DeviceManager.DeviceRegistered(trackMsg.deviceId), getSelf());
+    }
+
+    //The table always holds the latest readings, so there is never anything to refresh
+    @Override
+    void onGetHomeTemperature(DeviceManager.GetHomeTemperature getHomeTemperature) {
+        onLastReadings();
+    }
+
+    @Override
+    void onLastReadings() {
+        getSender().tell(new RespondAllTemperatures(groupId, devices.values()), getSelf());
+    }
+
+    @Override
+    ReadingStats stats() {
+        return devices.stats();
+    }
+
+    @Override
+    Map<String, Double> readings() {
+        return devices.values();
+    }
+
+    @Override
+    DeviceStorage storage() {
+        return DeviceStorage.COLUMNAR;
+    }
+
+    @Override
+    void onAddTemperatures(AddTemperatures addTemperatures) {
+        final Map<String, Double> temperatures = addTemperatures.getDeviceToTemperature();
+        final List<String> devicesChanged = new ArrayList<>(temperatures.size());
+        final int[] rowsChanged = new int[temperatures.size()];
+        final long now = System.currentTimeMillis();
+
+        IotMetrics.READINGS.add(temperatures.size());
+
+        for (Map.Entry<String, Double> temperature : temperatures.entrySet()) {
+            final int row = devices.rowOf(temperature.getKey());
+
+            if (row < 0 || temperature.getValue() == null) {
+                continue;
+            }
+
+            //Altering temperatures based on heatingSettings, as the device actors are told to
+            final double value = devices.increment(row, temperature.getValue() + heatingSettings.getValue(), now);
+
+            journal.readingRecorded(groupId, temperature.getKey(), value, now);
+            if (updateSubscribers.any()) {
+                getContext().getSystem().eventStream().publish(new TemperatureChanged(groupId, temperature.getKey(), value));
+            }
+            rowsChanged[devicesChanged.size()] = row;
+            devicesChanged.add(temperature.getKey());
+        }
+
+        //One sequence number for the whole write, as for the home's version
+        if (!devicesChanged.isEmpty()) {
+            final long sequence = changed();
+
+            for (int i = 0; i < devicesChanged.size(); i++) {
+                devices.changed(rowsChanged[i], sequence);
+            }
+        }
+
+        getSender().tell(new HomesWithTemperatureChanged(devicesChanged), getSelf());
+    }
+
+    //Devices are never removed from the table, only the home as a whole
+    @Override
+    void onGetChangesSince(GetChangesSince getChangesSince) {
+        final long since = getChangesSince.getSince();
+        final boolean complete = since < startedAt();
+
+        getSender().tell(new RespondChangesSince(groupId, complete ? devices.values() : devices.changedSince(since),
+                Collections.emptyList(), complete), getSelf());
+    }
+
+    @Override
+    void onGetDeviceHistory(DeviceManager.GetDeviceHistory getDeviceHistory) {
+        final int row = devices.rowOf(getDeviceHistory.getDeviceId());
+        final TemperatureDevice.ReadHistory readHistory = getDeviceHistory.getReadHistory();
+
+        getSender().tell(new TemperatureDevice.RespondHistory(getDeviceHistory.getDeviceId(),
+                row < 0 ? null : devices.history(row, readHistory.getFrom(), readHistory.getTo(), readHistory.getStep())),
+                getSelf());
+    }
+
+    @Override
+    void onScanHomeSeries(DeviceManager.ScanHomeSeries scanHomeSeries) {
+        final TemperatureDevice.ScanSeries scanSeries = scanHomeSeries.getScanSeries();
+        final Map<String, List<HistoryBucket>> series = new HashMap<>((int) (devices.size() / 0.75f) + 1);
+
+        for (int row = 0; row < devices.size(); row++) {
+            series.put(devices.id(row), devices.series(row, scanSeries.getFrom(), scanSeries.getTo(), scanSeries.getStep()));
+        }
+
+        getSender().tell(new HomeSeries(groupId, series), getSelf());
+    }
+}
@@ -2,41 +2,117 @@ package group;
 
 import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.NotInfluenceReceiveTimeout;
 import akka.actor.Props;
+import akka.actor.ReceiveTimeout;
 import akka.actor.Terminated;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
 import device.TemperatureDevice;
+import device.temperature.CompressedSeries;
+import device.temperature.ReadingStats;
+import dispatch.IotDispatchers;
+import group.enums.DeviceStorage;
 import group.enums.HeatingSettings;
 import group.query.AddTemperatureQuery;
+import group.query.SeriesQuery;
 import group.query.TemperatureQuery;
 import manager.DeviceManager;
+import metrics.IotMetrics;
+import metrics.SheddableRequest;
 import model.HeatingSetting;
+import model.HomeStats;
+import persistence.EventJournal;
+import persistence.HomeState;
+import scala.concurrent.duration.Duration;
 import scala.concurrent.duration.FiniteDuration;
 
 import java.util.*;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 public class DeviceGroup extends AbstractActor {
-    private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+    final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
 
     final String groupId;
-    private HeatingSettings heatingSettings = HeatingSettings.OFF;
+    final int historySize;
+    final CompressedSeries.Settings seriesSettings;
+    private final String homesDispatcher = IotDispatchers.lookup(getContext().getSystem(), IotDispatchers.HOMES);
+    private final String queriesDispatcher = IotDispatchers.lookup(getContext().getSystem(), IotDispatchers.QUERIES);
+    final EventJournal journal;
+    private final HomeState restoredState;
+    HeatingSettings heatingSettings = HeatingSettings.OFF;
     private boolean blockHeating = false;
-
-    public DeviceGroup(String groupId) {
+    //Null when homes are never passivated
+    private final FiniteDuration idleTimeout;
+
+    private static final FiniteDuration PASSIVATE_RETRY = new FiniteDuration(100, TimeUnit.MILLISECONDS);
+    //How long a passivated home keeps forwarding the requests sent to it before it stops
+    private static final FiniteDuration PASSIVATED_LINGER = new FiniteDuration(100, TimeUnit.MILLISECONDS);
+    //Series of the devices of a home being passivated, null until it is told to passivate
+    Map<String, byte[]> packedSeries;
+    private final Set<String> seriesAwaited = new HashSet<>();
+    private boolean passivated = false;
+
+    //Writes arriving within the window are merged into one write per device, null to write each at once
+    private final FiniteDuration writeWindow;
+    private final int writeBatchReadings;
+    private Map<String, Double> batchTemperatures = new HashMap<>();
+    private List<AddTemperatureQuery.Requester> batchRequesters = new ArrayList<>();
+    private int batchReadings = 0;
+    private Cancellable batchTimer;
+    private boolean flushQueued = false;
+
+    public DeviceGroup(String groupId, EventJournal journal, HomeState restoredState) {
         this.groupId = groupId;
+        this.journal = journal;
+        this.restoredState = restoredState;
+        this.historySize = getContext().getSystem().settings().config().getInt("iot.device.history-size");
+        this.seriesSettings = CompressedSeries.Settings.from(getContext().getSystem().settings().config());
+        this.idleTimeout = getContext().getSystem().settings().config().getBoolean("iot.passivation.enabled")
+                ? new FiniteDuration(getContext().getSystem().settings().config()
+                        .getDuration("iot.passivation.idle-timeout", TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS)
+                : null;
+        final long writeWindowMicros = getContext().getSystem().settings().config()
+                .getDuration("iot.device.write-batching.window", TimeUnit.MICROSECONDS);
+        this.writeWindow = writeWindowMicros > 0 ? new FiniteDuration(writeWindowMicros, TimeUnit.MICROSECONDS) : null;
+        this.writeBatchReadings = getContext().getSystem().settings().config().getInt("iot.device.write-batching.max-readings");
+    }
+
+    public static Props props(String groupId, EventJournal journal) {
+        return props(groupId, journal, null);
     }
 
-    public static Props props(String groupId) {
-        return Props.create(DeviceGroup.class, groupId);
+    public static Props props(String groupId, EventJournal journal, HomeState restoredState) {
+        return Props.create(DeviceGroup.class, groupId, journal, restoredState).withMailbox("iot.mailboxes.device-group");
+    }
+
+    public static Props props(String groupId, EventJournal journal, DeviceStorage storage, HomeState restoredState) {
+        if (storage == DeviceStorage.COLUMNAR) {
+            return Props.create(ColumnarDeviceGroup.class, groupId, journal, restoredState).withMailbox("iot.mailboxes.device-group");
+        }
+
+        return props(groupId, journal, restoredState);
     }
 
     public static final class RequestDeviceList {
     }
 
-    public static final class AddTemperatures {
+    /**
+     * Sent by the manager once it holds back the home's messages: hand over the state and stop.
+     */
+    public static final class Passivate {
+    }
+
+    private static final class FlushTemperatures implements NotInfluenceReceiveTimeout {
+        static final FlushTemperatures INSTANCE = new FlushTemperatures();
+    }
+
+    private static final class StopPassivated {
+        static final StopPassivated INSTANCE = new StopPassivated();
+    }
+
+    public static final class AddTemperatures implements SheddableRequest {
         private final Map<String, Double> deviceToTemperature;
 
         public AddTemperatures(Map<String, Double> deviceToTemperature) {
@@ -48,6 +124,54 @@ public class DeviceGroup extends AbstractActor {
         }
     }
 
+    /**
+     * Asks for the devices changed or removed after the sequence number since, see {@link HomeVersions}.
+     */
+    public static final class GetChangesSince {
+        private final long since;
+
+        public GetChangesSince(long since) {
+            this.since = since;
+        }
+
+        public long getSince() {
+            return since;
+        }
+    }
+
+    public static final class RespondChangesSince {
+        private final String homeName;
+        private final Map<String, Double> devices;
+        private final List<String> removedDevices;
+        private final boolean complete;
+
+        public RespondChangesSince(String homeName, Map<String, Double> devices, List<String> removedDevices, boolean complete) {
+            this.homeName = homeName;
+            this.devices = devices;
+            this.removedDevices = removedDevices;
+            this.complete = complete;
+        }
+
+        public String getHomeName() {
+            return homeName;
+        }
+
+        public Map<String, Double> getDevices() {
+            return devices;
+        }
+
+        public List<String> getRemovedDevices() {
+            return removedDevices;
+        }
+
+        /**
+         * True when the home started after since, devices then holds every device and replaces what the client had.
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+
     public static final class ReplyDeviceList {
         final String houseName;
         final Set<String> ids;
@@ -78,19 +202,6 @@ public class DeviceGroup extends AbstractActor {
         }
     }
 
-    public static class RespondAllTemperaturesToActor extends RespondAllTemperatures {
-        private final ActorRef answearTo;
-
-        public RespondAllTemperaturesToActor(String houseName, Map<String, Double> temperatures, ActorRef answearTo) {
-            super(houseName, temperatures);
-            this.answearTo = answearTo;
-        }
-
-        public ActorRef getAnswearTo() {
-            return answearTo;
-        }
-    }
-
     public static class RespondAllTemperatures {
         private final String houseName;
         private final Map<String, Double> temperatures;
@@ -109,6 +220,52 @@ public class DeviceGroup extends AbstractActor {
         }
     }
 
+    public interface HomeUpdate {
+        String getHouseName();
+    }
+
+    public static final class TemperatureChanged implements HomeUpdate {
+        private final String houseName;
+        private final String deviceId;
+        private final double temperature;
+
+        public TemperatureChanged(String houseName, String deviceId, double temperature) {
+            this.houseName = houseName;
+            this.deviceId = deviceId;
+            this.temperature = temperature;
+        }
+
+        public String getHouseName() {
+            return houseName;
+        }
+
+        public String getDeviceId() {
+            return deviceId;
+        }
+
+        public double getTemperature() {
+            return temperature;
+        }
+    }
+
+    public static final class HeatingChanged implements HomeUpdate {
+        private final String houseName;
+        private final HeatingSetting heatingSetting;
+
+        public HeatingChanged(String houseName, HeatingSetting heatingSetting) {
+            this.houseName = houseName;
+            this.heatingSetting = heatingSetting;
+        }
+
+        public String getHouseName() {
+            return houseName;
+        }
+
+        public HeatingSetting getHeatingSetting() {
+            return heatingSetting;
+        }
+    }
+
     public interface TemperatureReading {
     }
 
@@ -132,17 +289,53 @@ public class DeviceGroup extends AbstractActor {
     private final Map<String, ActorRef> deviceIdToActor = new HashMap<>();
     private final Map<ActorRef, String> actorToDeviceId = new HashMap<>();
 
+    //Last reading of every device, kept up to date by the devices themselves
+    private final Map<String, Double> lastReadings = new HashMap<>();
+    private long lastReadingsUpdatedAt = System.currentTimeMillis();
+    //Writes sent to each device which change its reading, until its TemperatureChanged arrives
+    private final Map<String, Integer> changesInFlight = new HashMap<>();
+    private final ReadingStats readingStats = new ReadingStats(consumer -> lastReadings.values().forEach(consumer::accept));
+
+    private final HomeVersions versions = HomeVersions.get(getContext().getSystem());
+    final HomeUpdateSubscribers updateSubscribers = HomeUpdateSubscribers.get(getContext().getSystem());
+    private HomeVersions.HomeVersion version;
+    //Sequence number the home started with, devices removed before it are unknown to this actor
+    private long startedAt;
+    private final Map<String, Long> deviceChangedAt = new HashMap<>();
+    private final Tombstones removedDevices = new Tombstones(getContext().getSystem().settings().config()
+            .getDuration("iot.changes.tombstone-retention", TimeUnit.MILLISECONDS));
+
     @Override
     public void preStart() {
+        version = versions.register(groupId);
+        startedAt = versions.changedAt(groupId);
+
+        if (restoredState != null) {
+            heatingSettings = restoredState.getHeatingSettings();
+            blockHeating = restoredState.isBlockHeating();
+            restoredState.getReadings().forEach((deviceId, temperature) ->
+                    restoreDevice(deviceId, temperature, restoredState.getSeries().get(deviceId)));
+        }
+
+        if (idleTimeout != null) {
+            getContext().setReceiveTimeout(idleTimeout);
+        }
+
+        IotMetrics.LIVE_HOMES.increment();
         log.info("DeviceGroup {} started", groupId);
     }
 
     @Override
     public void postStop() {
+        if (batchTimer != null) {
+            batchTimer.cancel();
+        }
+        changed();
+        IotMetrics.LIVE_HOMES.decrement();
         log.info("DeviceGroup {} stopped", groupId);
     }
 
-    private void onTrackDevice(DeviceManager.RequestTrackDevice trackMsg) {
+    void onTrackDevice(DeviceManager.RequestTrackDevice trackMsg) {
         if (this.groupId.equals(trackMsg.groupId)) {
             ActorRef deviceActor = deviceIdToActor.get(trackMsg.deviceId);
 
@@ -160,43 +353,142 @@ public class DeviceGroup extends AbstractActor {
             deviceActor.forward(trackMsg, getContext());
         } else {
             log.info("Creating device actor for {}", trackMsg.deviceId);
-            deviceActor = getContext().actorOf(TemperatureDevice.props(groupId, trackMsg.deviceId), trackMsg.deviceId);
-            getContext().watch(deviceActor);
-            actorToDeviceId.put(deviceActor, trackMsg.deviceId);
-            deviceIdToActor.put(trackMsg.deviceId, deviceActor);
+            deviceActor = startDevice(trackMsg.deviceId, TemperatureDevice.INITIAL_TEMPERATURE, null);
+            journal.deviceTracked(groupId, trackMsg.deviceId);
             deviceActor.forward(trackMsg, getContext());
         }
     }
 
+    /**
+     * Starts a device of a restored home, with the series it had when packed or null.
+     */
+    void restoreDevice(String deviceId, double temperature, byte[] packedSeries) {
+        startDevice(deviceId, temperature, packedSeries);
+    }
+
+    private ActorRef startDevice(String deviceId, double temperature, byte[] packedSeries) {
+        ActorRef deviceActor = getContext().actorOf(
+                TemperatureDevice.props(groupId, deviceId, historySize, seriesSettings, temperature, packedSeries)
+                        .withDispatcher(homesDispatcher), deviceId);
+        getContext().watch(deviceActor);
+        actorToDeviceId.put(deviceActor, deviceId);
+        deviceIdToActor.put(deviceId, deviceActor);
+        updateReading(deviceId, temperature);
+
+        return deviceActor;
+    }
+
     private void onTerminated(Terminated t) {
         ActorRef deviceActor = t.getActor();
         String deviceId = actorToDeviceId.get(deviceActor);
         log.info("Device actor for {} has been terminated", deviceId);
         actorToDeviceId.remove(deviceActor);
         deviceIdToActor.remove(deviceId);
+        if (seriesAwaited.remove(deviceId)) {
+            passivateOncePacked();
+        }
+
+        Double lastReading = lastReadings.remove(deviceId);
+        if (lastReading != null) {
+            readingStats.remove(lastReading);
+        }
+        deviceChangedAt.remove(deviceId);
+        changesInFlight.remove(deviceId);
+        removedDevices.add(deviceId, changed());
+        removedDevices.expire();
     }
 
-    private void onAllTemperatures() {
-        Map<ActorRef, String> actorToDeviceIdCopy = new HashMap<>(this.actorToDeviceId);
+    private void onTemperatureChanged(TemperatureChanged temperatureChanged) {
+        changesInFlight.computeIfPresent(temperatureChanged.getDeviceId(),
+                (deviceId, changes) -> changes > 1 ? changes - 1 : null);
+        updateReading(temperatureChanged.getDeviceId(), temperatureChanged.getTemperature());
+        lastReadingsUpdatedAt = System.currentTimeMillis();
 
-        getContext().actorOf(TemperatureQuery.props(
-                groupId, actorToDeviceIdCopy, getSender(), null, new FiniteDuration(3, TimeUnit.SECONDS)));
+        journal.readingRecorded(groupId, temperatureChanged.getDeviceId(), temperatureChanged.getTemperature(),
+                lastReadingsUpdatedAt);
+        if (updateSubscribers.any()) {
+            getContext().getSystem().eventStream().publish(temperatureChanged);
+        }
     }
 
-    private double calculateAverageTemperature(Map<String, Double> temperatures) {
-        return temperatures
-                .values()
-                .stream()
-                .mapToDouble(value -> value)
-                .average().orElse(Double.MAX_VALUE);
+    private void updateReading(String deviceId, double temperature) {
+        Double previous = lastReadings.put(deviceId, temperature);
+
+        if (previous == null) {
+            readingStats.add(temperature);
+        } else {
+            readingStats.replace(previous, temperature);
+        }
+        removedDevices.remove(deviceId);
+        deviceChangedAt.put(deviceId, changed());
     }
 
-    private void changeHeatingSettings(RespondAllTemperaturesToActor allTemperatures) {
-        if (blockHeating) {
+    /**
+     * Moves the home to a new version, to be called on every change visible in a response.
+     * Returns the sequence number of the change.
+     */
+    long changed() {
+        return versions.changed(version);
+    }
+
+    void onGetChangesSince(GetChangesSince getChangesSince) {
+        final long since = getChangesSince.getSince();
+        removedDevices.expire();
+
+        //A device removed too long ago may be missing, the home is sent whole as if it just started
+        if (since < startedAt || !removedDevices.covers(since)) {
+            getSender().tell(new RespondChangesSince(groupId, new HashMap<>(readings()), Collections.emptyList(), true), getSelf());
             return;
         }
 
-        double averageTemperature = calculateAverageTemperature(allTemperatures.getTemperatures());
+        Map<String, Double> devices = new HashMap<>();
+        deviceChangedAt.forEach((deviceId, changedAt) -> {
+            if (changedAt > since) {
+                devices.put(deviceId, lastReadings.get(deviceId));
+            }
+        });
+
+        getSender().tell(new RespondChangesSince(groupId, devices, removedDevices.removedAfter(since), false), getSelf());
+    }
+
+    long startedAt() {
+        return startedAt;
+    }
+
+    void onGetHomeTemperature(DeviceManager.GetHomeTemperature getHomeTemperature) {
+        final Long maxStalenessMillis = getHomeTemperature.getMaxStalenessMillis();
+
+        //Without a change on its way from a device, the last readings are the devices' own
+        if (maxStalenessMillis != null && !changesInFlight.isEmpty()
+                && System.currentTimeMillis() - lastReadingsUpdatedAt >= maxStalenessMillis) {
+            onAllTemperatures();
+        } else {
+            onLastReadings();
+        }
+    }
+
+    void onLastReadings() {
+        getSender().tell(new RespondAllTemperatures(groupId, new HashMap<>(lastReadings)), getSelf());
+    }
+
+    private void onAllTemperatures() {
+        Map<ActorRef, String> actorToDeviceIdCopy = new HashMap<>(this.actorToDeviceId);
+
+        getContext().actorOf(TemperatureQuery.props(
+                groupId, actorToDeviceIdCopy, getSender(), new FiniteDuration(3, TimeUnit.SECONDS))
+                .withDispatcher(queriesDispatcher));
+    }
+
+    /**
+     * Aggregates of the current readings, kept up to date as readings change.
+     */
+    ReadingStats stats() {
+        return readingStats;
+    }
+
+    private void recomputeHeatingSettings() {
+        //A home without devices keeps the decision it got from an empty average before
+        double averageTemperature = stats().getCount() == 0 ? Double.MAX_VALUE : stats().getAverage();
 
         if (averageTemperature <= 15) {
             this.heatingSettings = HeatingSettings.VERY_HIGH;
@@ -216,43 +508,214 @@ public class DeviceGroup extends AbstractActor {
                 this.heatingSettings.getSetting(), this.groupId, averageTemperature
         );
 
-        allTemperatures
-                .getAnswearTo()
-                .tell(
-                        new RespondAllTemperatures(allTemperatures.getHouseName(),
-                                allTemperatures.getTemperatures()),
-                        getSelf());
+        publishHeatingChanged();
+    }
+
+    private void evaluateHeating() {
+        if (!blockHeating) {
+            recomputeHeatingSettings();
+        }
     }
 
     private void onAlterHeatingSettings() {
-        Map<ActorRef, String> actorToDeviceIdCopy = new HashMap<>(this.actorToDeviceId);
+        evaluateHeating();
 
-        getContext().actorOf(TemperatureQuery.props(
-                groupId, actorToDeviceIdCopy, getSelf(), getSender(), new FiniteDuration(3, TimeUnit.SECONDS)));
+        //Answered even when the user blocked the heating, the scheduler waits for it
+        getSender().tell(new HeatingSetting(heatingSettings, blockHeating), getSelf());
     }
 
-    private void onAddTemperatures(AddTemperatures addTemperatures) {
+    private void onGetHomeStats() {
+        final ReadingStats stats = stats();
+
+        if (stats.getCount() == 0) {
+            getSender().tell(new HomeStats(groupId, 0, null, null, null), getSelf());
+            return;
+        }
+
+        getSender().tell(new HomeStats(groupId, stats.getCount(), stats.getAverage(), stats.getMin(), stats.getMax()),
+                getSelf());
+    }
+
+    void onAddTemperatures(AddTemperatures addTemperatures) {
         final Map<String, Double> temperatures = addTemperatures.getDeviceToTemperature();
+        final List<String> devices = new ArrayList<>(temperatures.size());
+
+        IotMetrics.READINGS.add(temperatures.size());
+
+        for (Map.Entry<String, Double> temperature : temperatures.entrySet()) {
+            if (temperature.getValue() == null || !deviceIdToActor.containsKey(temperature.getKey())) {
+                continue;
+            }
+
+            //Altering temperatures based on heatingSettings; increments to the same device add up
+            batchTemperatures.merge(temperature.getKey(), temperature.getValue() + heatingSettings.getValue(), Double::sum);
+            devices.add(temperature.getKey());
+        }
 
-        //changeHeatingSettings(temperatures);
+        if (devices.isEmpty()) {
+            getSender().tell(new HomesWithTemperatureChanged(new ArrayList<>()), getSelf());
+            return;
+        }
 
-        final Map<String, ActorRef> devicesWithNewTemperatures = temperatures
-                .keySet()
-                .stream()
-                .filter(temperatures::containsKey)
-                .map(deviceName -> new AbstractMap.SimpleEntry<String, ActorRef>(deviceName, deviceIdToActor.get(deviceName)) {
-                })
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        batchRequesters.add(new AddTemperatureQuery.Requester(getSender(), devices));
+        batchReadings += devices.size();
+
+        if (batchReadings >= writeBatchReadings) {
+            flushTemperatures();
+        } else if (writeWindow == null) {
+            //Sent after the writes already queued, which join the batch without waiting for any timer
+            if (!flushQueued) {
+                flushQueued = true;
+                getSelf().tell(FlushTemperatures.INSTANCE, getSelf());
+            }
+        } else if (batchTimer == null) {
+            batchTimer = getContext().getSystem().scheduler().scheduleOnce(
+                    writeWindow, getSelf(), FlushTemperatures.INSTANCE, getContext().dispatcher(), getSelf());
+        }
+    }
 
-        //Altering temperatures based on heatingSettings
-        final Set<String> keys = temperatures.keySet();
+    private void onFlushTemperatures() {
+        flushQueued = false;
+        flushTemperatures();
+    }
 
-        for (String key : keys) {
-            temperatures.replace(key, temperatures.get(key) + this.heatingSettings.getValue());
+    /**
+     * Sends the merged writes of the batch, one RecordTemperature per device, every requester
+     * being answered with the devices of its own write.
+     */
+    private void flushTemperatures() {
+        if (batchTimer != null) {
+            batchTimer.cancel();
+            batchTimer = null;
         }
 
+        if (batchRequesters.isEmpty()) {
+            return;
+        }
+
+        final Map<String, ActorRef> deviceNameToActor = new HashMap<>((int) (batchTemperatures.size() / 0.75f) + 1);
+        for (String deviceName : batchTemperatures.keySet()) {
+            ActorRef deviceActor = deviceIdToActor.get(deviceName);
+
+            //A device stopped since its write was queued is left out of the replies
+            if (deviceActor != null) {
+                deviceNameToActor.put(deviceName, deviceActor);
+                if (batchTemperatures.get(deviceName) != 0) {
+                    changesInFlight.merge(deviceName, 1, Integer::sum);
+                }
+            }
+        }
+
+        IotMetrics.WRITE_BATCH_REQUESTS.add(batchRequesters.size());
         getContext().actorOf(AddTemperatureQuery.props(
-                devicesWithNewTemperatures, temperatures, getSender(), new FiniteDuration(3, TimeUnit.SECONDS)));
+                deviceNameToActor, batchTemperatures, batchRequesters, new FiniteDuration(3, TimeUnit.SECONDS))
+                .withDispatcher(queriesDispatcher));
+
+        batchTemperatures = new HashMap<>();
+        batchRequesters = new ArrayList<>();
+        batchReadings = 0;
+    }
+
+    void onGetDeviceHistory(DeviceManager.GetDeviceHistory getDeviceHistory) {
+        ActorRef deviceActor = deviceIdToActor.get(getDeviceHistory.getDeviceId());
+
+        if (deviceActor != null) {
+            deviceActor.forward(getDeviceHistory.getReadHistory(), getContext());
+        } else {
+            getSender().tell(new TemperatureDevice.RespondHistory(getDeviceHistory.getDeviceId(), null), getSelf());
+        }
+    }
+
+    void onScanHomeSeries(DeviceManager.ScanHomeSeries scanHomeSeries) {
+        getContext().actorOf(SeriesQuery.props(groupId, new HashMap<>(actorToDeviceId), scanHomeSeries.getScanSeries(),
+                getSender(), new FiniteDuration(3, TimeUnit.SECONDS))
+                .withDispatcher(queriesDispatcher));
+    }
+
+    private void onReceiveTimeout() {
+        //The timeout stays armed, a home the manager did not answer with Passivate asks again after the next one
+        getContext().getParent().tell(new DeviceManager.PassivateHome(groupId), getSelf());
+    }
+
+    private void onPassivate(Passivate passivate) {
+        //Requests still sent straight to the home go to the manager from here on, which holds them for it
+        getContext().become(passivating());
+        getContext().setReceiveTimeout(Duration.Undefined());
+        flushTemperatures();
+
+        //Readings written by queries still running would be lost, they all end within their timeout
+        if (runningQueries() > 0) {
+            getContext().getSystem().scheduler().scheduleOnce(
+                    PASSIVATE_RETRY, getSelf(), passivate, getContext().dispatcher(), getSelf());
+            return;
+        }
+
+        //Packed by each device after the readings already sent to it
+        if (packedSeries == null) {
+            packedSeries = new HashMap<>();
+            packSeries();
+        }
+
+        passivateOncePacked();
+    }
+
+    /**
+     * Asks every device for its packed series, each answering with a {@link TemperatureDevice.SeriesPacked}.
+     */
+    void packSeries() {
+        seriesAwaited.addAll(deviceIdToActor.keySet());
+        deviceIdToActor.values().forEach(device -> device.tell(new TemperatureDevice.PackSeries(), getSelf()));
+    }
+
+    private void onSeriesPacked(TemperatureDevice.SeriesPacked seriesPacked) {
+        if (seriesAwaited.remove(seriesPacked.getDeviceId()) && seriesPacked.getSeries() != null) {
+            packedSeries.put(seriesPacked.getDeviceId(), seriesPacked.getSeries());
+        }
+
+        passivateOncePacked();
+    }
+
+    private void passivateOncePacked() {
+        if (passivated || packedSeries == null || !seriesAwaited.isEmpty()) {
+            return;
+        }
+
+        //Its heating only depends on its readings, which cannot change while it is passivated,
+        //so a home left out of the heating passes until it is started again misses no change
+        evaluateHeating();
+
+        final HomeState state = new HomeState(groupId, readings(), heatingSettings, blockHeating, storage(), packedSeries);
+        getContext().getParent().tell(new DeviceManager.HomePassivated(groupId, state.toBytes()), getSelf());
+        passivated = true;
+
+        //A route may have found the home running just before the manager took it out of the registry,
+        //its request is forwarded as well instead of reaching a stopped actor
+        getContext().getSystem().scheduler().scheduleOnce(
+                PASSIVATED_LINGER, getSelf(), StopPassivated.INSTANCE, getContext().dispatcher(), getSelf());
+    }
+
+    private void forwardToManager(Object request) {
+        getContext().getParent().forward(request, getContext());
+    }
+
+    private int runningQueries() {
+        int children = 0;
+        for (ActorRef child : getContext().getChildren()) {
+            children++;
+        }
+
+        return children - deviceIdToActor.size();
+    }
+
+    /**
+     * Last reading of every device, kept when the home is passivated.
+     */
+    Map<String, Double> readings() {
+        return lastReadings;
+    }
+
+    DeviceStorage storage() {
+        return DeviceStorage.ACTORS;
     }
 
     private void onGetHeatingSettings() {
@@ -266,20 +729,65 @@ public class DeviceGroup extends AbstractActor {
         if (blockHeating) {
             this.heatingSettings = HeatingSettings.OFF;
         }
+
+        publishHeatingChanged();
+    }
+
+    private void publishHeatingChanged() {
+        changed();
+        journal.heatingChanged(groupId, heatingSettings, blockHeating);
+        if (updateSubscribers.any()) {
+            getContext().getSystem().eventStream().publish(
+                    new HeatingChanged(groupId, new HeatingSetting(heatingSettings, blockHeating)));
+        }
     }
 
     @Override
     public Receive createReceive() {
         return receiveBuilder()
                 .match(DeviceManager.RequestTrackDevice.class, this::onTrackDevice)
-                .match(RequestDeviceList.class, r -> onAllTemperatures())
+                .match(RequestDeviceList.class, r -> onLastReadings())
+                .match(GetChangesSince.class, this::onGetChangesSince)
                 .match(Terminated.class, this::onTerminated)
-                .match(DeviceManager.GetHomeTemperature.class, r -> onAllTemperatures())
+                .match(TemperatureChanged.class, this::onTemperatureChanged)
+                .match(DeviceManager.GetHomeTemperature.class, this::onGetHomeTemperature)
                 .match(AddTemperatures.class, this::onAddTemperatures)
+                .match(FlushTemperatures.class, r -> onFlushTemperatures())
                 .match(DeviceManager.AlterHeatingSettings.class, r -> onAlterHeatingSettings())
-                .match(RespondAllTemperaturesToActor.class, this::changeHeatingSettings)
+                .match(DeviceManager.GetHomeStats.class, r -> onGetHomeStats())
+                .match(DeviceManager.GetDeviceHistory.class, this::onGetDeviceHistory)
+                .match(DeviceManager.ScanHomeSeries.class, this::onScanHomeSeries)
                 .match(DeviceManager.GetHeatingSettings.class, r -> onGetHeatingSettings())
                 .match(DeviceManager.ChangeHeatingSettings.class, this::onChangeHeatingSettings)
+                .match(ReceiveTimeout.class, r -> onReceiveTimeout())
+                .match(Passivate.class, this::onPassivate)
+                .match(TemperatureDevice.SeriesPacked.class, this::onSeriesPacked)
+                .build();
+    }
+
+    /**
+     * A home told to passivate only finishes its own work, the requests for it are forwarded to the manager,
+     * which starts the home again once it stopped. Heating evaluations are still answered, its readings are final.
+     */
+    private Receive passivating() {
+        return receiveBuilder()
+                .match(AddTemperatures.class, r -> forwardToManager(
+                        new DeviceManager.SetTemperatures(groupId, r.getDeviceToTemperature())))
+                .match(DeviceManager.RequestTrackDevice.class, this::forwardToManager)
+                .match(DeviceManager.GetHomeTemperature.class, this::forwardToManager)
+                .match(DeviceManager.GetHomeStats.class, this::forwardToManager)
+                .match(DeviceManager.GetDeviceHistory.class, this::forwardToManager)
+                .match(DeviceManager.ScanHomeSeries.class, this::forwardToManager)
+                .match(DeviceManager.GetHeatingSettings.class, this::forwardToManager)
+                .match(DeviceManager.ChangeHeatingSettings.class, this::forwardToManager)
+                .match(DeviceManager.AlterHeatingSettings.class, r -> onAlterHeatingSettings())
+                .match(RequestDeviceList.class, r -> onLastReadings())
+                .match(GetChangesSince.class, this::onGetChangesSince)
+                .match(Terminated.class, this::onTerminated)
+                .match(TemperatureChanged.class, this::onTemperatureChanged)
+                .match(Passivate.class, this::onPassivate)
+                .match(TemperatureDevice.SeriesPacked.class, this::onSeriesPacked)
+                .match(StopPassivated.class, r -> getContext().stop(getSelf()))
                 .build();
     }
 }
@@ -0,0 +1,54 @@
+package group;
+
+import akka.actor.AbstractExtensionId;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.Extension;
+import akka.actor.ExtensionIdProvider;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Number of clients connected to the home updates, so that homes publish a {@link DeviceGroup.HomeUpdate}
+ * on the event stream only while someone is listening.
+ */
+public final class HomeUpdateSubscribers implements Extension {
+
+    public static final class Provider extends AbstractExtensionId<HomeUpdateSubscribers> implements ExtensionIdProvider {
+        public static final Provider INSTANCE = new Provider();
+
+        private Provider() {
+        }
+
+        @Override
+        public Provider lookup() {
+            return INSTANCE;
+        }
+
+        @Override
+        public HomeUpdateSubscribers createExtension(ExtendedActorSystem system) {
+            return new HomeUpdateSubscribers();
+        }
+    }
+
+    public static HomeUpdateSubscribers get(ActorSystem system) {
+        return Provider.INSTANCE.get(system);
+    }
+
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    private HomeUpdateSubscribers() {
+    }
+
+    public void subscribed() {
+        subscribers.incrementAndGet();
+    }
+
+    public void unsubscribed() {
+        subscribers.decrementAndGet();
+    }
+
+    public boolean any() {
+        return subscribers.get() > 0;
+    }
+}
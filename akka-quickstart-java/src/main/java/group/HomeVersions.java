@@ -0,0 +1,132 @@
+package group;
+
+import akka.actor.AbstractExtensionId;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.Extension;
+import akka.actor.ExtensionIdProvider;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Version of every home and of the whole fleet, increased on every change a client can see:
+ * readings, devices and heating. Only the home actor writes its own version, anyone may read it,
+ * so a route can tell whether a response it rendered before is still current without asking the home.
+ *
+ * Every change is also stamped with a sequence number shared by all homes of the actor system,
+ * so that the changes after a point in time can be found. Sequence numbers restart with the
+ * actor system, which gets a new epoch each time.
+ */
+public final class HomeVersions implements Extension {
+
+    public static final class Provider extends AbstractExtensionId<HomeVersions> implements ExtensionIdProvider {
+        public static final Provider INSTANCE = new Provider();
+
+        private Provider() {
+        }
+
+        @Override
+        public Provider lookup() {
+            return INSTANCE;
+        }
+
+        @Override
+        public HomeVersions createExtension(ExtendedActorSystem system) {
+            return new HomeVersions();
+        }
+    }
+
+    public static HomeVersions get(ActorSystem system) {
+        return Provider.INSTANCE.get(system);
+    }
+
+    public static final long UNKNOWN = -1;
+
+    //While a change is being stamped, so that a reader who already sees its sequence number sees the home changed
+    private static final long STAMPING = Long.MAX_VALUE;
+
+    static final class HomeVersion {
+        private final AtomicLong version;
+        private volatile long changedAt = 0;
+
+        HomeVersion(long initialVersion) {
+            this.version = new AtomicLong(initialVersion);
+        }
+    }
+
+    //Versions of stopped homes are kept until the home is forgotten
+    private final ConcurrentHashMap<String, HomeVersion> homes = new ConcurrentHashMap<>();
+    private final LongAdder fleet = new LongAdder();
+    private final AtomicLong sequence = new AtomicLong();
+    private final long epoch = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+
+    private HomeVersions() {
+    }
+
+    HomeVersion register(String homeName) {
+        //Starting past every sequence number so far, a home forgotten and created again never reuses a version
+        HomeVersion version = homes.computeIfAbsent(homeName, name -> new HomeVersion(sequence.get()));
+
+        changed(version);
+        return version;
+    }
+
+    /**
+     * Returns the sequence number the change was stamped with.
+     */
+    long changed(HomeVersion homeVersion) {
+        homeVersion.version.incrementAndGet();
+        fleet.increment();
+
+        homeVersion.changedAt = STAMPING;
+        final long stamp = sequence.incrementAndGet();
+        homeVersion.changedAt = stamp;
+
+        return stamp;
+    }
+
+    /**
+     * A sequence number for a change outside of a home, such as the home being removed.
+     */
+    public long stamp() {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     * Drops the version of a removed home, once no client asks for the changes from before its removal.
+     */
+    public void forget(String homeName) {
+        homes.remove(homeName);
+    }
+
+    public long home(String homeName) {
+        HomeVersion version = homes.get(homeName);
+
+        return version == null ? UNKNOWN : version.version.get();
+    }
+
+    /**
+     * Sequence number of the home's last change, or of one being made right now, 0 for an unknown home.
+     * Every change stamped up to a {@link #sequence()} read before is included.
+     */
+    public long changedAt(String homeName) {
+        HomeVersion version = homes.get(homeName);
+
+        return version == null ? 0 : version.changedAt;
+    }
+
+    public long sequence() {
+        return sequence.get();
+    }
+
+    public long epoch() {
+        return epoch;
+    }
+
+    public long fleet() {
+        return fleet.sum();
+    }
+}
@@ -0,0 +1,90 @@
+package group;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Homes or devices removed, with the sequence number of their removal, see {@link HomeVersions}.
+ * A tombstone is kept for the retention only. Once one expired, the changes since a sequence number
+ * before it can no longer be told, as the removal would be missing, so the whole state is sent instead.
+ */
+public final class Tombstones {
+
+    private static final class Tombstone {
+        final long stamp;
+        final long removedAtMillis;
+
+        Tombstone(long stamp, long removedAtMillis) {
+            this.stamp = stamp;
+            this.removedAtMillis = removedAtMillis;
+        }
+    }
+
+    private final long retentionMillis;
+    //In the order of removal, so the oldest are expired from the head
+    private final LinkedHashMap<String, Tombstone> tombstones = new LinkedHashMap<>();
+    private long expiredUpTo = 0;
+
+    public Tombstones(long retentionMillis) {
+        this.retentionMillis = retentionMillis;
+    }
+
+    public void add(String name, long stamp) {
+        tombstones.remove(name);
+        tombstones.put(name, new Tombstone(stamp, System.currentTimeMillis()));
+    }
+
+    /**
+     * For a name added again, which the changes report as a change instead.
+     */
+    public void remove(String name) {
+        tombstones.remove(name);
+    }
+
+    public void expire() {
+        expire(name -> {
+        });
+    }
+
+    /**
+     * Drops the tombstones older than the retention, handing each name to expired.
+     */
+    public void expire(Consumer<String> expired) {
+        final long now = System.currentTimeMillis();
+
+        for (Iterator<Map.Entry<String, Tombstone>> oldest = tombstones.entrySet().iterator(); oldest.hasNext(); ) {
+            final Map.Entry<String, Tombstone> tombstone = oldest.next();
+
+            if (now - tombstone.getValue().removedAtMillis < retentionMillis) {
+                break;
+            }
+
+            expiredUpTo = Math.max(expiredUpTo, tombstone.getValue().stamp);
+            oldest.remove();
+            expired.accept(tombstone.getKey());
+        }
+    }
+
+    /**
+     * Whether every removal after since is still known.
+     */
+    public boolean covers(long since) {
+        return since >= expiredUpTo;
+    }
+
+    public List<String> removedAfter(long since) {
+        List<String> removed = new ArrayList<>();
+
+        tombstones.forEach((name, tombstone) -> {
+            if (tombstone.stamp > since) {
+                removed.add(name);
+            }
+        });
+
+        return removed;
+    }
+}
@@ -0,0 +1,8 @@
+package group.enums;
+
+public enum DeviceStorage {
+    //One TemperatureDevice actor per device
+    ACTORS,
+    //Devices are rows of primitive arrays inside the home actor, for homes with thousands of devices
+    COLUMNAR
+}
@@ -1,102 +1,101 @@
 package group.query;
 
-import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
-import akka.actor.Cancellable;
 import akka.actor.Props;
-import akka.event.Logging;
-import akka.event.LoggingAdapter;
+import akka.japi.pf.ReceiveBuilder;
 import device.TemperatureDevice;
 import device.temperature.RecordTemperature;
 import group.DeviceGroup;
+import metrics.IotMetrics;
+import metrics.QueryMetrics;
+import query.ScatterGatherQuery;
 import scala.concurrent.duration.FiniteDuration;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-
-public class AddTemperatureQuery extends AbstractActor {
-    public static final class CollectionTimeout {
+import java.util.Set;
+
+/**
+ * Records the temperatures of one write, or of several writes to a home merged by the group,
+ * answering every requester with the devices of its own write that recorded their temperature.
+ */
+public class AddTemperatureQuery extends ScatterGatherQuery {
+    private static final QueryMetrics METRICS = IotMetrics.query("add_temperature");
+
+    public static final class Requester {
+        private final ActorRef requester;
+        private final List<String> devices;
+
+        public Requester(ActorRef requester, List<String> devices) {
+            this.requester = requester;
+            this.devices = devices;
+        }
     }
 
-    private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
-
-    private final Map<String, ActorRef> deviceNameToActor;
+    //Built for this query by the group, devices are removed from it as they answer
+    private final Map<String, ActorRef> stillWaiting;
     private final Map<String, Double> temperatures;
-    private final ActorRef requester;
-
-    private Cancellable queryTimeoutTimer;
+    private final Set<String> repliesSoFar;
+    private final List<Requester> requesters;
 
     public AddTemperatureQuery(Map<String, ActorRef> deviceNameToActor,
                                Map<String, Double> temperatures,
-                               ActorRef requester,
+                               List<Requester> requesters,
                                FiniteDuration timeout) {
-        this.deviceNameToActor = deviceNameToActor;
+        super(METRICS, timeout);
+        this.stillWaiting = deviceNameToActor;
         this.temperatures = temperatures;
-        this.requester = requester;
-
-        queryTimeoutTimer = getContext().getSystem().scheduler().scheduleOnce(
-                timeout, getSelf(), new AddTemperatureQuery.CollectionTimeout(), getContext().dispatcher(), getSelf()
-        );
+        this.repliesSoFar = new HashSet<>(capacityFor(deviceNameToActor.size()));
+        this.requesters = requesters;
     }
 
     public static Props props(Map<String, ActorRef> deviceNameToActor,
                               Map<String, Double> temperatures,
-                              ActorRef requester,
+                              List<Requester> requesters,
                               FiniteDuration timeout) {
-        return Props.create(AddTemperatureQuery.class, deviceNameToActor, temperatures, requester, timeout);
+        return Props.create(AddTemperatureQuery.class, deviceNameToActor, temperatures, requesters, timeout);
     }
 
     @Override
-    public void preStart() {
-        deviceNameToActor.forEach((deviceName, actorRef) -> {
+    protected int scatter() {
+        stillWaiting.forEach((deviceName, actorRef) -> {
             Double temperature = temperatures.get(deviceName);
 
             actorRef.tell(new RecordTemperature(temperature, deviceName), getSelf());
         });
-    }
 
-    @Override
-    public void postStop() {
-        queryTimeoutTimer.cancel();
+        return stillWaiting.size();
     }
 
     @Override
-    public Receive createReceive() {
-        return waitingForReplies(new ArrayList<>(), deviceNameToActor);
-    }
-
-    private Receive waitingForReplies(List<String> repliesSoFar, Map<String, ActorRef> stillWaiting) {
-        return receiveBuilder()
+    protected ReceiveBuilder replies(ReceiveBuilder builder) {
+        return builder
                 .match(TemperatureDevice.TemperatureRecorded.class, r ->
-                        receivedResponse(r.getDeviceId(), repliesSoFar, stillWaiting)
-                )
-                .match(CollectionTimeout.class, t -> {
-                    requester.tell(new DeviceGroup.HomesWithTemperatureChanged(repliesSoFar), getSelf());
-
-                    getContext().stop(getSelf());
-                })
-                .build();
+                        receivedResponse(r.getDeviceId())
+                );
     }
 
-    private void receivedResponse(String deviceName,
-                                  List<String> repliesSoFar,
-                                  Map<String, ActorRef> stillWaiting) {
-        Map<String, ActorRef> newStillWaiting = new HashMap<>(stillWaiting);
-        ActorRef responded = newStillWaiting.remove(deviceName);
-
-        getContext().unwatch(responded);
+    private void receivedResponse(String deviceName) {
+        if (stillWaiting.remove(deviceName) != null) {
+            repliesSoFar.add(deviceName);
+            replyReceived();
+        }
+    }
 
-        List<String> newRepliesSoFar = new ArrayList<>(repliesSoFar);
-        newRepliesSoFar.add(deviceName);
+    @Override
+    protected void gather(boolean timedOut) {
+        for (Requester requester : requesters) {
+            List<String> recorded = new ArrayList<>(requester.devices.size());
 
-        if (stillWaiting.isEmpty()) {
-            requester.tell(new DeviceGroup.HomesWithTemperatureChanged(newRepliesSoFar), getSelf());
+            for (String deviceName : requester.devices) {
+                if (repliesSoFar.contains(deviceName)) {
+                    recorded.add(deviceName);
+                }
+            }
 
-            getContext().stop(getSelf());
-        } else {
-            getContext().become(waitingForReplies(newRepliesSoFar, newStillWaiting));
+            requester.requester.tell(new DeviceGroup.HomesWithTemperatureChanged(recorded), getSelf());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,90 @@
+package group.query;
+
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import akka.actor.Terminated;
+import akka.japi.pf.ReceiveBuilder;
+import device.TemperatureDevice;
+import metrics.IotMetrics;
+import metrics.QueryMetrics;
+import model.HistoryBucket;
+import model.HomeSeries;
+import query.ScatterGatherQuery;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scans the compressed series of every device of a home, devices which do not answer in time are left out.
+ */
+public class SeriesQuery extends ScatterGatherQuery {
+    private static final QueryMetrics METRICS = IotMetrics.query("series");
+
+    private final String houseName;
+    //A copy owned by this query, devices are removed from it as they answer
+    private final Map<ActorRef, String> stillWaiting;
+    private final TemperatureDevice.ScanSeries scanSeries;
+    private final Map<String, List<HistoryBucket>> replies;
+    private final ActorRef requester;
+
+    public SeriesQuery(String houseName,
+                       Map<ActorRef, String> actorToDeviceId,
+                       TemperatureDevice.ScanSeries scanSeries,
+                       ActorRef requester,
+                       FiniteDuration timeout) {
+        super(METRICS, timeout);
+        this.houseName = houseName;
+        this.stillWaiting = actorToDeviceId;
+        this.scanSeries = scanSeries;
+        this.replies = new HashMap<>(capacityFor(actorToDeviceId.size()));
+        this.requester = requester;
+    }
+
+    public static Props props(String houseName,
+                              Map<ActorRef, String> actorToDeviceId,
+                              TemperatureDevice.ScanSeries scanSeries,
+                              ActorRef requester,
+                              FiniteDuration timeout) {
+        return Props.create(SeriesQuery.class, houseName, actorToDeviceId, scanSeries, requester, timeout);
+    }
+
+    @Override
+    protected int scatter() {
+        for (ActorRef deviceActor : stillWaiting.keySet()) {
+            getContext().watch(deviceActor);
+            deviceActor.tell(scanSeries, getSelf());
+        }
+
+        return stillWaiting.size();
+    }
+
+    @Override
+    protected ReceiveBuilder replies(ReceiveBuilder builder) {
+        return builder
+                .match(TemperatureDevice.RespondHistory.class,
+                        r -> receivedResponse(getSender(), r.getBuckets())
+                )
+                .match(Terminated.class,
+                        t -> receivedResponse(t.getActor(), null)
+                );
+    }
+
+    private void receivedResponse(ActorRef deviceActor, List<HistoryBucket> buckets) {
+        getContext().unwatch(deviceActor);
+        String deviceId = stillWaiting.remove(deviceActor);
+
+        if (deviceId != null) {
+            if (buckets != null) {
+                replies.put(deviceId, buckets);
+            }
+            replyReceived();
+        }
+    }
+
+    @Override
+    protected void gather(boolean timedOut) {
+        requester.tell(new HomeSeries(houseName, replies), getSelf());
+    }
+}
@@ -1,125 +1,75 @@
 package group.query;
 
 import akka.actor.*;
-import akka.event.Logging;
-import akka.event.LoggingAdapter;
+import akka.japi.pf.ReceiveBuilder;
 import device.TemperatureDevice;
 import group.DeviceGroup;
+import metrics.IotMetrics;
+import metrics.QueryMetrics;
+import query.ScatterGatherQuery;
 import scala.concurrent.duration.FiniteDuration;
 
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 
-public class TemperatureQuery extends AbstractActor {
-    private static final class CollectionTimeout {
-    }
-
-    private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+public class TemperatureQuery extends ScatterGatherQuery {
+    private static final QueryMetrics METRICS = IotMetrics.query("temperature");
 
     private final String houseName;
-    private final Map<ActorRef, String> actorToDeviceId;
+    //A copy owned by this query, devices are removed from it as they answer
+    private final Map<ActorRef, String> stillWaiting;
+    private final Map<String, Double> replies;
     private final ActorRef requester;
-    private final ActorRef redirectTo;
-
-    private Cancellable queryTimeoutTimer;
 
-    public TemperatureQuery(String houseName, Map<ActorRef, String> actorToDeviceId, ActorRef requester, ActorRef redirectTo, FiniteDuration timeout) {
+    public TemperatureQuery(String houseName, Map<ActorRef, String> actorToDeviceId, ActorRef requester, FiniteDuration timeout) {
+        super(METRICS, timeout);
         this.houseName = houseName;
-        this.actorToDeviceId = actorToDeviceId;
+        this.stillWaiting = actorToDeviceId;
+        this.replies = new HashMap<>(capacityFor(actorToDeviceId.size()));
         this.requester = requester;
-        this.redirectTo = redirectTo;
-
-        queryTimeoutTimer = getContext().getSystem().scheduler().scheduleOnce(
-                timeout, getSelf(), new CollectionTimeout(), getContext().dispatcher(), getSelf()
-        );
     }
 
-    public static Props props(String houseName, Map<ActorRef, String> actorToDeviceId, ActorRef requester, ActorRef redirectTo, FiniteDuration timeout) {
-        return Props.create(TemperatureQuery.class, houseName, actorToDeviceId, requester, redirectTo, timeout);
+    public static Props props(String houseName, Map<ActorRef, String> actorToDeviceId, ActorRef requester, FiniteDuration timeout) {
+        return Props.create(TemperatureQuery.class, houseName, actorToDeviceId, requester, timeout);
     }
 
     @Override
-    public void preStart() {
-        for (ActorRef deviceActor : actorToDeviceId.keySet()) {
+    protected int scatter() {
+        for (ActorRef deviceActor : stillWaiting.keySet()) {
             getContext().watch(deviceActor);
             deviceActor.tell(new TemperatureDevice.ReadTemperature(0L), getSelf());
         }
-    }
 
-    @Override
-    public void postStop() {
-        queryTimeoutTimer.cancel();
+        return stillWaiting.size();
     }
 
     @Override
-    public Receive createReceive() {
-        return waitingForReplies(new HashMap<>(), actorToDeviceId.keySet());
-    }
-
-    private Receive waitingForReplies(
-            Map<String, Double> repliesSoFar,
-            Set<ActorRef> stillWaiting) {
-        return receiveBuilder()
+    protected ReceiveBuilder replies(ReceiveBuilder builder) {
+        return builder
                 .match(TemperatureDevice.RespondTemperature.class,
-                        r -> respondToTemperatureUpdate(r,
-                                stillWaiting,
-                                repliesSoFar)
+                        r -> receivedResponse(getSender(), r.value)
                 )
                 .match(Terminated.class,
-                        t -> receivedResponse(t.getActor(),
-                                null,
-                                stillWaiting,
-                                repliesSoFar)
-                )
-                .match(CollectionTimeout.class,
-                        t -> respondToCollectionTimeout(stillWaiting, repliesSoFar)
-                )
-                .build();
-    }
-
-    private void respondToCollectionTimeout(Set<ActorRef> stillWaiting,
-                                            Map<String, Double> repliesSoFar) {
-        Map<String, Double> replies = new HashMap<>(repliesSoFar);
-        for (ActorRef deviceActor : stillWaiting) {
-            String deviceId = actorToDeviceId.get(deviceActor);
-            replies.put(deviceId, null);
-        }
-        requester.tell(new DeviceGroup.RespondAllTemperatures(houseName, replies), getSelf());
-        getContext().stop(getSelf());
-    }
-
-    private void respondToTemperatureUpdate(TemperatureDevice.RespondTemperature response,
-                                            Set<ActorRef> stillWaiting,
-                                            Map<String, Double> repliesSoFar) {
-        ActorRef deviceActor = getSender();
-        Double responseValue = response.value;
-
-        receivedResponse(deviceActor, responseValue, stillWaiting, repliesSoFar);
+                        t -> receivedResponse(t.getActor(), null)
+                );
     }
 
-    private void receivedResponse(ActorRef deviceActor,
-                                 Double reading,
-                                 Set<ActorRef> stillWaiting,
-                                 Map<String, Double> repliesSoFar) {
+    private void receivedResponse(ActorRef deviceActor, Double reading) {
         getContext().unwatch(deviceActor);
-        String deviceId = actorToDeviceId.get(deviceActor);
+        String deviceId = stillWaiting.remove(deviceActor);
 
-        Set<ActorRef> newStillWaiting = new HashSet<>(stillWaiting);
-        newStillWaiting.remove(deviceActor);
+        if (deviceId != null) {
+            replies.put(deviceId, reading);
+            replyReceived();
+        }
+    }
 
-        Map<String, Double> newRepliesSoFar = new HashMap<>(repliesSoFar);
-        newRepliesSoFar.put(deviceId, reading);
-        if (newStillWaiting.isEmpty()) {
-            if (redirectTo == null) {
-                requester.tell(new DeviceGroup.RespondAllTemperatures(houseName, newRepliesSoFar), getSelf());
-            } else {
-                requester.tell(new DeviceGroup.RespondAllTemperaturesToActor(houseName, newRepliesSoFar, redirectTo), getSelf());
-            }
-            getContext().stop(getSelf());
-        } else {
-            getContext().become(waitingForReplies(newRepliesSoFar, newStillWaiting));
+    @Override
+    protected void gather(boolean timedOut) {
+        for (String deviceId : stillWaiting.values()) {
+            replies.put(deviceId, null);
         }
+
+        requester.tell(new DeviceGroup.RespondAllTemperatures(houseName, replies), getSelf());
     }
 }
@@ -0,0 +1,286 @@
+package heating;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.Props;
+import akka.actor.Terminated;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import com.typesafe.config.Config;
+import manager.DeviceManager;
+import metrics.IotMetrics;
+import model.HeatingSetting;
+import model.HeatingStatus;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-evaluates the heating of every home once per period. Each home owns a slot of a timer wheel,
+ * spread over the period by a hash of its name plus some jitter, and a single periodic tick moves
+ * the wheel forward, queueing the homes of the slots it passed. At most max-concurrent homes are
+ * evaluated at a time; the queue absorbs the rest, and the time a home waits past its slot is
+ * reported as lag.
+ */
+public class HeatingScheduler extends AbstractActor {
+
+    public static final class ScheduleHome {
+        private final String homeName;
+        private final ActorRef homeActor;
+
+        public ScheduleHome(String homeName, ActorRef homeActor) {
+            this.homeName = homeName;
+            this.homeActor = homeActor;
+        }
+    }
+
+    /**
+     * Queues every home for evaluation now, on top of the periodic passes.
+     */
+    public static final class RunPass {
+    }
+
+    public static final class GetStatus {
+    }
+
+    private static final class Tick {
+    }
+
+    private static final class Home {
+        final String name;
+        final ActorRef actor;
+        final int slot;
+        long lastEvaluatedNanos;
+
+        Home(String name, ActorRef actor, int slot, long lastEvaluatedNanos) {
+            this.name = name;
+            this.actor = actor;
+            this.slot = slot;
+            this.lastEvaluatedNanos = lastEvaluatedNanos;
+        }
+    }
+
+    private static final class Due {
+        final String homeName;
+        final long dueNanos;
+
+        Due(String homeName, long dueNanos) {
+            this.homeName = homeName;
+            this.dueNanos = dueNanos;
+        }
+    }
+
+    private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+
+    private final boolean periodic;
+    private final long periodNanos;
+    private final long tickNanos;
+    private final int jitterSlots;
+    private final int maxConcurrent;
+    private final long evaluationTimeoutNanos;
+
+    private final List<List<String>> wheel;
+    private final Map<String, Home> homes = new HashMap<>();
+    private final Map<ActorRef, String> actorToHome = new HashMap<>();
+    private final ArrayDeque<Due> pending = new ArrayDeque<>();
+    private final Set<String> pendingHomes = new HashSet<>();
+    private final Map<String, Long> inFlight = new HashMap<>();
+
+    private final long startNanos = System.nanoTime();
+    private long processedTick = 0;
+    private long lastLagNanos = 0;
+    private long maxLagNanos = 0;
+    private long evaluated = 0;
+    private long timedOut = 0;
+    private long skipped = 0;
+    private Cancellable tickTimer;
+
+    public HeatingScheduler(Config config) {
+        this.periodic = config.getBoolean("periodic");
+        this.periodNanos = config.getDuration("period", TimeUnit.NANOSECONDS);
+        this.tickNanos = config.getDuration("tick", TimeUnit.NANOSECONDS);
+        this.maxConcurrent = config.getInt("max-concurrent");
+        this.evaluationTimeoutNanos = config.getDuration("evaluation-timeout", TimeUnit.NANOSECONDS);
+
+        final int slots = (int) Math.max(1, periodNanos / tickNanos);
+        this.jitterSlots = (int) (slots * config.getDouble("jitter"));
+        this.wheel = new ArrayList<>(slots);
+
+        for (int slot = 0; slot < slots; slot++) {
+            wheel.add(new ArrayList<>());
+        }
+    }
+
+    public static Props props(Config config) {
+        return Props.create(HeatingScheduler.class, config);
+    }
+
+    @Override
+    public void preStart() {
+        final FiniteDuration tick = new FiniteDuration(tickNanos, TimeUnit.NANOSECONDS);
+
+        tickTimer = getContext().getSystem().scheduler().schedule(
+                tick, tick, getSelf(), new Tick(), getContext().dispatcher(), getSelf()
+        );
+
+        log.info("Heating scheduler started, {} slots of {} ms", wheel.size(), TimeUnit.NANOSECONDS.toMillis(tickNanos));
+    }
+
+    @Override
+    public void postStop() {
+        tickTimer.cancel();
+    }
+
+    private void onScheduleHome(ScheduleHome scheduleHome) {
+        final Home previous = homes.remove(scheduleHome.homeName);
+        if (previous != null) {
+            wheel.get(previous.slot).remove(previous.name);
+            actorToHome.remove(previous.actor);
+        }
+
+        final int jitter = jitterSlots == 0 ? 0 : ThreadLocalRandom.current().nextInt(jitterSlots + 1);
+        final int slot = (Math.floorMod(scheduleHome.homeName.hashCode(), wheel.size()) + jitter) % wheel.size();
+
+        homes.put(scheduleHome.homeName, new Home(scheduleHome.homeName, scheduleHome.homeActor, slot, System.nanoTime()));
+        actorToHome.put(scheduleHome.homeActor, scheduleHome.homeName);
+        wheel.get(slot).add(scheduleHome.homeName);
+        getContext().watch(scheduleHome.homeActor);
+    }
+
+    private void onTerminated(Terminated terminated) {
+        final String homeName = actorToHome.remove(terminated.getActor());
+
+        //A home started again under the same name has already replaced its entry
+        if (homeName != null) {
+            wheel.get(homes.remove(homeName).slot).remove(homeName);
+            inFlight.remove(homeName);
+        }
+    }
+
+    private void onTick() {
+        final long now = System.nanoTime();
+        final long currentTick = (now - startNanos) / tickNanos;
+
+        if (periodic) {
+            //After a long pause the whole wheel is passed once, not once per missed period
+            long tick = Math.max(processedTick + 1, currentTick - wheel.size() + 1);
+
+            for (; tick <= currentTick; tick++) {
+                final int slot = (int) (tick % wheel.size());
+
+                if (slot == 0) {
+                    maxLagNanos = 0;
+                }
+
+                for (String homeName : wheel.get(slot)) {
+                    queue(homeName, startNanos + tick * tickNanos);
+                }
+            }
+        }
+        processedTick = currentTick;
+
+        final Iterator<Map.Entry<String, Long>> running = inFlight.entrySet().iterator();
+        while (running.hasNext()) {
+            if (now - running.next().getValue() > evaluationTimeoutNanos) {
+                running.remove();
+                timedOut++;
+                IotMetrics.HEATING_TIMEOUTS.increment();
+            }
+        }
+
+        dispatch();
+    }
+
+    private void queue(String homeName, long dueNanos) {
+        if (pendingHomes.contains(homeName) || inFlight.containsKey(homeName)) {
+            skipped++;
+            return;
+        }
+
+        pendingHomes.add(homeName);
+        pending.add(new Due(homeName, dueNanos));
+    }
+
+    private void dispatch() {
+        while (inFlight.size() < maxConcurrent && !pending.isEmpty()) {
+            final Due due = pending.poll();
+            pendingHomes.remove(due.homeName);
+
+            final Home home = homes.get(due.homeName);
+            if (home == null) {
+                continue;
+            }
+
+            final long now = System.nanoTime();
+            lastLagNanos = Math.max(0, now - due.dueNanos);
+            maxLagNanos = Math.max(maxLagNanos, lastLagNanos);
+            IotMetrics.HEATING_LAG.record(lastLagNanos);
+
+            inFlight.put(home.name, now);
+            home.actor.tell(new DeviceManager.AlterHeatingSettings(), getSelf());
+        }
+    }
+
+    private void onEvaluated(HeatingSetting heatingSetting) {
+        final String homeName = actorToHome.get(getSender());
+
+        if (homeName != null && inFlight.remove(homeName) != null) {
+            homes.get(homeName).lastEvaluatedNanos = System.nanoTime();
+            evaluated++;
+        }
+
+        dispatch();
+    }
+
+    private void onRunPass() {
+        final long now = System.nanoTime();
+
+        homes.keySet().forEach(homeName -> queue(homeName, now));
+        dispatch();
+    }
+
+    private void onGetStatus() {
+        final long now = System.nanoTime();
+        long oldestEvaluatedNanos = now;
+
+        for (Home home : homes.values()) {
+            oldestEvaluatedNanos = Math.min(oldestEvaluatedNanos, home.lastEvaluatedNanos);
+        }
+
+        getSender().tell(new HeatingStatus(
+                TimeUnit.NANOSECONDS.toMillis(periodic ? periodNanos : 0),
+                homes.size(),
+                pending.size(),
+                inFlight.size(),
+                maxConcurrent,
+                TimeUnit.NANOSECONDS.toMillis(lastLagNanos),
+                TimeUnit.NANOSECONDS.toMillis(maxLagNanos),
+                TimeUnit.NANOSECONDS.toMillis(now - oldestEvaluatedNanos),
+                evaluated,
+                timedOut,
+                skipped
+        ), getSelf());
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(Tick.class, t -> onTick())
+                .match(ScheduleHome.class, this::onScheduleHome)
+                .match(Terminated.class, this::onTerminated)
+                .match(HeatingSetting.class, this::onEvaluated)
+                .match(RunPass.class, r -> onRunPass())
+                .match(GetStatus.class, r -> onGetStatus())
+                .build();
+    }
+}
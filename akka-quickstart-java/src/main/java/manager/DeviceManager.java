@@ -2,27 +2,105 @@ package manager;
 
 import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.NotInfluenceReceiveTimeout;
 import akka.actor.Props;
 import akka.actor.Terminated;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
+import device.TemperatureDevice;
+import dispatch.IotDispatchers;
 import group.DeviceGroup;
+import group.HomeVersions;
+import group.Tombstones;
+import group.enums.DeviceStorage;
 import group.enums.HeatingSettings;
+import heating.HeatingScheduler;
+import manager.query.ChangesSinceQuery;
 import manager.query.CreateHomeQuery;
 import manager.query.GetAllDevicesInHomesQuery;
+import metrics.IotMetrics;
+import metrics.SheddableRequest;
 import model.HeatingSetting;
+import model.HomeSeries;
+import model.HomeStats;
+import persistence.EventJournal;
+import persistence.HomeState;
 import scala.concurrent.duration.FiniteDuration;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 
 public class DeviceManager extends AbstractActor {
     private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
 
-    public static Props props() {
-        return Props.create(DeviceManager.class);
+    private final EventJournal journal;
+    private final ActorRef heatingScheduler;
+    //Null outside of a cluster, where a manager is never moved
+    private final Successor successor;
+    private final String homesDispatcher = IotDispatchers.lookup(getContext().getSystem(), IotDispatchers.HOMES);
+    private final String queriesDispatcher = IotDispatchers.lookup(getContext().getSystem(), IotDispatchers.QUERIES);
+
+    public DeviceManager(EventJournal journal, ActorRef heatingScheduler, Successor successor) {
+        this.journal = journal;
+        this.heatingScheduler = heatingScheduler;
+        this.successor = successor;
+    }
+
+    public static Props props(EventJournal journal, ActorRef heatingScheduler) {
+        return props(journal, heatingScheduler, null);
+    }
+
+    public static Props props(EventJournal journal, ActorRef heatingScheduler, Successor successor) {
+        return Props.create(DeviceManager.class, journal, heatingScheduler, successor)
+                .withMailbox("iot.mailboxes.device-manager");
+    }
+
+    /**
+     * Reaches the manager started in place of one moved to another node of the cluster.
+     */
+    public interface Successor {
+        void tell(ActorSystem system, ActorRef manager, Object message, ActorRef sender);
+    }
+
+    /**
+     * Sent by Cluster Sharding before the manager is moved to another node: every home is packed and
+     * sent to the {@link Successor} in a {@link HomesHandedOff}, followed by the messages held meanwhile.
+     */
+    public static final class HandOff {
+    }
+
+    /**
+     * The homes of a manager moved to another node, packed by {@link HomeState#toBytes()}.
+     */
+    public static final class HomesHandedOff {
+        private final Map<String, byte[]> homes;
+
+        public HomesHandedOff(Map<String, byte[]> homes) {
+            this.homes = homes;
+        }
+
+        public Map<String, byte[]> getHomes() {
+            return homes;
+        }
+    }
+
+    public static final class RestoreHomes {
+        private final List<HomeState> homeStates;
+
+        public RestoreHomes(List<HomeState> homeStates) {
+            this.homeStates = homeStates;
+        }
+
+        public List<HomeState> getHomeStates() {
+            return homeStates;
+        }
     }
 
     public static final class RequestTrackDevice {
@@ -35,10 +113,47 @@ public class DeviceManager extends AbstractActor {
         }
     }
 
-    public static final class AlterHeatingSettings {
+    //Periodic heating evaluations do not keep an idle home from being passivated
+    public static final class AlterHeatingSettings implements NotInfluenceReceiveTimeout {
+    }
+
+    /**
+     * A home asking to be passivated after it was idle for iot.passivation.idle-timeout.
+     */
+    public static final class PassivateHome {
+        private final String homeName;
+
+        public PassivateHome(String homeName) {
+            this.homeName = homeName;
+        }
+
+        public String getHomeName() {
+            return homeName;
+        }
+    }
+
+    /**
+     * The state of a passivated home, packed by {@link HomeState#toBytes()}, sent just before it stops.
+     */
+    public static final class HomePassivated {
+        private final String homeName;
+        private final byte[] state;
+
+        public HomePassivated(String homeName, byte[] state) {
+            this.homeName = homeName;
+            this.state = state;
+        }
+
+        public String getHomeName() {
+            return homeName;
+        }
+
+        public byte[] getState() {
+            return state;
+        }
     }
 
-    public static final class ChangeHeatingSettings {
+    public static final class ChangeHeatingSettings implements SheddableRequest {
         private String homeName;
         private boolean blockHeating;
 
@@ -56,18 +171,22 @@ public class DeviceManager extends AbstractActor {
         }
     }
 
-    public static final class GetHeatingSettings {
+    public static final class GetHeatingSettings implements SheddableRequest {
         private final String homeName;
 
         public GetHeatingSettings(String homeName) {
             this.homeName = homeName;
         }
+
+        public String getHomeName() {
+            return homeName;
+        }
     }
 
-    public static final class GetHomesNumber {
+    public static final class GetHomesNumber implements SheddableRequest {
     }
 
-    public static final class IfHomeExists {
+    public static final class IfHomeExists implements SheddableRequest {
         private final String homeName;
 
         public IfHomeExists(String homeName) {
@@ -79,7 +198,109 @@ public class DeviceManager extends AbstractActor {
         }
     }
 
-    public static final class GetDevicesInHomes {
+    public static final class GetDevicesInHomes implements SheddableRequest {
+    }
+
+    /**
+     * Asks for the homes and devices changed after a sequence number of {@link HomeVersions},
+     * valid only with the epoch it was read in. A null epoch asks for everything.
+     */
+    public static final class GetChangesSince implements SheddableRequest {
+        private final Long epoch;
+        private final long since;
+
+        public GetChangesSince(Long epoch, long since) {
+            this.epoch = epoch;
+            this.since = since;
+        }
+
+        public Long getEpoch() {
+            return epoch;
+        }
+
+        public long getSince() {
+            return since;
+        }
+    }
+
+    /**
+     * The changes up to sequence, to ask for the next ones with. Removed homes and devices are
+     * meant to be dropped before applying the homes, a home in both was replaced as a whole.
+     * After a reset the homes are every home and replace everything the client had.
+     */
+    public static final class RespondChanges {
+        private final long epoch;
+        private final long sequence;
+        private final boolean reset;
+        private final Map<String, List<Map.Entry<String, Double>>> homeToDevices;
+        private final List<String> removedHomes;
+        private final Map<String, List<String>> removedDevices;
+
+        public RespondChanges(long epoch, long sequence, boolean reset,
+                              Map<String, List<Map.Entry<String, Double>>> homeToDevices,
+                              List<String> removedHomes,
+                              Map<String, List<String>> removedDevices) {
+            this.epoch = epoch;
+            this.sequence = sequence;
+            this.reset = reset;
+            this.homeToDevices = homeToDevices;
+            this.removedHomes = removedHomes;
+            this.removedDevices = removedDevices;
+        }
+
+        public long getEpoch() {
+            return epoch;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public boolean isReset() {
+            return reset;
+        }
+
+        public Map<String, List<Map.Entry<String, Double>>> getHomeToDevices() {
+            return homeToDevices;
+        }
+
+        public List<String> getRemovedHomes() {
+            return removedHomes;
+        }
+
+        public Map<String, List<String>> getRemovedDevices() {
+            return removedDevices;
+        }
+    }
+
+    public static final class GetHomeNames implements SheddableRequest {
+        private final String after;
+        private final int limit;
+
+        public GetHomeNames(String after, int limit) {
+            this.after = after;
+            this.limit = limit;
+        }
+
+        public String getAfter() {
+            return after;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+    }
+
+    public static final class RespondHomeNames {
+        private final List<String> homeNames;
+
+        public RespondHomeNames(List<String> homeNames) {
+            this.homeNames = homeNames;
+        }
+
+        public List<String> getHomeNames() {
+            return homeNames;
+        }
     }
 
     public static final class RespondDevicesInHome {
@@ -97,7 +318,7 @@ public class DeviceManager extends AbstractActor {
     public static final class RespondHomesNumber {
         public final Integer homesNumber;
 
-        RespondHomesNumber(Integer homesNumber) {
+        public RespondHomesNumber(Integer homesNumber) {
             this.homesNumber = homesNumber;
         }
     }
@@ -114,6 +335,10 @@ public class DeviceManager extends AbstractActor {
             this.homeName = homeName;
             this.temperatureDevices = temperatureDevices;
         }
+
+        public List<String> getTemperatureDevices() {
+            return temperatureDevices;
+        }
     }
 
     public static final class HomeAlreadyExists implements HomeCreation {
@@ -127,13 +352,19 @@ public class DeviceManager extends AbstractActor {
         }
     }
 
-    public static final class CreateHome {
+    public static final class CreateHome implements SheddableRequest {
         private final String homeName;
         private final List<String> temperatureDevices;
+        private final DeviceStorage storage;
 
         public CreateHome(String homeName, List<String> temperatureDevices) {
+            this(homeName, temperatureDevices, DeviceStorage.ACTORS);
+        }
+
+        public CreateHome(String homeName, List<String> temperatureDevices, DeviceStorage storage) {
             this.homeName = homeName;
             this.temperatureDevices = temperatureDevices;
+            this.storage = storage == null ? DeviceStorage.ACTORS : storage;
         }
 
         public String getHomeName() {
@@ -143,9 +374,13 @@ public class DeviceManager extends AbstractActor {
         public List<String> getTemperatureDevices() {
             return temperatureDevices;
         }
+
+        public DeviceStorage getStorage() {
+            return storage;
+        }
     }
 
-    public static final class SetTemperatures {
+    public static final class SetTemperatures implements SheddableRequest {
         private final String homeName;
         private final Map<String, Double> deviceToTemperature;
 
@@ -163,16 +398,108 @@ public class DeviceManager extends AbstractActor {
         }
     }
 
-    public static final class GetHomeTemperature {
+    public static final class GetHomeTemperature implements SheddableRequest {
         private final String homeName;
+        private final Long maxStalenessMillis;
 
         public GetHomeTemperature(String homeName) {
+            this(homeName, null);
+        }
+
+        public GetHomeTemperature(String homeName, Long maxStalenessMillis) {
             this.homeName = homeName;
+            this.maxStalenessMillis = maxStalenessMillis;
+        }
+
+        public String getHomeName() {
+            return homeName;
+        }
+
+        public Long getMaxStalenessMillis() {
+            return maxStalenessMillis;
+        }
+    }
+
+    public static final class GetHomeStats implements SheddableRequest {
+        private final String homeName;
+
+        public GetHomeStats(String homeName) {
+            this.homeName = homeName;
+        }
+
+        public String getHomeName() {
+            return homeName;
+        }
+    }
+
+    public static final class GetDeviceHistory implements SheddableRequest {
+        private final String homeName;
+        private final String deviceId;
+        private final TemperatureDevice.ReadHistory readHistory;
+
+        public GetDeviceHistory(String homeName, String deviceId, TemperatureDevice.ReadHistory readHistory) {
+            this.homeName = homeName;
+            this.deviceId = deviceId;
+            this.readHistory = readHistory;
+        }
+
+        public String getHomeName() {
+            return homeName;
+        }
+
+        public String getDeviceId() {
+            return deviceId;
+        }
+
+        public TemperatureDevice.ReadHistory getReadHistory() {
+            return readHistory;
+        }
+    }
+
+    public static final class ScanHomeSeries implements SheddableRequest {
+        private final String homeName;
+        private final TemperatureDevice.ScanSeries scanSeries;
+
+        public ScanHomeSeries(String homeName, TemperatureDevice.ScanSeries scanSeries) {
+            this.homeName = homeName;
+            this.scanSeries = scanSeries;
+        }
+
+        public String getHomeName() {
+            return homeName;
+        }
+
+        public TemperatureDevice.ScanSeries getScanSeries() {
+            return scanSeries;
         }
     }
 
     final Map<String, ActorRef> groupIdToActor = new HashMap<>();
     final Map<ActorRef, String> actorToGroupId = new HashMap<>();
+    //Every home, running or passivated, kept sorted for paging through the homes by name
+    final NavigableSet<String> homeNames = new TreeSet<>();
+
+    //Homes stopped for being idle, packed by HomeState.toBytes() until their next message
+    private final Map<String, byte[]> passivatedHomes = new HashMap<>();
+    //Homes asked to passivate and not stopped yet, with the messages held back for them meanwhile
+    private final Map<String, List<HeldMessage>> passivatingHomes = new HashMap<>();
+    //Homes removed, for clients asking for changes
+    private final Tombstones removedHomes = new Tombstones(getContext().getSystem().settings().config()
+            .getDuration("iot.changes.tombstone-retention", TimeUnit.MILLISECONDS));
+    //Messages arriving while the homes are handed off, sent to the successor behind them
+    private final List<HeldMessage> heldForSuccessor = new ArrayList<>();
+    private final HomeVersions versions = HomeVersions.get(getContext().getSystem());
+    private final HomeRegistry registry = HomeRegistry.get(getContext().getSystem());
+
+    private static final class HeldMessage {
+        final Object message;
+        final ActorRef sender;
+
+        HeldMessage(Object message, ActorRef sender) {
+            this.message = message;
+            this.sender = sender;
+        }
+    }
 
     @Override
     public void preStart() {
@@ -181,38 +508,136 @@ public class DeviceManager extends AbstractActor {
 
     @Override
     public void postStop() {
+        //Stopping the manager stops its homes, they are no longer found through the registry
+        homeNames.forEach(registry::removed);
+        IotMetrics.PASSIVATED_HOMES.add(-passivatedHomes.size());
         log.info("DeviceManager stopped");
     }
 
+    /**
+     * Holds the message back if its home is being passivated, it is handled again once the home stopped.
+     */
+    private boolean heldWhilePassivating(String homeName, Object message) {
+        final List<HeldMessage> held = passivatingHomes.get(homeName);
+
+        if (held == null) {
+            return false;
+        }
+
+        held.add(new HeldMessage(message, getSender()));
+        return true;
+    }
+
+    /**
+     * The running actor of the home, started again from its packed state if it was passivated,
+     * or null for an unknown home.
+     */
+    private ActorRef activeHome(String homeName) {
+        final ActorRef home = groupIdToActor.get(homeName);
+
+        if (home != null) {
+            return home;
+        }
+
+        final byte[] packed = passivatedHomes.remove(homeName);
+
+        if (packed == null) {
+            return null;
+        }
+
+        IotMetrics.PASSIVATED_HOMES.decrement();
+        final HomeState homeState = HomeState.fromBytes(packed);
+
+        return startHome(homeName, DeviceGroup.props(homeName, journal, homeState.getStorage(), homeState));
+    }
+
+    private void onPassivateHome(PassivateHome passivateHome) {
+        final String homeName = passivateHome.getHomeName();
+
+        //A request from a home stopped or replaced since is ignored
+        if (!getSender().equals(groupIdToActor.get(homeName))) {
+            return;
+        }
+
+        groupIdToActor.remove(homeName);
+        registry.passivating(homeName);
+        passivatingHomes.put(homeName, new ArrayList<>());
+
+        //After every message already forwarded to the home, so its state includes them
+        getSender().tell(new DeviceGroup.Passivate(), getSelf());
+    }
+
+    private void onHomePassivated(HomePassivated homePassivated) {
+        if (passivatingHomes.containsKey(homePassivated.getHomeName())) {
+            passivatedHomes.put(homePassivated.getHomeName(), homePassivated.getState());
+            IotMetrics.PASSIVATED_HOMES.increment();
+        }
+    }
+
     private void onTrackDevice(RequestTrackDevice trackMsg) {
         String groupId = trackMsg.groupId;
-        ActorRef ref = groupIdToActor.get(groupId);
+        if (heldWhilePassivating(groupId, trackMsg)) {
+            return;
+        }
+
+        ActorRef ref = activeHome(groupId);
         if (ref != null) {
             ref.forward(trackMsg, getContext());
         } else {
             log.info("Creating home actor for {}", groupId);
-            ActorRef homeActor = createHome(groupId);
+            ActorRef homeActor = createHome(groupId, DeviceStorage.ACTORS);
             homeActor.forward(trackMsg, getContext());
         }
     }
 
     private void onTerminated(Terminated t) {
         ActorRef groupActor = t.getActor();
-        String groupId = actorToGroupId.get(groupActor);
+        String groupId = actorToGroupId.remove(groupActor);
+        final List<HeldMessage> held = passivatingHomes.remove(groupId);
+
+        if (held != null) {
+            //Handled again behind the messages already queued, starting the home again if there are any
+            held.forEach(message -> getSelf().tell(message.message, message.sender));
+
+            if (passivatedHomes.containsKey(groupId)) {
+                log.debug("Home {} has been passivated", groupId);
+                return;
+            }
+        }
+
         log.info("Home {} has been terminated", groupId);
-        actorToGroupId.remove(groupActor);
         groupIdToActor.remove(groupId);
+        homeNames.remove(groupId);
+        registry.removed(groupId);
+        removedHomes.add(groupId, versions.stamp());
+        expireRemovedHomes();
     }
 
     private void onGetHomesNumber() {
-        getSender().tell(new RespondHomesNumber(groupIdToActor.size()), getSelf());
+        getSender().tell(new RespondHomesNumber(homeNames.size()), getSelf());
+    }
+
+    private ActorRef createHome(String homeName, DeviceStorage storage) {
+        journal.homeCreated(homeName, storage);
+
+        return startHome(homeName, DeviceGroup.props(homeName, journal, storage, null));
+    }
+
+    private void onRestoreHomes(RestoreHomes restoreHomes) {
+        for (HomeState homeState : restoreHomes.getHomeStates()) {
+            startHome(homeState.getHomeName(),
+                    DeviceGroup.props(homeState.getHomeName(), journal, homeState.getStorage(), homeState));
+        }
     }
 
-    private ActorRef createHome(String homeName) {
-        ActorRef groupActor = getContext().actorOf(DeviceGroup.props(homeName), homeName);
+    private ActorRef startHome(String homeName, Props groupProps) {
+        ActorRef groupActor = getContext().actorOf(groupProps.withDispatcher(homesDispatcher), homeName);
         getContext().watch(groupActor);
         groupIdToActor.put(homeName, groupActor);
         actorToGroupId.put(groupActor, homeName);
+        homeNames.add(homeName);
+        registry.started(homeName, groupActor);
+        heatingScheduler.tell(new HeatingScheduler.ScheduleHome(homeName, groupActor), getSelf());
 
         return groupActor;
     }
@@ -221,26 +646,27 @@ public class DeviceManager extends AbstractActor {
         final String homeName = home.getHomeName();
         final List<String> homeDevices = home.getTemperatureDevices();
 
-        ActorRef ref = groupIdToActor.get(homeName);
-
-        if (ref != null) {
+        if (homeNames.contains(homeName)) {
             getSender().tell(new HomeAlreadyExists(), getSelf());
         } else {
             log.info("Creating home actor for {}", homeName);
 
-            ActorRef homeActor = createHome(homeName);
+            ActorRef homeActor = createHome(homeName, home.getStorage());
             getContext().actorOf(CreateHomeQuery.props(homeName,
                     homeActor,
                     homeDevices,
                     getSender(),
-                    new FiniteDuration(3, TimeUnit.SECONDS)));
+                    new FiniteDuration(3, TimeUnit.SECONDS)).withDispatcher(queriesDispatcher));
         }
     }
 
     private void onGetHomeTemperature(GetHomeTemperature home) {
         final String homeName = home.homeName;
+        if (heldWhilePassivating(homeName, home)) {
+            return;
+        }
 
-        ActorRef ref = groupIdToActor.get(homeName);
+        ActorRef ref = activeHome(homeName);
 
         if (ref != null) {
             log.info("Getting temperature for home {}", homeName);
@@ -252,49 +678,124 @@ public class DeviceManager extends AbstractActor {
     }
 
     private void onGetDevicesInHomes() {
-        if (groupIdToActor.isEmpty()) {
+        if (homeNames.isEmpty()) {
             getSender().tell(new RespondDevicesInHome(null), getSelf());
+            return;
         }
 
-        getContext().actorOf(GetAllDevicesInHomesQuery.props(groupIdToActor,
-                actorToGroupId,
+        //Running homes are asked, passivated ones answered by the query from their packed state without starting them
+        Map<ActorRef, String> runningHomes = new HashMap<>(groupIdToActor.size() * 2);
+        groupIdToActor.forEach((homeName, homeActor) -> runningHomes.put(homeActor, homeName));
+
+        getContext().actorOf(GetAllDevicesInHomesQuery.props(runningHomes,
+                new HashMap<>(passivatedHomes),
                 getSender(),
-                new FiniteDuration(3, TimeUnit.SECONDS)));
+                new FiniteDuration(3, TimeUnit.SECONDS)).withDispatcher(queriesDispatcher));
+    }
+
+    //A home removed for longer than the retention is forgotten, its version as well unless it was created again
+    private void expireRemovedHomes() {
+        removedHomes.expire(homeName -> {
+            if (!homeNames.contains(homeName)) {
+                versions.forget(homeName);
+            }
+        });
+    }
+
+    private void onGetChangesSince(GetChangesSince getChangesSince) {
+        expireRemovedHomes();
+        //A client whose token is older than an expired removal may have missed it and starts over
+        final boolean reset = getChangesSince.getEpoch() == null || getChangesSince.getEpoch() != versions.epoch()
+                || !removedHomes.covers(getChangesSince.getSince());
+        //Every change stamped up to here is seen by the checks below, so the reply covers up to it
+        final long sequence = versions.sequence();
+        final long since = reset ? -1 : getChangesSince.getSince();
+
+        Map<ActorRef, String> changedHomes = new HashMap<>();
+        Map<String, byte[]> passivatedChanged = new HashMap<>();
+        boolean incomplete = false;
+
+        //Homes unchanged since are neither asked nor unpacked
+        for (String homeName : homeNames) {
+            if (versions.changedAt(homeName) <= since) {
+                continue;
+            }
+
+            final ActorRef home = groupIdToActor.get(homeName);
+            final byte[] packed = passivatedHomes.get(homeName);
+
+            if (home != null) {
+                changedHomes.put(home, homeName);
+            } else if (packed != null) {
+                passivatedChanged.put(homeName, packed);
+            } else {
+                //Being passivated, neither the actor nor the packed state can answer
+                incomplete = true;
+            }
+        }
+
+        List<String> removed = reset ? new ArrayList<>() : removedHomes.removedAfter(since);
+
+        getContext().actorOf(ChangesSinceQuery.props(versions.epoch(),
+                sequence,
+                since,
+                reset,
+                incomplete,
+                changedHomes,
+                passivatedChanged,
+                removed,
+                getSender(),
+                new FiniteDuration(3, TimeUnit.SECONDS)).withDispatcher(queriesDispatcher));
+    }
+
+    private void onGetHomeNames(GetHomeNames getHomeNames) {
+        final SortedSet<String> page = getHomeNames.getAfter() == null
+                ? homeNames
+                : homeNames.tailSet(getHomeNames.getAfter(), false);
+        final List<String> pageNames = new ArrayList<>(Math.min(page.size(), getHomeNames.getLimit()));
+
+        for (String homeName : page) {
+            if (pageNames.size() == getHomeNames.getLimit()) {
+                break;
+            }
+
+            pageNames.add(homeName);
+        }
+
+        getSender().tell(new RespondHomeNames(pageNames), getSelf());
     }
 
     private void onSetTemperatures(SetTemperatures ref) {
         final String homeName = ref.getHomeName();
         final Map<String, Double> deviceToTemperature = ref.getDeviceToTemperature();
+        if (heldWhilePassivating(homeName, ref)) {
+            return;
+        }
 
-        ActorRef homeActor = groupIdToActor.get(homeName);
+        ActorRef homeActor = activeHome(homeName);
 
         if (homeActor != null) {
             homeActor.tell(new DeviceGroup.AddTemperatures(deviceToTemperature), getSender());
+        } else {
+            getSender().tell(new DeviceGroup.HomesWithTemperatureChanged(new ArrayList<>()), getSelf());
         }
     }
 
-    private void onAlterHeatingSystem() {
-        actorToGroupId
-                .keySet()
-                .forEach(actorRef -> actorRef.tell(new AlterHeatingSettings(), getSelf()));
-    }
-
-    private void onRespondAllTemperatures(DeviceGroup.RespondAllTemperatures allTemperatures) {
-        log.info("Heating settings changed for home: {} with success", allTemperatures.getHouseName());
-    }
-
     private void onIfHomeExists(IfHomeExists ifHomeExists) {
         final String homeName = ifHomeExists.getHomeName();
 
-        final Boolean homeExists = groupIdToActor.containsKey(homeName);
+        final Boolean homeExists = homeNames.contains(homeName);
 
         getSender().tell(homeExists, getSelf());
     }
 
     private void onGetHeatingSettings(GetHeatingSettings getHeatingSettings) {
         final String homeName = getHeatingSettings.homeName;
+        if (heldWhilePassivating(homeName, getHeatingSettings)) {
+            return;
+        }
 
-        ActorRef home = groupIdToActor.get(homeName);
+        ActorRef home = activeHome(homeName);
 
         if (home != null) {
             home.forward(getHeatingSettings, getContext());
@@ -303,30 +804,149 @@ public class DeviceManager extends AbstractActor {
         }
     }
 
+    private void onGetDeviceHistory(GetDeviceHistory getDeviceHistory) {
+        if (heldWhilePassivating(getDeviceHistory.getHomeName(), getDeviceHistory)) {
+            return;
+        }
+
+        ActorRef home = activeHome(getDeviceHistory.getHomeName());
+
+        if (home != null) {
+            home.forward(getDeviceHistory, getContext());
+        } else {
+            getSender().tell(new TemperatureDevice.RespondHistory(getDeviceHistory.getDeviceId(), null), getSelf());
+        }
+    }
+
+    private void onGetHomeStats(GetHomeStats getHomeStats) {
+        if (heldWhilePassivating(getHomeStats.getHomeName(), getHomeStats)) {
+            return;
+        }
+
+        ActorRef home = activeHome(getHomeStats.getHomeName());
+
+        if (home != null) {
+            home.forward(getHomeStats, getContext());
+        } else {
+            getSender().tell(new HomeStats(null, 0, null, null, null), getSelf());
+        }
+    }
+
+    private void onScanHomeSeries(ScanHomeSeries scanHomeSeries) {
+        if (heldWhilePassivating(scanHomeSeries.getHomeName(), scanHomeSeries)) {
+            return;
+        }
+
+        ActorRef home = activeHome(scanHomeSeries.getHomeName());
+
+        if (home != null) {
+            home.forward(scanHomeSeries, getContext());
+        } else {
+            getSender().tell(new HomeSeries(null, null), getSelf());
+        }
+    }
+
     private void onChangeHeatingSettings(ChangeHeatingSettings changeHeatingSettings) {
         final String homeName = changeHeatingSettings.homeName;
+        if (heldWhilePassivating(homeName, changeHeatingSettings)) {
+            return;
+        }
 
-        ActorRef home = groupIdToActor.get(homeName);
+        ActorRef home = activeHome(homeName);
 
         if (home != null) {
             home.forward(changeHeatingSettings, getContext());
         }
     }
 
+    private void onHandOff() {
+        if (successor == null) {
+            getContext().stop(getSelf());
+            return;
+        }
+
+        log.info("Handing off {} homes", homeNames.size());
+
+        //Every running home packs its state as when passivated, after the messages already forwarded to it
+        groupIdToActor.forEach((homeName, home) -> {
+            registry.passivating(homeName);
+            passivatingHomes.put(homeName, new ArrayList<>());
+            home.tell(new DeviceGroup.Passivate(), getSelf());
+        });
+        groupIdToActor.clear();
+
+        getContext().become(handingOff());
+        handOffOnceStopped();
+    }
+
+    private void onHandingOffTerminated(Terminated t) {
+        final String homeName = actorToGroupId.remove(t.getActor());
+        final List<HeldMessage> held = passivatingHomes.remove(homeName);
+
+        if (held != null) {
+            heldForSuccessor.addAll(held);
+        }
+
+        handOffOnceStopped();
+    }
+
+    private void handOffOnceStopped() {
+        if (!actorToGroupId.isEmpty()) {
+            return;
+        }
+
+        //Homes stopped without their state, such as a failed one, are not handed off
+        successor.tell(getContext().getSystem(), getSelf(), new HomesHandedOff(new HashMap<>(passivatedHomes)), getSelf());
+        heldForSuccessor.forEach(message ->
+                successor.tell(getContext().getSystem(), getSelf(), message.message, message.sender));
+        getContext().stop(getSelf());
+    }
+
+    private void onHomesHandedOff(HomesHandedOff homesHandedOff) {
+        homesHandedOff.getHomes().forEach((homeName, packed) -> {
+            //A home created here while the homes were on their way is kept
+            if (homeNames.add(homeName)) {
+                passivatedHomes.put(homeName, packed);
+                registry.passivated(homeName);
+                IotMetrics.PASSIVATED_HOMES.increment();
+            }
+        });
+
+        log.info("Took over {} homes", homesHandedOff.getHomes().size());
+    }
+
+    private Receive handingOff() {
+        return receiveBuilder()
+                .match(HomePassivated.class, this::onHomePassivated)
+                .match(Terminated.class, this::onHandingOffTerminated)
+                .match(PassivateHome.class, passivateHome -> {
+                })
+                .matchAny(message -> heldForSuccessor.add(new HeldMessage(message, getSender())))
+                .build();
+    }
+
     public Receive createReceive() {
         return receiveBuilder()
                 .match(RequestTrackDevice.class, this::onTrackDevice)
+                .match(RestoreHomes.class, this::onRestoreHomes)
                 .match(Terminated.class, this::onTerminated)
                 .match(GetHomesNumber.class, request -> onGetHomesNumber())
                 .match(CreateHome.class, this::onCreateHome)
                 .match(SetTemperatures.class, this::onSetTemperatures)
                 .match(GetHomeTemperature.class, this::onGetHomeTemperature)
                 .match(GetDevicesInHomes.class, request -> onGetDevicesInHomes())
-                .match(AlterHeatingSettings.class, r -> onAlterHeatingSystem())
-                .match(DeviceGroup.RespondAllTemperatures.class, this::onRespondAllTemperatures)
+                .match(GetChangesSince.class, this::onGetChangesSince)
+                .match(GetHomeNames.class, this::onGetHomeNames)
                 .match(IfHomeExists.class, this::onIfHomeExists)
                 .match(GetHeatingSettings.class, this::onGetHeatingSettings)
                 .match(ChangeHeatingSettings.class, this::onChangeHeatingSettings)
+                .match(GetDeviceHistory.class, this::onGetDeviceHistory)
+                .match(GetHomeStats.class, this::onGetHomeStats)
+                .match(ScanHomeSeries.class, this::onScanHomeSeries)
+                .match(PassivateHome.class, this::onPassivateHome)
+                .match(HomePassivated.class, this::onHomePassivated)
+                .match(HandOff.class, handOff -> onHandOff())
+                .match(HomesHandedOff.class, this::onHomesHandedOff)
                 .build();
     }
 
@@ -0,0 +1,296 @@
+package manager;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.pattern.PatternsCS;
+import akka.util.Timeout;
+import dispatch.IotDispatchers;
+import group.DeviceGroup;
+import heating.HeatingScheduler;
+import model.FleetChanges;
+import persistence.EventJournal;
+import persistence.HomeState;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Spreads homes over several {@link DeviceManager} shards using a consistent hash of the home name.
+ * Home level messages go to the shard owning the home, fleet wide messages are sent to every
+ * shard and their replies are merged.
+ *
+ * When the shards run in this JVM their {@link HomeRegistry} answers home lookups, existence and
+ * the number of homes, and messages for running homes go straight to the home.
+ */
+public class DeviceManagerRouter {
+
+    private static final int VIRTUAL_NODES_PER_SHARD = 64;
+    private static final String TOKEN_SHARD_SEPARATOR = "_";
+    private static final String TOKEN_SEQUENCE_SEPARATOR = ".";
+
+    private final List<ActorRef> shards;
+    private final ActorRef heatingScheduler;
+    private final TreeMap<Integer, ActorRef> ring = new TreeMap<>();
+    //Null when the shards are spread over the cluster, a node's registry then only knows some homes
+    private final HomeRegistry registry;
+
+    public DeviceManagerRouter(List<ActorRef> shards, ActorRef heatingScheduler) {
+        this(shards, heatingScheduler, null);
+    }
+
+    public DeviceManagerRouter(List<ActorRef> shards, ActorRef heatingScheduler, HomeRegistry registry) {
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+        this.heatingScheduler = heatingScheduler;
+        this.registry = registry;
+
+        for (int shard = 0; shard < shards.size(); shard++) {
+            for (int node = 0; node < VIRTUAL_NODES_PER_SHARD; node++) {
+                ring.put(hash("shard-" + shard + "-" + node), shards.get(shard));
+            }
+        }
+    }
+
+    public static DeviceManagerRouter create(ActorSystem system, EventJournal journal) {
+        final int shardCount = system.settings().config().getInt("iot.manager.shards");
+        final String managerDispatcher = IotDispatchers.lookup(system, IotDispatchers.MANAGER);
+        final ActorRef heatingScheduler = system.actorOf(
+                HeatingScheduler.props(system.settings().config().getConfig("iot.heating")).withDispatcher(managerDispatcher),
+                "heatingScheduler");
+        final Props managerProps = DeviceManager.props(journal, heatingScheduler).withDispatcher(managerDispatcher);
+        final HomeRegistry registry = HomeRegistry.get(system);
+
+        if (shardCount <= 1) {
+            return new DeviceManagerRouter(
+                    Collections.singletonList(system.actorOf(managerProps, "deviceManager")), heatingScheduler, registry);
+        }
+
+        List<ActorRef> shards = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            shards.add(system.actorOf(managerProps, "deviceManager-" + shard));
+        }
+
+        return new DeviceManagerRouter(shards, heatingScheduler, registry);
+    }
+
+    public void restore(Collection<HomeState> homes) {
+        //One message per shard, a large fleet would not fit in the bounded mailbox one home at a time
+        Map<ActorRef, List<HomeState>> shardHomes = new HashMap<>();
+        homes.forEach(home -> shardHomes.computeIfAbsent(forHome(home.getHomeName()), shard -> new ArrayList<>()).add(home));
+
+        shardHomes.forEach((shard, restored) -> shard.tell(new DeviceManager.RestoreHomes(restored), ActorRef.noSender()));
+    }
+
+    public ActorRef forHome(String homeName) {
+        if (shards.size() == 1) {
+            return shards.get(0);
+        }
+
+        SortedMap<Integer, ActorRef> tail = ring.tailMap(hash(homeName));
+
+        return tail.isEmpty() ? ring.firstEntry().getValue() : tail.get(tail.firstKey());
+    }
+
+    /**
+     * Where to send a home level message the home itself handles: the home while it is running,
+     * otherwise its shard, which starts a passivated home again or answers for an unknown one.
+     * A home found running just before it started to passivate forwards the message to its shard.
+     */
+    public ActorRef toHome(String homeName) {
+        final ActorRef home = registry == null ? null : registry.running(homeName);
+
+        return home != null ? home : forHome(homeName);
+    }
+
+    public CompletionStage<DeviceGroup.HomesWithTemperatureChanged> setTemperatures(String homeName,
+                                                                                   Map<String, Double> deviceToTemperature,
+                                                                                   Timeout timeout) {
+        final ActorRef home = registry == null ? null : registry.running(homeName);
+        final Object message = home != null
+                ? new DeviceGroup.AddTemperatures(deviceToTemperature)
+                : new DeviceManager.SetTemperatures(homeName, deviceToTemperature);
+
+        return PatternsCS.ask(home != null ? home : forHome(homeName), message, timeout)
+                .thenApply(obj -> (DeviceGroup.HomesWithTemperatureChanged) obj);
+    }
+
+    public CompletionStage<Boolean> homeExists(String homeName, Timeout timeout) {
+        if (registry != null) {
+            return CompletableFuture.completedFuture(registry.exists(homeName));
+        }
+
+        return PatternsCS.ask(forHome(homeName), new DeviceManager.IfHomeExists(homeName), timeout)
+                .thenApply(obj -> (Boolean) obj);
+    }
+
+    public ActorRef heatingScheduler() {
+        return heatingScheduler;
+    }
+
+    public List<ActorRef> shards() {
+        return shards;
+    }
+
+    public void tellAll(Object message, ActorRef sender) {
+        shards.forEach(shard -> shard.tell(message, sender));
+    }
+
+    public CompletionStage<DeviceManager.RespondHomesNumber> getHomesNumber(Timeout timeout) {
+        if (registry != null) {
+            return CompletableFuture.completedFuture(new DeviceManager.RespondHomesNumber(registry.count()));
+        }
+
+        return askAll(new DeviceManager.GetHomesNumber(), timeout)
+                .thenApply(replies -> {
+                    int homesNumber = 0;
+
+                    for (Object reply : replies) {
+                        homesNumber += ((DeviceManager.RespondHomesNumber) reply).homesNumber;
+                    }
+
+                    return new DeviceManager.RespondHomesNumber(homesNumber);
+                });
+    }
+
+    public CompletionStage<DeviceManager.RespondDevicesInHome> getDevicesInHomes(Timeout timeout) {
+        return askAll(new DeviceManager.GetDevicesInHomes(), timeout)
+                .thenApply(replies -> {
+                    Map<String, List<Map.Entry<String, Double>>> homeToDevices = null;
+
+                    for (Object reply : replies) {
+                        Map<String, List<Map.Entry<String, Double>>> shardHomes =
+                                ((DeviceManager.RespondDevicesInHome) reply).getHomeToDevices();
+
+                        if (shardHomes == null) {
+                            continue;
+                        }
+
+                        if (homeToDevices == null) {
+                            homeToDevices = new HashMap<>(shardHomes);
+                        } else {
+                            homeToDevices.putAll(shardHomes);
+                        }
+                    }
+
+                    return new DeviceManager.RespondDevicesInHome(homeToDevices);
+                });
+    }
+
+    /**
+     * Returns up to limit home names following the given one in name order, across all shards.
+     */
+    public CompletionStage<DeviceManager.RespondHomeNames> getHomeNames(String after, int limit, Timeout timeout) {
+        return askAll(new DeviceManager.GetHomeNames(after, limit), timeout)
+                .thenApply(replies -> {
+                    List<String> homeNames = new ArrayList<>();
+
+                    for (Object reply : replies) {
+                        homeNames.addAll(((DeviceManager.RespondHomeNames) reply).getHomeNames());
+                    }
+
+                    //Every shard sent its own first page, the merged page is the first limit of all of them
+                    Collections.sort(homeNames);
+
+                    return new DeviceManager.RespondHomeNames(
+                            homeNames.size() > limit ? new ArrayList<>(homeNames.subList(0, limit)) : homeNames);
+                });
+    }
+
+    /**
+     * Returns the homes and devices changed since the token, everything when the token is null or
+     * no longer valid. The token holds the epoch and sequence number of every shard, in base 36.
+     */
+    public CompletionStage<FleetChanges> getChangesSince(String token, Timeout timeout) {
+        final List<DeviceManager.GetChangesSince> requests = parseToken(token);
+        //A token is either valid for every shard or for none
+        final boolean full = requests.get(0).getEpoch() == null;
+
+        return askEach(requests, timeout).thenCompose(replies -> {
+            for (Object reply : replies) {
+                //Only some shards restarted, everything is sent again so the client can start over
+                if (((DeviceManager.RespondChanges) reply).isReset() && !full) {
+                    return askEach(parseToken(null), timeout).thenApply(all -> mergeChanges(all, true));
+                }
+            }
+
+            return CompletableFuture.completedFuture(mergeChanges(replies, full));
+        });
+    }
+
+    private List<DeviceManager.GetChangesSince> parseToken(String token) {
+        List<DeviceManager.GetChangesSince> requests = new ArrayList<>(shards.size());
+        final String[] shardTokens = token == null ? new String[0] : token.split(TOKEN_SHARD_SEPARATOR);
+
+        try {
+            for (int shard = 0; shard < shards.size(); shard++) {
+                final String[] shardToken = shardTokens.length == shards.size()
+                        ? shardTokens[shard].split("\\" + TOKEN_SEQUENCE_SEPARATOR)
+                        : new String[0];
+
+                requests.add(shardToken.length == 2
+                        ? new DeviceManager.GetChangesSince(Long.parseLong(shardToken[0], 36), Long.parseLong(shardToken[1], 36))
+                        : new DeviceManager.GetChangesSince(null, -1));
+            }
+        } catch (NumberFormatException e) {
+            return parseToken(null);
+        }
+
+        return requests;
+    }
+
+    private static FleetChanges mergeChanges(List<Object> replies, boolean full) {
+        Map<String, List<Map.Entry<String, Double>>> homes = new HashMap<>();
+        List<String> removedHomes = new ArrayList<>();
+        Map<String, List<String>> removedDevices = new HashMap<>();
+        List<String> shardTokens = new ArrayList<>(replies.size());
+
+        for (Object reply : replies) {
+            DeviceManager.RespondChanges changes = (DeviceManager.RespondChanges) reply;
+
+            homes.putAll(changes.getHomeToDevices());
+            removedHomes.addAll(changes.getRemovedHomes());
+            removedDevices.putAll(changes.getRemovedDevices());
+            shardTokens.add(Long.toString(changes.getEpoch(), 36) + TOKEN_SEQUENCE_SEPARATOR
+                    + Long.toString(changes.getSequence(), 36));
+        }
+
+        return new FleetChanges(String.join(TOKEN_SHARD_SEPARATOR, shardTokens), full, homes, removedHomes, removedDevices);
+    }
+
+    private CompletionStage<List<Object>> askAll(Object message, Timeout timeout) {
+        return askEach(Collections.nCopies(shards.size(), message), timeout);
+    }
+
+    //Sends the n-th message to the n-th shard, the replies come back in the same order
+    private CompletionStage<List<Object>> askEach(List<?> messages, Timeout timeout) {
+        CompletionStage<List<Object>> replies = CompletableFuture.completedFuture(new ArrayList<>(shards.size()));
+
+        for (int shard = 0; shard < shards.size(); shard++) {
+            replies = replies.thenCombine(PatternsCS.ask(shards.get(shard), messages.get(shard), timeout), (list, reply) -> {
+                list.add(reply);
+                return list;
+            });
+        }
+
+        return replies;
+    }
+
+    //Spreads the bits of String.hashCode so that similar home names land far apart on the ring
+    private static int hash(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,86 @@
+package manager;
+
+import akka.actor.AbstractExtensionId;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.Extension;
+import akka.actor.ExtensionIdProvider;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The homes of the {@link DeviceManager}s of this actor system and the actors of those running, written
+ * only by the managers and read by anyone. Lets a route find a home or count the homes without a
+ * message through a manager's mailbox.
+ */
+public final class HomeRegistry implements Extension {
+
+    public static final class Provider extends AbstractExtensionId<HomeRegistry> implements ExtensionIdProvider {
+        public static final Provider INSTANCE = new Provider();
+
+        private Provider() {
+        }
+
+        @Override
+        public Provider lookup() {
+            return INSTANCE;
+        }
+
+        @Override
+        public HomeRegistry createExtension(ExtendedActorSystem system) {
+            return new HomeRegistry();
+        }
+    }
+
+    public static HomeRegistry get(ActorSystem system) {
+        return Provider.INSTANCE.get(system);
+    }
+
+    //Every home, running or passivated
+    private final Set<String> homes = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, ActorRef> running = new ConcurrentHashMap<>();
+
+    private HomeRegistry() {
+    }
+
+    void started(String homeName, ActorRef home) {
+        homes.add(homeName);
+        running.put(homeName, home);
+    }
+
+    /**
+     * The home keeps existing but its actor is stopping, its messages go through the manager again.
+     */
+    void passivating(String homeName) {
+        running.remove(homeName);
+    }
+
+    /**
+     * The home exists, passivated, without having run in this actor system.
+     */
+    void passivated(String homeName) {
+        homes.add(homeName);
+    }
+
+    void removed(String homeName) {
+        running.remove(homeName);
+        homes.remove(homeName);
+    }
+
+    /**
+     * The actor of the home if it is running, null if it is passivated or unknown.
+     */
+    public ActorRef running(String homeName) {
+        return running.get(homeName);
+    }
+
+    public boolean exists(String homeName) {
+        return homes.contains(homeName);
+    }
+
+    public int count() {
+        return homes.size();
+    }
+}
@@ -0,0 +1,117 @@
+package manager.query;
+
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import akka.japi.pf.ReceiveBuilder;
+import group.DeviceGroup;
+import manager.DeviceManager;
+import metrics.IotMetrics;
+import metrics.QueryMetrics;
+import persistence.HomeState;
+import query.ScatterGatherQuery;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.*;
+
+/**
+ * Asks the homes changed after since for their changed devices. When a home does not answer the reply
+ * still covers only up to since, so the client asks for the same changes again instead of missing them.
+ */
+public class ChangesSinceQuery extends ScatterGatherQuery {
+    private static final QueryMetrics METRICS = IotMetrics.query("changes_since");
+
+    private final long epoch;
+    private final long sequence;
+    private final long since;
+    private final boolean reset;
+    private final boolean incomplete;
+    //A copy owned by this query, homes are removed from it as they answer
+    private final Map<ActorRef, String> stillWaiting;
+    private final Map<String, List<Map.Entry<String, Double>>> repliesSoFar;
+    private final List<String> removedHomes;
+    private final Map<String, List<String>> removedDevices = new HashMap<>();
+    private final ActorRef requester;
+
+    public ChangesSinceQuery(long epoch,
+                             long sequence,
+                             long since,
+                             boolean reset,
+                             boolean incomplete,
+                             Map<ActorRef, String> changedHomes,
+                             Map<String, byte[]> passivatedHomes,
+                             List<String> removedHomes,
+                             ActorRef requester,
+                             FiniteDuration timeout) {
+        super(METRICS, timeout);
+        this.epoch = epoch;
+        this.sequence = sequence;
+        this.since = since;
+        this.reset = reset;
+        this.incomplete = incomplete;
+        this.stillWaiting = changedHomes;
+        this.repliesSoFar = new HashMap<>(capacityFor(changedHomes.size() + passivatedHomes.size()));
+        this.removedHomes = removedHomes;
+        this.requester = requester;
+
+        //Passivated homes only know their readings, they are sent whole, unpacked here instead of in the manager
+        passivatedHomes.forEach((homeName, packed) -> receivedChanges(homeName, HomeState.readingsOf(packed), true));
+    }
+
+    public static Props props(long epoch,
+                              long sequence,
+                              long since,
+                              boolean reset,
+                              boolean incomplete,
+                              Map<ActorRef, String> changedHomes,
+                              Map<String, byte[]> passivatedHomes,
+                              List<String> removedHomes,
+                              ActorRef requester,
+                              FiniteDuration timeout) {
+        return Props.create(ChangesSinceQuery.class, epoch, sequence, since, reset, incomplete,
+                changedHomes, passivatedHomes, removedHomes, requester, timeout);
+    }
+
+    @Override
+    protected int scatter() {
+        stillWaiting.keySet()
+                .forEach(homeActor -> homeActor.tell(new DeviceGroup.GetChangesSince(since), getSelf()));
+
+        return stillWaiting.size();
+    }
+
+    @Override
+    protected ReceiveBuilder replies(ReceiveBuilder builder) {
+        return builder
+                .match(DeviceGroup.RespondChangesSince.class, r -> {
+                    if (stillWaiting.remove(getSender()) != null) {
+                        receivedChanges(r.getHomeName(), r.getDevices(), r.isComplete());
+                        if (!r.getRemovedDevices().isEmpty()) {
+                            removedDevices.put(r.getHomeName(), r.getRemovedDevices());
+                        }
+                        replyReceived();
+                    }
+                });
+    }
+
+    private void receivedChanges(String homeName, Map<String, Double> devices, boolean complete) {
+        List<Map.Entry<String, Double>> replyList = new ArrayList<>(devices.size());
+
+        devices.forEach((deviceName, temperature) ->
+                replyList.add(new AbstractMap.SimpleEntry<>(deviceName, temperature)));
+        replyList.sort(Map.Entry.comparingByKey());
+        repliesSoFar.put(homeName, replyList);
+
+        //Dropped first, so the devices the client had and the home no longer has are gone
+        if (complete && !reset) {
+            removedHomes.add(homeName);
+        }
+    }
+
+    @Override
+    protected void gather(boolean timedOut) {
+        final boolean covered = !timedOut && !incomplete && stillWaiting.isEmpty();
+
+        requester.tell(new DeviceManager.RespondChanges(epoch, covered ? sequence : since, reset,
+                repliesSoFar, removedHomes, removedDevices), getSelf());
+    }
+}
@@ -1,39 +1,35 @@
 package manager.query;
 
 import akka.actor.*;
-import akka.event.Logging;
-import akka.event.LoggingAdapter;
+import akka.japi.pf.ReceiveBuilder;
 import manager.DeviceManager;
+import metrics.IotMetrics;
+import metrics.QueryMetrics;
+import query.ScatterGatherQuery;
 import scala.concurrent.duration.FiniteDuration;
 
 import java.util.*;
 
-public class CreateHomeQuery extends AbstractActor {
-    public static final class CollectionTimeout {
-    }
-
-    private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+public class CreateHomeQuery extends ScatterGatherQuery {
+    private static final QueryMetrics METRICS = IotMetrics.query("create_home");
 
     private final String homeName;
     private final ActorRef homeActor;
-    private final List<String> temperatureDevices;
+    private final Set<String> stillWaiting;
+    private final List<String> repliesSoFar;
     private final ActorRef requester;
 
-    private Cancellable queryTimeoutTimer;
-
     public CreateHomeQuery(String homeName,
                                ActorRef homeActor,
                                List<String> temperatureDevices,
                                ActorRef requester,
                                FiniteDuration timeout) {
+        super(METRICS, timeout);
         this.homeName = homeName;
         this.homeActor = homeActor;
-        this.temperatureDevices = temperatureDevices;
+        this.stillWaiting = new HashSet<>(temperatureDevices);
+        this.repliesSoFar = new ArrayList<>(stillWaiting.size());
         this.requester = requester;
-
-        queryTimeoutTimer = getContext().getSystem().scheduler().scheduleOnce(
-                timeout, getSelf(), new CreateHomeQuery.CollectionTimeout(), getContext().dispatcher(), getSelf()
-        );
     }
 
     public static Props props(String homeName,
@@ -45,51 +41,31 @@ public class CreateHomeQuery extends AbstractActor {
     }
 
     @Override
-    public void preStart() {
-        temperatureDevices.forEach(temperatureDeviceId -> {
+    protected int scatter() {
+        stillWaiting.forEach(temperatureDeviceId -> {
             homeActor.tell(new DeviceManager.RequestTrackDevice(homeName, temperatureDeviceId), getSelf());
         });
-    }
 
-    @Override
-    public void postStop() {
-        queryTimeoutTimer.cancel();
+        return stillWaiting.size();
     }
 
     @Override
-    public Receive createReceive() {
-        return waitingForReplies(new ArrayList<>(), temperatureDevices);
-    }
-
-    private Receive waitingForReplies(List<String> repliesSoFar, List<String> stillWaiting) {
-        return receiveBuilder()
+    protected ReceiveBuilder replies(ReceiveBuilder builder) {
+        return builder
                 .match(DeviceManager.DeviceRegistered.class, r ->
-                    receivedResponse(r.deviceName, repliesSoFar, stillWaiting)
-                )
-                .match(CollectionTimeout.class, t -> {
-                    List<String> stillWaitingForReplies = new ArrayList<>(stillWaiting);
-
-                    requester.tell(new DeviceManager.HomeCreated(homeName, stillWaitingForReplies), getSelf());
-
-                    getContext().stop(getSelf());
-                })
-                .build();
+                    receivedResponse(r.deviceName)
+                );
     }
 
-    private void receivedResponse(String deviceName,
-                                 List<String> repliesSoFar,
-                                 List<String> stillWaiting) {
-        List<String> newStillWaiting = new ArrayList<>(stillWaiting);
-        newStillWaiting.remove(deviceName);
-
-        List<String> newRepliesSoFar = new ArrayList<>(repliesSoFar);
-        newRepliesSoFar.add(deviceName);
-
-        if (newStillWaiting.isEmpty()) {
-            requester.tell(new DeviceManager.HomeCreated(homeName, newRepliesSoFar), getSelf());
-            getContext().stop(getSelf());
-        } else {
-            getContext().become(waitingForReplies(newRepliesSoFar, newStillWaiting));
+    private void receivedResponse(String deviceName) {
+        if (stillWaiting.remove(deviceName)) {
+            repliesSoFar.add(deviceName);
+            replyReceived();
         }
     }
+
+    @Override
+    protected void gather(boolean timedOut) {
+        requester.tell(new DeviceManager.HomeCreated(homeName, repliesSoFar), getSelf());
+    }
 }
@@ -1,111 +1,82 @@
 package manager.query;
 
-import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
-import akka.actor.Cancellable;
 import akka.actor.Props;
-import akka.event.Logging;
-import akka.event.LoggingAdapter;
+import akka.japi.pf.ReceiveBuilder;
 import group.DeviceGroup;
 import manager.DeviceManager;
+import metrics.IotMetrics;
+import metrics.QueryMetrics;
+import persistence.HomeState;
+import query.ScatterGatherQuery;
 import scala.concurrent.duration.FiniteDuration;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
-public class GetAllDevicesInHomesQuery extends AbstractActor {
-    public static final class CollectionTimeout {
-    }
-
-    private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+public class GetAllDevicesInHomesQuery extends ScatterGatherQuery {
+    private static final QueryMetrics METRICS = IotMetrics.query("all_devices_in_homes");
 
-    private final Map<String, ActorRef> homeNameToActors;
-    private final Map<ActorRef, String> actorsToHomeName;
+    //A copy owned by this query, homes are removed from it as they answer
+    private final Map<ActorRef, String> stillWaiting;
+    private final Map<String, List<Map.Entry<String, Double>>> repliesSoFar;
     private final ActorRef requester;
 
-    private Cancellable queryTimeoutTimer;
-
-    public GetAllDevicesInHomesQuery(Map<String, ActorRef> homeNameToActors,
-                                     Map<ActorRef, String> actorsToHomeName,
+    public GetAllDevicesInHomesQuery(Map<ActorRef, String> actorsToHomeName,
+                                     Map<String, byte[]> passivatedHomes,
                                      ActorRef requester,
                                      FiniteDuration timeout) {
-        this.homeNameToActors = homeNameToActors;
-        this.actorsToHomeName = actorsToHomeName;
+        super(METRICS, timeout);
+        this.stillWaiting = actorsToHomeName;
+        this.repliesSoFar = new HashMap<>(capacityFor(actorsToHomeName.size() + passivatedHomes.size()));
         this.requester = requester;
 
-        queryTimeoutTimer = getContext().getSystem().scheduler().scheduleOnce(
-                timeout, getSelf(), new GetAllDevicesInHomesQuery.CollectionTimeout(), getContext().dispatcher(), getSelf()
-        );
+        //Passivated homes have no actor to ask, their readings are unpacked here instead of in the manager
+        passivatedHomes.forEach((homeName, packed) ->
+                repliesSoFar.put(homeName, getReplyList(HomeState.readingsOf(packed))));
     }
 
-    public static Props props(Map<String, ActorRef> homeNameToActors,
-                              Map<ActorRef, String> actorsToHomeName,
+    public static Props props(Map<ActorRef, String> actorsToHomeName,
+                              Map<String, byte[]> passivatedHomes,
                               ActorRef requester,
                               FiniteDuration timeout) {
-        return Props.create(GetAllDevicesInHomesQuery.class, homeNameToActors, actorsToHomeName, requester, timeout);
+        return Props.create(GetAllDevicesInHomesQuery.class, actorsToHomeName, passivatedHomes, requester, timeout);
     }
 
     @Override
-    public void preStart() {
-        actorsToHomeName.keySet()
+    protected int scatter() {
+        stillWaiting.keySet()
                 .forEach(homeActor -> homeActor.tell(new DeviceGroup.RequestDeviceList(), getSelf()));
-    }
 
-    @Override
-    public void postStop() {
-        queryTimeoutTimer.cancel();
+        return stillWaiting.size();
     }
 
     @Override
-    public Receive createReceive() {
-        return waitingForReplies(new HashMap<>(), homeNameToActors);
-    }
-
-    private Receive waitingForReplies(Map<String, List<Map.Entry<String, Double>>> repliesSoFar, Map<String, ActorRef> stillWaiting) {
-        return receiveBuilder()
+    protected ReceiveBuilder replies(ReceiveBuilder builder) {
+        return builder
                 .match(DeviceGroup.RespondAllTemperatures.class, r ->
-                        receivedResponse(r.getHouseName(), r.getTemperatures(), repliesSoFar, stillWaiting)
-                )
-                .match(CreateHomeQuery.CollectionTimeout.class, t -> {
-                    requester.tell(new DeviceManager.RespondDevicesInHome(repliesSoFar), getSelf());
-
-                    getContext().stop(getSelf());
-                })
-                .build();
-    }
-
-    private Map.Entry<String, Double> getReplyEntry(String deviceName, Double temperature) {
-        return new AbstractMap.SimpleEntry<>(deviceName, temperature);
+                        receivedResponse(r.getHouseName(), r.getTemperatures())
+                );
     }
 
     private List<Map.Entry<String, Double>> getReplyList(Map<String, Double> devices) {
-        return devices
-                .keySet()
-                .stream()
-                .sorted()
-                .map(deviceName -> getReplyEntry(deviceName, devices.get(deviceName)))
-                .collect(Collectors.toList());
-    }
-
-    private void receivedResponse(String houseName,
-                                  Map<String, Double> devices,
-                                  Map<String, List<Map.Entry<String, Double>>> repliesSoFar,
-                                  Map<String, ActorRef> stillWaiting) {
-        Map<String, ActorRef> newStillWaiting = new HashMap<>(stillWaiting);
-        ActorRef responded = newStillWaiting.remove(houseName);
+        List<Map.Entry<String, Double>> replyList = new ArrayList<>(devices.size());
 
-        getContext().unwatch(responded);
+        devices.forEach((deviceName, temperature) ->
+                replyList.add(new AbstractMap.SimpleEntry<>(deviceName, temperature)));
+        replyList.sort(Map.Entry.comparingByKey());
 
-        Map<String, List<Map.Entry<String, Double>>> newRepliesSoFar = new HashMap<>(repliesSoFar);
-        newRepliesSoFar.put(houseName, getReplyList(devices));
+        return replyList;
+    }
 
-        if (newStillWaiting.isEmpty()) {
-            requester.tell(new DeviceManager.RespondDevicesInHome(newRepliesSoFar), getSelf());
-            getContext().stop(getSelf());
-        } else {
-            getContext().become(waitingForReplies(newRepliesSoFar, newStillWaiting));
+    private void receivedResponse(String houseName, Map<String, Double> devices) {
+        if (stillWaiting.remove(getSender()) != null) {
+            repliesSoFar.put(houseName, getReplyList(devices));
+            replyReceived();
         }
     }
-}
-
 
+    @Override
+    protected void gather(boolean timedOut) {
+        requester.tell(new DeviceManager.RespondDevicesInHome(repliesSoFar), getSelf());
+    }
+}
@@ -0,0 +1,142 @@
+package metrics;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.DeadLetter;
+import akka.dispatch.BoundedMessageQueueSemantics;
+import akka.dispatch.Envelope;
+import akka.dispatch.MailboxType;
+import akka.dispatch.MessageQueue;
+import akka.dispatch.ProducesMessageQueue;
+import akka.dispatch.UnboundedMessageQueueSemantics;
+import com.typesafe.config.Config;
+import scala.Option;
+import scala.concurrent.duration.Duration;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mailbox that publishes how many messages wait in it, summed over all actors
+ * using the same mailbox configuration, as the iot_mailbox_depth gauge named by metric-name.
+ *
+ * With a capacity above 0 each actor's queue is bounded for {@link SheddableRequest}s only: a request
+ * arriving at a full queue is sent to dead letters right away and counted in iot_mailbox_dropped_total,
+ * the sender is never blocked. Any other message is always queued, even above the capacity, since
+ * losing a reply or a message between a home and its manager would leave their state wrong.
+ */
+public class InstrumentedMailbox implements MailboxType, ProducesMessageQueue<InstrumentedMailbox.InstrumentedMessageQueue> {
+
+    private final Gauge depth;
+    private final Counter dropped;
+    private final int capacity;
+
+    public InstrumentedMailbox(ActorSystem.Settings settings, Config config) {
+        this.depth = IotMetrics.mailboxDepth(config.getString("metric-name"));
+        this.dropped = IotMetrics.mailboxDropped(config.getString("metric-name"));
+        this.capacity = config.hasPath("capacity") ? config.getInt("capacity") : 0;
+    }
+
+    @Override
+    public MessageQueue create(Option<ActorRef> owner, Option<ActorSystem> system) {
+        if (capacity <= 0) {
+            return new UnboundedInstrumentedMessageQueue(depth);
+        }
+
+        return new BoundedInstrumentedMessageQueue(depth, dropped, capacity, system.get().deadLetters());
+    }
+
+    public static class InstrumentedMessageQueue implements MessageQueue {
+        private final Queue<Envelope> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size = new AtomicInteger();
+        private final Gauge depth;
+
+        InstrumentedMessageQueue(Gauge depth) {
+            this.depth = depth;
+        }
+
+        @Override
+        public void enqueue(ActorRef receiver, Envelope handle) {
+            size.incrementAndGet();
+            offer(handle);
+        }
+
+        void offer(Envelope handle) {
+            queue.offer(handle);
+            depth.increment();
+        }
+
+        @Override
+        public Envelope dequeue() {
+            Envelope envelope = queue.poll();
+
+            if (envelope != null) {
+                size.decrementAndGet();
+                depth.decrement();
+            }
+
+            return envelope;
+        }
+
+        @Override
+        public int numberOfMessages() {
+            return size.get();
+        }
+
+        @Override
+        public boolean hasMessages() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public void cleanUp(ActorRef owner, MessageQueue deadLetters) {
+            Envelope envelope;
+
+            while ((envelope = dequeue()) != null) {
+                deadLetters.enqueue(owner, envelope);
+            }
+        }
+    }
+
+    static final class UnboundedInstrumentedMessageQueue extends InstrumentedMessageQueue
+            implements UnboundedMessageQueueSemantics {
+
+        UnboundedInstrumentedMessageQueue(Gauge depth) {
+            super(depth);
+        }
+    }
+
+    static final class BoundedInstrumentedMessageQueue extends InstrumentedMessageQueue
+            implements BoundedMessageQueueSemantics {
+
+        private final Counter dropped;
+        private final int capacity;
+        private final ActorRef deadLetters;
+
+        BoundedInstrumentedMessageQueue(Gauge depth, Counter dropped, int capacity, ActorRef deadLetters) {
+            super(depth);
+            this.dropped = dropped;
+            this.capacity = capacity;
+            this.deadLetters = deadLetters;
+        }
+
+        @Override
+        public void enqueue(ActorRef receiver, Envelope handle) {
+            //Reserve the place first, so concurrent senders can never overfill the queue
+            if (size.incrementAndGet() > capacity && handle.message() instanceof SheddableRequest) {
+                size.decrementAndGet();
+                dropped.increment();
+                deadLetters.tell(new DeadLetter(handle.message(), handle.sender(), receiver), handle.sender());
+                return;
+            }
+
+            offer(handle);
+        }
+
+        @Override
+        public Duration pushTimeOut() {
+            return Duration.Zero();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package metrics;
+
+/**
+ * The metrics of the server, exposed on GET /metrics.
+ */
+public final class IotMetrics {
+
+    public static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+    public static final Counter READINGS = REGISTRY.counter("iot_readings_total",
+            "Temperature readings received", "");
+
+    public static final Gauge LIVE_HOMES = REGISTRY.gauge("iot_live_homes",
+            "Running DeviceGroup actors", "");
+
+    public static final Gauge LIVE_DEVICES = REGISTRY.gauge("iot_live_devices",
+            "Running TemperatureDevice actors", "");
+
+    public static final Gauge PASSIVATED_HOMES = REGISTRY.gauge("iot_passivated_homes",
+            "Homes stopped for being idle and kept packed in their manager", "");
+
+    public static final LatencyHistogram HEATING_LAG = REGISTRY.histogram("iot_heating_evaluation_lag_seconds",
+            "Time a home waited past its heating slot before being evaluated", "");
+
+    public static final Counter HEATING_TIMEOUTS = REGISTRY.counter("iot_heating_evaluation_timeouts_total",
+            "Heating evaluations a home did not answer in time", "");
+
+    public static final Counter WRITE_BATCH_REQUESTS = REGISTRY.counter("iot_write_batch_requests_total",
+            "Temperature writes sent to device actors, over the add_temperature queries it is the writes merged per batch", "");
+
+    public static final Counter READING_LOG_RECORDS = REGISTRY.counter("iot_reading_log_records_total",
+            "Readings appended to the reading log", "");
+
+    public static final Counter READING_LOG_FAILURES = REGISTRY.counter("iot_reading_log_failures_total",
+            "Reading log appends or syncs that failed with an I/O error", "");
+
+    public static final LatencyHistogram READING_LOG_FSYNC = REGISTRY.histogram("iot_reading_log_fsync_seconds",
+            "Time to force the readings of one sync interval to disk", "");
+
+    private IotMetrics() {
+    }
+
+    public static RouteMetrics route(String route) {
+        String labels = "route=\"" + route + "\"";
+
+        return new RouteMetrics(
+                REGISTRY.histogram("iot_http_request_duration_seconds", "Time to answer a request", labels),
+                REGISTRY.counter("iot_http_server_errors_total", "Requests answered with a 5xx status", labels));
+    }
+
+    public static QueryMetrics query(String query) {
+        String labels = "query=\"" + query + "\"";
+
+        return new QueryMetrics(
+                REGISTRY.histogram("iot_query_duration_seconds", "Time until a query actor answered", labels),
+                REGISTRY.counter("iot_query_timeouts_total", "Queries answered by their CollectionTimeout", labels),
+                REGISTRY.counter("iot_query_replies_total", "Replies received by query actors", labels),
+                REGISTRY.counter("iot_query_missing_replies_total", "Replies still missing when a query timed out", labels));
+    }
+
+    public static Counter coalescedRequests(String route) {
+        return REGISTRY.counter("iot_coalescer_requests_total", "Reads asked for through a request coalescer",
+                "route=\"" + route + "\"");
+    }
+
+    public static Counter coalescedLoads(String route) {
+        return REGISTRY.counter("iot_coalescer_loads_total", "Loads actually started by a request coalescer, "
+                + "requests / loads is the coalescing ratio", "route=\"" + route + "\"");
+    }
+
+    public static Gauge mailboxDepth(String mailbox) {
+        return REGISTRY.gauge("iot_mailbox_depth", "Messages waiting in the mailboxes",
+                "mailbox=\"" + mailbox + "\"");
+    }
+
+    public static Counter mailboxDropped(String mailbox) {
+        return REGISTRY.counter("iot_mailbox_dropped_total", "Messages sent to dead letters because a bounded mailbox was full",
+                "mailbox=\"" + mailbox + "\"");
+    }
+
+    public static Gauge admissionInFlight(String budget) {
+        return REGISTRY.gauge("iot_admission_in_flight", "Requests admitted and not answered yet",
+                "budget=\"" + budget + "\"");
+    }
+
+    public static Counter admissionShed(String budget) {
+        return REGISTRY.counter("iot_admission_shed_total", "Requests answered with 503 by the admission controller",
+                "budget=\"" + budget + "\"");
+    }
+}
@@ -0,0 +1,109 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear histogram of nanosecond durations in the spirit of HdrHistogram: every power of two
+ * is split in 8 linear sub-buckets, so any recorded value is known within 12.5%.
+ * Recording is a couple of shifts and one atomic increment, it never locks nor allocates.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    //Up to 2^40 ns, about 18 minutes, anything longer lands in the last bucket
+    private static final int MAXIMUM_EXPONENT = 40;
+    private static final int BUCKETS = SUB_BUCKETS + (MAXIMUM_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    public void record(long nanos) {
+        final long value = Math.max(nanos, 0);
+
+        buckets.incrementAndGet(index(value));
+        count.increment();
+        sumNanos.add(value);
+    }
+
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * Number of recorded values that are at most the given power of two (in nanoseconds).
+     */
+    public long countAtMostPowerOfTwo(int exponent) {
+        final int lastBucket = exponent < SUB_BUCKET_BITS
+                ? (1 << exponent)
+                : Math.min(index(1L << exponent) - 1, BUCKETS - 1);
+
+        long total = 0;
+        for (int bucket = 0; bucket <= lastBucket; bucket++) {
+            total += buckets.get(bucket);
+        }
+
+        return total;
+    }
+
+    /**
+     * Upper bound in nanoseconds of the bucket holding the given quantile, e.g. 0.99.
+     */
+    public long quantile(double quantile) {
+        long total = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            total += buckets.get(bucket);
+        }
+
+        final long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += buckets.get(bucket);
+
+            if (seen >= rank && seen > 0) {
+                return upperBound(bucket);
+            }
+        }
+
+        return 0;
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+
+        if (exponent > MAXIMUM_EXPONENT) {
+            return BUCKETS - 1;
+        }
+
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        final int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        final int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        final int shift = exponent - SUB_BUCKET_BITS;
+
+        return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,119 @@
+package metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Named metrics rendered in the Prometheus text format. Metrics are created once, usually into
+ * static fields, and updated without going through the registry again.
+ */
+public final class MetricsRegistry {
+
+    //Histogram buckets exposed to Prometheus, from 2^10 ns (~1 us) to 2^36 ns (~69 s)
+    private static final int FIRST_EXPOSED_EXPONENT = 10;
+    private static final int LAST_EXPOSED_EXPONENT = 36;
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private static final class Family {
+        final String type;
+        final String help;
+        final Map<String, Object> children = new LinkedHashMap<>();
+
+        Family(String type, String help) {
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    public synchronized Counter counter(String name, String help, String labels) {
+        return (Counter) register(name, "counter", help, labels, new Counter());
+    }
+
+    public synchronized Gauge gauge(String name, String help, String labels) {
+        return (Gauge) register(name, "gauge", help, labels, new Gauge());
+    }
+
+    public synchronized void gauge(String name, String help, String labels, LongSupplier value) {
+        register(name, "gauge", help, labels, value);
+    }
+
+    public synchronized LatencyHistogram histogram(String name, String help, String labels) {
+        return (LatencyHistogram) register(name, "histogram", help, labels, new LatencyHistogram());
+    }
+
+    private Object register(String name, String type, String help, String labels, Object metric) {
+        Family family = families.computeIfAbsent(name, n -> new Family(type, help));
+
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+        }
+
+        return family.children.computeIfAbsent(labels, l -> metric);
+    }
+
+    public synchronized String render() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+
+        families.forEach((name, family) -> {
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+
+            family.children.forEach((labels, metric) -> {
+                if (metric instanceof LatencyHistogram) {
+                    renderHistogram(out, name, labels, (LatencyHistogram) metric);
+                } else {
+                    sample(out, name, labels, "", value(metric));
+                }
+            });
+        });
+
+        return out.toString();
+    }
+
+    private static long value(Object metric) {
+        if (metric instanceof Counter) {
+            return ((Counter) metric).get();
+        }
+        if (metric instanceof Gauge) {
+            return ((Gauge) metric).get();
+        }
+        return ((LongSupplier) metric).getAsLong();
+    }
+
+    private static void renderHistogram(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        //Count first, so no bucket can be larger than the +Inf one while values keep coming in
+        final long count = histogram.getCount();
+
+        for (int exponent = FIRST_EXPOSED_EXPONENT; exponent <= LAST_EXPOSED_EXPONENT; exponent++) {
+            String le = "le=\"" + ((1L << exponent) / NANOS_PER_SECOND) + "\"";
+            sample(out, name + "_bucket", labels, le, Math.min(histogram.countAtMostPowerOfTwo(exponent), count));
+        }
+
+        sample(out, name + "_bucket", labels, "le=\"+Inf\"", count);
+        out.append(name).append("_sum");
+        appendLabels(out, labels, "");
+        out.append(' ').append(histogram.getSumNanos() / NANOS_PER_SECOND).append('\n');
+        sample(out, name + "_count", labels, "", count);
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, String extraLabel, long value) {
+        out.append(name);
+        appendLabels(out, labels, extraLabel);
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static void appendLabels(StringBuilder out, String labels, String extraLabel) {
+        if (labels.isEmpty() && extraLabel.isEmpty()) {
+            return;
+        }
+
+        out.append('{').append(labels);
+        if (!labels.isEmpty() && !extraLabel.isEmpty()) {
+            out.append(',');
+        }
+        out.append(extraLabel).append('}');
+    }
+}
@@ -0,0 +1,28 @@
+package metrics;
+
+public final class QueryMetrics {
+
+    private final LatencyHistogram duration;
+    private final Counter timeouts;
+    private final Counter answered;
+    private final Counter unanswered;
+
+    QueryMetrics(LatencyHistogram duration, Counter timeouts, Counter answered, Counter unanswered) {
+        this.duration = duration;
+        this.timeouts = timeouts;
+        this.answered = answered;
+        this.unanswered = unanswered;
+    }
+
+    public void completed(long startNanos, int answeredReplies) {
+        duration.recordSince(startNanos);
+        answered.add(answeredReplies);
+    }
+
+    public void timedOut(long startNanos, int answeredReplies, int stillWaiting) {
+        duration.recordSince(startNanos);
+        timeouts.increment();
+        answered.add(answeredReplies);
+        unanswered.add(stillWaiting);
+    }
+}
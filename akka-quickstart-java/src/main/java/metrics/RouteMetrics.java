@@ -0,0 +1,20 @@
+package metrics;
+
+public final class RouteMetrics {
+
+    private final LatencyHistogram latency;
+    private final Counter serverErrors;
+
+    RouteMetrics(LatencyHistogram latency, Counter serverErrors) {
+        this.latency = latency;
+        this.serverErrors = serverErrors;
+    }
+
+    public void record(long startNanos, int status) {
+        latency.recordSince(startNanos);
+
+        if (status >= 500) {
+            serverErrors.increment();
+        }
+    }
+}
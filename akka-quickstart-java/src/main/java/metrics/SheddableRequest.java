@@ -0,0 +1,9 @@
+package metrics;
+
+/**
+ * A request from outside the actors, which a full bounded {@link InstrumentedMailbox} may drop: its asker
+ * times out as if it had waited behind the queue. Every other message, such as a reply, a timer or a
+ * message between a home and its manager, is always queued.
+ */
+public interface SheddableRequest {
+}
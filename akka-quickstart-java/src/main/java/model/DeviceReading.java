@@ -0,0 +1,43 @@
+package model;
+
+public class DeviceReading {
+
+    private String home;
+    private String device;
+    private double value;
+
+    public DeviceReading() {
+        this.home = "";
+        this.device = "";
+    }
+
+    public DeviceReading(String home, String device, double value) {
+        this.home = home;
+        this.device = device;
+        this.value = value;
+    }
+
+    public String getHome() {
+        return home;
+    }
+
+    public void setHome(String home) {
+        this.home = home;
+    }
+
+    public String getDevice() {
+        return device;
+    }
+
+    public void setDevice(String device) {
+        this.device = device;
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    public void setValue(double value) {
+        this.value = value;
+    }
+}
@@ -0,0 +1,48 @@
+package model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response of GET /iot?since=token. A client drops the removed homes and devices, then applies the
+ * homes, and asks with the token next time. When full is set the homes replace everything it had.
+ */
+public class FleetChanges {
+
+    private final String token;
+    private final boolean full;
+    private final Map<String, List<Map.Entry<String, Double>>> homes;
+    private final List<String> removedHomes;
+    private final Map<String, List<String>> removedDevices;
+
+    public FleetChanges(String token, boolean full,
+                        Map<String, List<Map.Entry<String, Double>>> homes,
+                        List<String> removedHomes,
+                        Map<String, List<String>> removedDevices) {
+        this.token = token;
+        this.full = full;
+        this.homes = homes;
+        this.removedHomes = removedHomes;
+        this.removedDevices = removedDevices;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public Map<String, List<Map.Entry<String, Double>>> getHomes() {
+        return homes;
+    }
+
+    public List<String> getRemovedHomes() {
+        return removedHomes;
+    }
+
+    public Map<String, List<String>> getRemovedDevices() {
+        return removedDevices;
+    }
+}
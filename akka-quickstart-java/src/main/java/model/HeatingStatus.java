@@ -0,0 +1,114 @@
+package model;
+
+public class HeatingStatus {
+
+    private final long periodMillis;
+    private final int homes;
+    private final int pending;
+    private final int inFlight;
+    private final int maxConcurrent;
+    private final long lastLagMillis;
+    private final long maxLagMillis;
+    private final long oldestEvaluationMillis;
+    private final long evaluated;
+    private final long timedOut;
+    private final long skipped;
+
+    public HeatingStatus(long periodMillis,
+                         int homes,
+                         int pending,
+                         int inFlight,
+                         int maxConcurrent,
+                         long lastLagMillis,
+                         long maxLagMillis,
+                         long oldestEvaluationMillis,
+                         long evaluated,
+                         long timedOut,
+                         long skipped) {
+        this.periodMillis = periodMillis;
+        this.homes = homes;
+        this.pending = pending;
+        this.inFlight = inFlight;
+        this.maxConcurrent = maxConcurrent;
+        this.lastLagMillis = lastLagMillis;
+        this.maxLagMillis = maxLagMillis;
+        this.oldestEvaluationMillis = oldestEvaluationMillis;
+        this.evaluated = evaluated;
+        this.timedOut = timedOut;
+        this.skipped = skipped;
+    }
+
+    /**
+     * Status of the schedulers of two nodes together: their homes and evaluations add up, the lags are the worst.
+     */
+    public HeatingStatus merge(HeatingStatus other) {
+        return new HeatingStatus(
+                Math.max(periodMillis, other.periodMillis),
+                homes + other.homes,
+                pending + other.pending,
+                inFlight + other.inFlight,
+                maxConcurrent + other.maxConcurrent,
+                Math.max(lastLagMillis, other.lastLagMillis),
+                Math.max(maxLagMillis, other.maxLagMillis),
+                Math.max(oldestEvaluationMillis, other.oldestEvaluationMillis),
+                evaluated + other.evaluated,
+                timedOut + other.timedOut,
+                skipped + other.skipped);
+    }
+
+    public long getPeriodMillis() {
+        return periodMillis;
+    }
+
+    public int getHomes() {
+        return homes;
+    }
+
+    public int getPending() {
+        return pending;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * Delay between a home's slot and the start of its evaluation, for the last evaluation started.
+     */
+    public long getLastLagMillis() {
+        return lastLagMillis;
+    }
+
+    /**
+     * Largest such delay since the previous full period.
+     */
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    /**
+     * Time since the home evaluated longest ago finished its evaluation.
+     */
+    public long getOldestEvaluationMillis() {
+        return oldestEvaluationMillis;
+    }
+
+    public long getEvaluated() {
+        return evaluated;
+    }
+
+    public long getTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Slots that came up while the home was still waiting for or running its previous evaluation.
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+}
@@ -0,0 +1,38 @@
+package model;
+
+public class HistoryBucket {
+
+    private final long from;
+    private final int count;
+    private final double min;
+    private final double max;
+    private final double avg;
+
+    public HistoryBucket(long from, int count, double min, double max, double avg) {
+        this.from = from;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.avg = avg;
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getAvg() {
+        return avg;
+    }
+}
@@ -1,5 +1,7 @@
 package model;
 
+import group.enums.DeviceStorage;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -7,15 +9,22 @@ public class Home {
 
     private String homeName;
     private List<String> temperatureDevices;
+    private DeviceStorage storage;
 
     public Home() {
         homeName = "";
         temperatureDevices = new ArrayList<>();
+        storage = DeviceStorage.ACTORS;
     }
 
     public Home(String homeName, List<String> temperatureDevices) {
+        this(homeName, temperatureDevices, DeviceStorage.ACTORS);
+    }
+
+    public Home(String homeName, List<String> temperatureDevices, DeviceStorage storage) {
         this.homeName = homeName;
         this.temperatureDevices = temperatureDevices;
+        this.storage = storage;
     }
 
     public String getHomeName() {
@@ -33,4 +42,12 @@ public class Home {
     public void setTemperatureDevices(List<String> temperatureDevices) {
         this.temperatureDevices = temperatureDevices;
     }
+
+    public DeviceStorage getStorage() {
+        return storage;
+    }
+
+    public void setStorage(DeviceStorage storage) {
+        this.storage = storage;
+    }
 }
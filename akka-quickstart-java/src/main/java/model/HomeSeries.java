@@ -0,0 +1,23 @@
+package model;
+
+import java.util.List;
+import java.util.Map;
+
+public class HomeSeries {
+
+    private final String homeName;
+    private final Map<String, List<HistoryBucket>> devices;
+
+    public HomeSeries(String homeName, Map<String, List<HistoryBucket>> devices) {
+        this.homeName = homeName;
+        this.devices = devices;
+    }
+
+    public String getHomeName() {
+        return homeName;
+    }
+
+    public Map<String, List<HistoryBucket>> getDevices() {
+        return devices;
+    }
+}
@@ -0,0 +1,38 @@
+package model;
+
+public class HomeStats {
+
+    private final String homeName;
+    private final int devices;
+    private final Double average;
+    private final Double min;
+    private final Double max;
+
+    public HomeStats(String homeName, int devices, Double average, Double min, Double max) {
+        this.homeName = homeName;
+        this.devices = devices;
+        this.average = average;
+        this.min = min;
+        this.max = max;
+    }
+
+    public String getHomeName() {
+        return homeName;
+    }
+
+    public int getDevices() {
+        return devices;
+    }
+
+    public Double getAverage() {
+        return average;
+    }
+
+    public Double getMin() {
+        return min;
+    }
+
+    public Double getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,43 @@
+package model;
+
+public class IngestSummary {
+
+    private final long readings;
+    private final long malformed;
+    private final long rejected;
+    private final long devicesUpdated;
+
+    public IngestSummary() {
+        this(0, 0, 0, 0);
+    }
+
+    public IngestSummary(long readings, long malformed, long rejected, long devicesUpdated) {
+        this.readings = readings;
+        this.malformed = malformed;
+        this.rejected = rejected;
+        this.devicesUpdated = devicesUpdated;
+    }
+
+    public IngestSummary merge(IngestSummary other) {
+        return new IngestSummary(readings + other.readings,
+                malformed + other.malformed,
+                rejected + other.rejected,
+                devicesUpdated + other.devicesUpdated);
+    }
+
+    public long getReadings() {
+        return readings;
+    }
+
+    public long getMalformed() {
+        return malformed;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public long getDevicesUpdated() {
+        return devicesUpdated;
+    }
+}
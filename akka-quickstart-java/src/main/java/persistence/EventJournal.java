@@ -0,0 +1,111 @@
+package persistence;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import com.typesafe.config.Config;
+import device.temperature.CompressedSeries;
+import dispatch.IotDispatchers;
+import group.enums.DeviceStorage;
+import group.enums.HeatingSettings;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the actors use to record their changes. Recording is a fire and forget message
+ * to the {@link FleetJournal}, or nothing at all when persistence is disabled. Readings are
+ * appended to the {@link ReadingLog} instead when it is enabled, so each is written once.
+ */
+public final class EventJournal {
+
+    private static final EventJournal DISABLED = new EventJournal(null, null);
+
+    private final ActorRef journal;
+    private final ReadingLog readingLog;
+
+    private EventJournal(ActorRef journal, ReadingLog readingLog) {
+        this.journal = journal;
+        this.readingLog = readingLog;
+    }
+
+    public static EventJournal disabled() {
+        return DISABLED;
+    }
+
+    public static EventJournal start(ActorSystem system, FleetState recovered) throws IOException {
+        Config config = system.settings().config().getConfig("iot.persistence");
+        String dispatcher = IotDispatchers.lookup(system, IotDispatchers.JOURNAL);
+
+        ActorRef journal = system.actorOf(FleetJournal.props(
+                new File(config.getString("directory")),
+                recovered,
+                config.getInt("snapshot-every"),
+                new FiniteDuration(config.getDuration("flush-interval", TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS)
+        ).withDispatcher(dispatcher), "journal");
+
+        ReadingLog readingLog = null;
+        if (config.getBoolean("reading-log.enabled")) {
+            Config readingLogConfig = config.getConfig("reading-log");
+
+            readingLog = ReadingLog.open(readingLogDirectory(config),
+                    readingLogConfig.getInt("stripes"),
+                    readingLogConfig.getBytes("segment-size"),
+                    readingLogConfig.getDuration("roll-after", TimeUnit.MILLISECONDS),
+                    readingLogConfig.getDuration("retention", TimeUnit.MILLISECONDS),
+                    readingLogConfig.getBytes("max-size"));
+            readingLog.syncEvery(system,
+                    new FiniteDuration(readingLogConfig.getDuration("fsync-interval", TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS),
+                    dispatcher);
+        }
+
+        return new EventJournal(journal, readingLog);
+    }
+
+    /**
+     * Every home from the snapshot and the journal, with the last readings and the series of its devices
+     * from the reading log when it is enabled. Run on startup, before {@link #start}.
+     */
+    public static FleetState recover(ActorSystem system) throws IOException {
+        Config config = system.settings().config().getConfig("iot.persistence");
+        FleetState recovered = FleetState.recover(new File(config.getString("directory")));
+
+        if (config.getBoolean("reading-log.enabled")) {
+            recovered.restore(ReadingLogReader.recover(readingLogDirectory(config),
+                    CompressedSeries.Settings.from(system.settings().config())));
+        }
+
+        return recovered;
+    }
+
+    private static File readingLogDirectory(Config config) {
+        return new File(config.getString("directory"), "readings");
+    }
+
+    public void homeCreated(String homeName, DeviceStorage storage) {
+        record(new JournalEvent.HomeCreated(homeName, storage));
+    }
+
+    public void deviceTracked(String homeName, String deviceId) {
+        record(new JournalEvent.DeviceTracked(homeName, deviceId));
+    }
+
+    public void heatingChanged(String homeName, HeatingSettings heatingSettings, boolean blockHeating) {
+        record(new JournalEvent.HeatingChanged(homeName, heatingSettings, blockHeating));
+    }
+
+    public void readingRecorded(String homeName, String deviceId, double temperature, long timestamp) {
+        if (readingLog != null) {
+            readingLog.append(homeName, deviceId, timestamp, temperature);
+        } else {
+            record(new JournalEvent.ReadingRecorded(homeName, deviceId, temperature, timestamp));
+        }
+    }
+
+    private void record(JournalEvent event) {
+        if (journal != null) {
+            journal.tell(event, ActorRef.noSender());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package persistence;
+
+import akka.actor.AbstractActor;
+import akka.actor.Cancellable;
+import akka.actor.Props;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Single writer of the journal. Events are appended to a buffered journal file which is flushed
+ * every flush interval; after snapshot-every events the whole state is written as a snapshot and
+ * a new journal file is started, so startup only replays the events since the last snapshot.
+ */
+public class FleetJournal extends AbstractActor {
+    private static final class Flush {
+    }
+
+    private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+
+    private final File directory;
+    private final FleetState state;
+    private final int snapshotEvery;
+    private final FiniteDuration flushInterval;
+
+    private int journalIndex;
+    private int eventsSinceSnapshot = 0;
+    private FileOutputStream journalFile;
+    private DataOutputStream journal;
+    private Cancellable flushTimer;
+
+    public FleetJournal(File directory, FleetState state, int snapshotEvery, FiniteDuration flushInterval) {
+        this.directory = directory;
+        this.state = state;
+        this.snapshotEvery = snapshotEvery;
+        this.flushInterval = flushInterval;
+        this.journalIndex = state.getJournalIndex();
+    }
+
+    public static Props props(File directory, FleetState state, int snapshotEvery, FiniteDuration flushInterval) {
+        return Props.create(FleetJournal.class, directory, state, snapshotEvery, flushInterval);
+    }
+
+    @Override
+    public void preStart() throws IOException {
+        openJournal();
+
+        flushTimer = getContext().getSystem().scheduler().schedule(
+                flushInterval, flushInterval, getSelf(), new Flush(), getContext().dispatcher(), getSelf()
+        );
+
+        log.info("Journal started in {} at journal-{}", directory, journalIndex);
+    }
+
+    @Override
+    public void postStop() throws IOException {
+        flushTimer.cancel();
+        journal.close();
+    }
+
+    private void openJournal() throws IOException {
+        journalFile = new FileOutputStream(FleetState.journalFile(directory, journalIndex), true);
+        journal = new DataOutputStream(new BufferedOutputStream(journalFile, 64 * 1024));
+    }
+
+    private void onEvent(JournalEvent event) throws IOException {
+        event.write(journal);
+        state.apply(event);
+
+        if (++eventsSinceSnapshot >= snapshotEvery) {
+            snapshot();
+        }
+    }
+
+    private void snapshot() throws IOException {
+        journal.flush();
+        journalFile.getFD().sync();
+        journal.close();
+
+        journalIndex++;
+        state.writeSnapshot(directory, journalIndex);
+        eventsSinceSnapshot = 0;
+
+        openJournal();
+
+        log.info("Snapshot written, journal continues at journal-{}", journalIndex);
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(JournalEvent.class, this::onEvent)
+                .match(Flush.class, f -> journal.flush())
+                .build();
+    }
+}
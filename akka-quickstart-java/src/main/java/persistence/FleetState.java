@@ -0,0 +1,250 @@
+package persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.io.UTFDataFormatException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The persisted view of every home, rebuilt at startup from the newest snapshot plus the
+ * journal files written after it. With the reading log, the last readings come from the log instead,
+ * which also has the compressed series of the devices. These are only kept until they are handed to
+ * the homes restored at startup, see {@link EventJournal#recover}.
+ *
+ * Files in the persistence directory:
+ *  - snapshot.bin: all homes and the index of the first journal file not contained in them
+ *  - journal-N.bin: events appended after the snapshot, N increasing with every snapshot
+ */
+public final class FleetState {
+
+    private static final int SNAPSHOT_MAGIC = 0x10775AA;
+    //Snapshots written while the journal kept the series, which are skipped now that the reading log has them
+    private static final int SNAPSHOT_MAGIC_WITH_SERIES = 0x10775AB;
+    //Snapshots written before homes had a storage mode, every home in them uses device actors
+    private static final int SNAPSHOT_MAGIC_WITHOUT_STORAGE = 0x10775A9;
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final Pattern JOURNAL_FILE = Pattern.compile("journal-(\\d+)\\.bin");
+
+    private final Map<String, HomeState> homes;
+    private int journalIndex;
+    private Map<String, Map<String, byte[]>> loggedSeries = Collections.emptyMap();
+
+    private FleetState(Map<String, HomeState> homes, int journalIndex) {
+        this.homes = homes;
+        this.journalIndex = journalIndex;
+    }
+
+    /**
+     * Every home with the packed series of its devices, for restoring the homes at startup. The series
+     * are handed over once, later calls return the homes without them.
+     */
+    public Collection<HomeState> getHomes() {
+        final Map<String, Map<String, byte[]>> series = loggedSeries;
+        List<HomeState> restored = new ArrayList<>(homes.size());
+
+        loggedSeries = Collections.emptyMap();
+        for (HomeState home : homes.values()) {
+            restored.add(home.withSeries(series.getOrDefault(home.getHomeName(), Collections.emptyMap())));
+        }
+
+        return restored;
+    }
+
+    /**
+     * Takes the last readings and series of the homes from the reading log, newer than those of the journal.
+     */
+    void restore(LoggedReadings logged) {
+        logged.getLastReadings().forEach((homeName, lastReadings) -> {
+            final HomeState home = homes.get(homeName);
+
+            if (home != null) {
+                home.getReadings().putAll(lastReadings);
+            }
+        });
+
+        loggedSeries = logged.getSeries();
+    }
+
+    int getJournalIndex() {
+        return journalIndex;
+    }
+
+    void apply(JournalEvent event) {
+        event.apply(homes);
+    }
+
+    public static FleetState recover(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create persistence directory " + directory);
+        }
+
+        FleetState state = readSnapshot(directory);
+
+        int lastJournal = state.journalIndex - 1;
+        for (int index : journalIndexes(directory)) {
+            if (index >= state.journalIndex) {
+                replay(journalFile(directory, index), state);
+                lastJournal = index;
+            }
+        }
+
+        //Never append after a record that may have been torn by a crash, start a new journal instead
+        state.journalIndex = lastJournal + 1;
+
+        return state;
+    }
+
+    void writeSnapshot(File directory, int firstJournalNotIncluded) throws IOException {
+        File temporary = new File(directory, SNAPSHOT_FILE + ".tmp");
+
+        try (FileOutputStream file = new FileOutputStream(temporary);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(firstJournalNotIncluded);
+            out.writeInt(homes.size());
+
+            for (HomeState home : homes.values()) {
+                home.write(out);
+            }
+
+            out.flush();
+            file.getFD().sync();
+        }
+
+        Files.move(temporary.toPath(), new File(directory, SNAPSHOT_FILE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        journalIndex = firstJournalNotIncluded;
+
+        for (int index : journalIndexes(directory)) {
+            if (index < firstJournalNotIncluded) {
+                Files.deleteIfExists(journalFile(directory, index).toPath());
+            }
+        }
+    }
+
+    static File journalFile(File directory, int index) {
+        return new File(directory, "journal-" + index + ".bin");
+    }
+
+    private static FleetState readSnapshot(File directory) throws IOException {
+        File snapshot = new File(directory, SNAPSHOT_FILE);
+
+        if (!snapshot.exists()) {
+            return new FleetState(new HashMap<>(), 0);
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)))) {
+            final int magic = in.readInt();
+            if (magic != SNAPSHOT_MAGIC && magic != SNAPSHOT_MAGIC_WITH_SERIES && magic != SNAPSHOT_MAGIC_WITHOUT_STORAGE) {
+                throw new IOException("Not a snapshot file: " + snapshot);
+            }
+
+            int journalIndex = in.readInt();
+            int homesNumber = in.readInt();
+
+            Map<String, HomeState> homes = new HashMap<>(homesNumber * 2);
+            for (int home = 0; home < homesNumber; home++) {
+                HomeState homeState = HomeState.read(in, magic != SNAPSHOT_MAGIC_WITHOUT_STORAGE);
+                homes.put(homeState.getHomeName(), homeState);
+            }
+
+            //The series written after the homes are left unread
+            return new FleetState(homes, journalIndex);
+        }
+    }
+
+    /**
+     * Applies every whole record of the journal. A record torn by a crash ends the journal, which is
+     * truncated after the last whole record so that the torn bytes are never read again.
+     */
+    static void replay(File journal, FleetState state) throws IOException {
+        long wholeRecords = 0;
+
+        try (CountingInputStream counting = new CountingInputStream(new BufferedInputStream(new FileInputStream(journal)));
+             DataInputStream in = new DataInputStream(counting)) {
+            while (true) {
+                state.apply(JournalEvent.read(in));
+                wholeRecords = counting.count;
+            }
+        } catch (EOFException | StreamCorruptedException | UTFDataFormatException endOfJournal) {
+            //Reached the end of the journal, possibly in the middle of a record written during a crash
+        }
+
+        if (wholeRecords < journal.length()) {
+            try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+                file.setLength(wholeRecords);
+                file.getFD().sync();
+            }
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int read = super.read();
+            if (read >= 0) {
+                count++;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            final int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    private static int[] journalIndexes(File directory) {
+        String[] names = directory.list();
+
+        if (names == null) {
+            return new int[0];
+        }
+
+        return Arrays.stream(names)
+                .map(JOURNAL_FILE::matcher)
+                .filter(Matcher::matches)
+                .mapToInt(matcher -> Integer.parseInt(matcher.group(1)))
+                .sorted()
+                .toArray();
+    }
+}
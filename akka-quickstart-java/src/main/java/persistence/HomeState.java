@@ -0,0 +1,183 @@
+package persistence;
+
+import group.enums.DeviceStorage;
+import group.enums.HeatingSettings;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Everything needed to bring a home back: its devices with their last reading and the heating state.
+ * A passivated or recovered home also brings the compressed long term series of its devices, packed by
+ * device.temperature.CompressedSeries, from which their reading history is rebuilt as well.
+ */
+public final class HomeState {
+
+    private final String homeName;
+    private final Map<String, Double> readings;
+    private HeatingSettings heatingSettings = HeatingSettings.OFF;
+    private boolean blockHeating = false;
+    private DeviceStorage storage = DeviceStorage.ACTORS;
+    private final Map<String, byte[]> series;
+
+    public HomeState(String homeName) {
+        this.homeName = homeName;
+        this.readings = new LinkedHashMap<>();
+        this.series = new HashMap<>();
+    }
+
+    public HomeState(String homeName,
+                     Map<String, Double> readings,
+                     HeatingSettings heatingSettings,
+                     boolean blockHeating,
+                     DeviceStorage storage) {
+        this(homeName, readings, heatingSettings, blockHeating, storage, new HashMap<>());
+    }
+
+    public HomeState(String homeName,
+                     Map<String, Double> readings,
+                     HeatingSettings heatingSettings,
+                     boolean blockHeating,
+                     DeviceStorage storage,
+                     Map<String, byte[]> series) {
+        this.homeName = homeName;
+        this.readings = new LinkedHashMap<>(readings);
+        this.heatingSettings = heatingSettings;
+        this.blockHeating = blockHeating;
+        this.storage = storage;
+        this.series = series;
+    }
+
+    public String getHomeName() {
+        return homeName;
+    }
+
+    public Map<String, Double> getReadings() {
+        return readings;
+    }
+
+    public HeatingSettings getHeatingSettings() {
+        return heatingSettings;
+    }
+
+    public boolean isBlockHeating() {
+        return blockHeating;
+    }
+
+    public DeviceStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * The packed series of the devices which recorded any reading.
+     */
+    public Map<String, byte[]> getSeries() {
+        return series;
+    }
+
+    HomeState withSeries(Map<String, byte[]> series) {
+        return new HomeState(homeName, readings, heatingSettings, blockHeating, storage, series);
+    }
+
+    void setStorage(DeviceStorage storage) {
+        this.storage = storage;
+    }
+
+    void setHeating(HeatingSettings heatingSettings, boolean blockHeating) {
+        this.heatingSettings = heatingSettings;
+        this.blockHeating = blockHeating;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeUTF(homeName);
+        out.writeByte(heatingSettings.ordinal());
+        out.writeBoolean(blockHeating);
+        out.writeByte(storage.ordinal());
+        out.writeInt(readings.size());
+
+        for (Map.Entry<String, Double> reading : readings.entrySet()) {
+            out.writeUTF(reading.getKey());
+            out.writeDouble(reading.getValue());
+        }
+    }
+
+    /**
+     * The home in the snapshot format followed by the packed series, for homes kept in memory without their actors.
+     */
+    public byte[] toBytes() {
+        int seriesBytes = 0;
+        for (byte[] deviceSeries : series.values()) {
+            seriesBytes += deviceSeries.length;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + readings.size() * 24 + seriesBytes);
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write(out);
+            out.writeInt(series.size());
+
+            for (Map.Entry<String, byte[]> deviceSeries : series.entrySet()) {
+                out.writeUTF(deviceSeries.getKey());
+                out.writeInt(deviceSeries.getValue().length);
+                out.write(deviceSeries.getValue());
+            }
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    public static HomeState fromBytes(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            HomeState home = read(in, true);
+            final int devices = in.readInt();
+
+            for (int device = 0; device < devices; device++) {
+                final String deviceId = in.readUTF();
+                final byte[] deviceSeries = new byte[in.readInt()];
+                in.readFully(deviceSeries);
+                home.series.put(deviceId, deviceSeries);
+            }
+
+            return home;
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    /**
+     * Only the last readings of a home packed by {@link #toBytes()}, without copying its series.
+     */
+    public static Map<String, Double> readingsOf(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            return read(in, true).getReadings();
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    static HomeState read(DataInput in, boolean withStorage) throws IOException {
+        HomeState home = new HomeState(in.readUTF());
+        home.setHeating(HeatingSettings.values()[in.readByte()], in.readBoolean());
+
+        if (withStorage) {
+            home.setStorage(DeviceStorage.values()[in.readByte()]);
+        }
+
+        int devices = in.readInt();
+        for (int device = 0; device < devices; device++) {
+            home.readings.put(in.readUTF(), in.readDouble());
+        }
+
+        return home;
+    }
+}
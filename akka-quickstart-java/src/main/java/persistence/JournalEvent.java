@@ -0,0 +1,178 @@
+package persistence;
+
+import device.TemperatureDevice;
+import group.enums.DeviceStorage;
+import group.enums.HeatingSettings;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Map;
+
+/**
+ * Changes written to the journal. Each event is a type byte followed by its fields,
+ * and replaying it on a {@link FleetState} gives the state the live actors had.
+ */
+public abstract class JournalEvent {
+
+    private static final byte HOME_CREATED = 1;
+    private static final byte DEVICE_TRACKED = 2;
+    private static final byte HEATING_CHANGED = 3;
+    private static final byte READING_RECORDED = 4;
+    private static final byte HOME_CREATED_WITH_STORAGE = 5;
+    private static final byte READING_RECORDED_AT = 6;
+
+    final String homeName;
+
+    private JournalEvent(String homeName) {
+        this.homeName = homeName;
+    }
+
+    abstract void write(DataOutput out) throws IOException;
+
+    abstract void apply(Map<String, HomeState> homes);
+
+    /**
+     * Throws a StreamCorruptedException for a record which cannot have been written whole, such as
+     * one torn by a crash, and an EOFException at the end of the journal.
+     */
+    static JournalEvent read(DataInput in) throws IOException {
+        byte type = in.readByte();
+
+        switch (type) {
+            case HOME_CREATED:
+                return new HomeCreated(in.readUTF(), DeviceStorage.ACTORS);
+            case HOME_CREATED_WITH_STORAGE:
+                return new HomeCreated(in.readUTF(), ordinal(DeviceStorage.values(), in.readByte()));
+            case DEVICE_TRACKED:
+                return new DeviceTracked(in.readUTF(), in.readUTF());
+            case HEATING_CHANGED:
+                return new HeatingChanged(in.readUTF(), ordinal(HeatingSettings.values(), in.readByte()), in.readBoolean());
+            case READING_RECORDED:
+                return new ReadingRecorded(in.readUTF(), in.readUTF(), in.readDouble());
+            case READING_RECORDED_AT:
+                return new ReadingRecorded(in.readUTF(), in.readUTF(), in.readDouble(), in.readLong());
+            default:
+                throw new StreamCorruptedException("Unknown journal event type " + type);
+        }
+    }
+
+    private static <E extends Enum<E>> E ordinal(E[] values, byte ordinal) throws StreamCorruptedException {
+        if (ordinal < 0 || ordinal >= values.length) {
+            throw new StreamCorruptedException("Unknown " + values[0].getDeclaringClass().getSimpleName() + " " + ordinal);
+        }
+
+        return values[ordinal];
+    }
+
+    public static final class HomeCreated extends JournalEvent {
+        private final DeviceStorage storage;
+
+        public HomeCreated(String homeName, DeviceStorage storage) {
+            super(homeName);
+            this.storage = storage;
+        }
+
+        //Homes with device actors keep the original record, journals written before storage modes still replay
+        @Override
+        void write(DataOutput out) throws IOException {
+            if (storage == DeviceStorage.ACTORS) {
+                out.writeByte(HOME_CREATED);
+                out.writeUTF(homeName);
+            } else {
+                out.writeByte(HOME_CREATED_WITH_STORAGE);
+                out.writeUTF(homeName);
+                out.writeByte(storage.ordinal());
+            }
+        }
+
+        @Override
+        void apply(Map<String, HomeState> homes) {
+            homes.computeIfAbsent(homeName, HomeState::new).setStorage(storage);
+        }
+    }
+
+    public static final class DeviceTracked extends JournalEvent {
+        private final String deviceId;
+
+        public DeviceTracked(String homeName, String deviceId) {
+            super(homeName);
+            this.deviceId = deviceId;
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(DEVICE_TRACKED);
+            out.writeUTF(homeName);
+            out.writeUTF(deviceId);
+        }
+
+        @Override
+        void apply(Map<String, HomeState> homes) {
+            homes.computeIfAbsent(homeName, HomeState::new)
+                    .getReadings()
+                    .putIfAbsent(deviceId, TemperatureDevice.INITIAL_TEMPERATURE);
+        }
+    }
+
+    public static final class HeatingChanged extends JournalEvent {
+        private final HeatingSettings heatingSettings;
+        private final boolean blockHeating;
+
+        public HeatingChanged(String homeName, HeatingSettings heatingSettings, boolean blockHeating) {
+            super(homeName);
+            this.heatingSettings = heatingSettings;
+            this.blockHeating = blockHeating;
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(HEATING_CHANGED);
+            out.writeUTF(homeName);
+            out.writeByte(heatingSettings.ordinal());
+            out.writeBoolean(blockHeating);
+        }
+
+        @Override
+        void apply(Map<String, HomeState> homes) {
+            homes.computeIfAbsent(homeName, HomeState::new).setHeating(heatingSettings, blockHeating);
+        }
+    }
+
+    public static final class ReadingRecorded extends JournalEvent {
+        //Readings journaled before they had a timestamp, the timestamp is not used by the replay
+        private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+        private final String deviceId;
+        private final double temperature;
+        private final long timestamp;
+
+        public ReadingRecorded(String homeName, String deviceId, double temperature) {
+            this(homeName, deviceId, temperature, NO_TIMESTAMP);
+        }
+
+        public ReadingRecorded(String homeName, String deviceId, double temperature, long timestamp) {
+            super(homeName);
+            this.deviceId = deviceId;
+            this.temperature = temperature;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            out.writeByte(timestamp == NO_TIMESTAMP ? READING_RECORDED : READING_RECORDED_AT);
+            out.writeUTF(homeName);
+            out.writeUTF(deviceId);
+            out.writeDouble(temperature);
+            if (timestamp != NO_TIMESTAMP) {
+                out.writeLong(timestamp);
+            }
+        }
+
+        @Override
+        void apply(Map<String, HomeState> homes) {
+            homes.computeIfAbsent(homeName, HomeState::new).getReadings().put(deviceId, temperature);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package persistence;
+
+import java.util.Map;
+
+/**
+ * What the {@link ReadingLog} holds for restoring the homes: the last reading and the packed series
+ * of every device, by home and device.
+ */
+public final class LoggedReadings {
+
+    private final Map<String, Map<String, Double>> lastReadings;
+    private final Map<String, Map<String, byte[]>> series;
+
+    LoggedReadings(Map<String, Map<String, Double>> lastReadings, Map<String, Map<String, byte[]>> series) {
+        this.lastReadings = lastReadings;
+        this.series = series;
+    }
+
+    public Map<String, Map<String, Double>> getLastReadings() {
+        return lastReadings;
+    }
+
+    public Map<String, Map<String, byte[]>> getSeries() {
+        return series;
+    }
+}
@@ -0,0 +1,112 @@
+package persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The home and device names of the {@link ReadingLog} as ids, so that records have a fixed width.
+ * Names are appended to names.bin in id order the first time they are seen, ids start at 1.
+ * Known names are looked up without locking, as the stripes of the log append concurrently.
+ */
+final class NameDictionary {
+
+    private static final String FILE = "names.bin";
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private FileOutputStream file;
+    private DataOutputStream out;
+
+    private NameDictionary() {
+        names.add(null);
+    }
+
+    static NameDictionary read(File directory) throws IOException {
+        NameDictionary dictionary = new NameDictionary();
+        File file = new File(directory, FILE);
+
+        if (file.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                while (true) {
+                    dictionary.add(in.readUTF());
+                }
+            } catch (EOFException exc) {
+                //A name cut short by a crash is dropped, no record can use it
+            }
+        }
+
+        return dictionary;
+    }
+
+    static NameDictionary openForAppend(File directory) throws IOException {
+        NameDictionary dictionary = read(directory);
+
+        //Rewritten so that a name cut short by a crash is not followed by new ones
+        File file = new File(directory, FILE);
+        File temporary = new File(directory, FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            for (int id = 1; id < dictionary.names.size(); id++) {
+                out.writeUTF(dictionary.names.get(id));
+            }
+        }
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+
+        dictionary.file = new FileOutputStream(file, true);
+        dictionary.out = new DataOutputStream(new BufferedOutputStream(dictionary.file, 4096));
+
+        return dictionary;
+    }
+
+    private int add(String name) {
+        int id = names.size();
+        names.add(name);
+        ids.put(name, id);
+
+        return id;
+    }
+
+    int idOf(String name) throws IOException {
+        Integer id = ids.get(name);
+
+        if (id != null) {
+            return id;
+        }
+
+        synchronized (this) {
+            id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+
+            out.writeUTF(name);
+            out.flush();
+
+            return add(name);
+        }
+    }
+
+    String nameOf(int id) {
+        return id < names.size() ? names.get(id) : null;
+    }
+
+    void sync() throws IOException {
+        file.getFD().sync();
+    }
+
+    synchronized void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,290 @@
+package persistence;
+
+import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
+import metrics.IotMetrics;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Write-ahead log of every accepted reading with its timestamp, appended by the home actors
+ * themselves to memory-mapped segment files of fixed-width records, without allocating per reading.
+ * It is the only record of the readings: on startup the last reading and the series of every device
+ * are recovered from it, see {@link ReadingLogReader#recover}.
+ *
+ * Appends are spread over stripes by a hash of the home name, each stripe with its own lock and its own
+ * segment, so homes on different threads rarely wait for each other. All the readings of a home go to
+ * one stripe, whose segments have increasing indexes, so reading the segments in order gives the
+ * readings of every device in the order they were appended.
+ *
+ * Segments are sealed once full or older than roll-after, and deleted once sealed for longer than
+ * the retention or once the log outgrows max-size. A sync task forces the written pages to disk
+ * every fsync interval, one fsync per segment for every reading of the interval, and allocates the
+ * next segment ahead of time. {@link ReadingLogReader} reads the segments back in order.
+ *
+ * Files in the reading log directory:
+ *  - names.bin: the home and device names, in the order of their ids
+ *  - readings-N.wal: segment N, N increasing with every segment
+ */
+public final class ReadingLog {
+
+    private static final Pattern SEGMENT_FILE = Pattern.compile("readings-(\\d+)\\.wal");
+
+    private static final class SealedSegment {
+        final File file;
+        final long sealedMillis;
+
+        SealedSegment(File file, long sealedMillis) {
+            this.file = file;
+            this.sealedMillis = sealedMillis;
+        }
+    }
+
+    //Guarded by itself, appends happen on the threads of the home actors
+    private static final class Stripe {
+        ReadingSegment current;
+        final List<ReadingSegment> toForce = new ArrayList<>();
+    }
+
+    private final File directory;
+    private final int segmentSize;
+    private final long rollAfterMillis;
+    private final long retentionMillis;
+    private final long maxSize;
+    private final NameDictionary names;
+
+    private final Stripe[] stripes;
+    //Allocated ahead of time by the sync task for the next stripe to roll
+    private final AtomicReference<ReadingSegment> spare = new AtomicReference<>();
+    private final AtomicLong nextIndex = new AtomicLong();
+    private volatile boolean closed = false;
+
+    //Only touched by the sync task, oldest first
+    private final Deque<SealedSegment> sealed = new ArrayDeque<>();
+    private final Object syncLock = new Object();
+    private Cancellable syncTask;
+
+    private ReadingLog(File directory, int stripes, int segmentSize, long rollAfterMillis, long retentionMillis, long maxSize)
+            throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.rollAfterMillis = rollAfterMillis;
+        this.retentionMillis = retentionMillis;
+        this.maxSize = maxSize;
+        this.names = NameDictionary.openForAppend(directory);
+        this.stripes = new Stripe[stripes];
+    }
+
+    public static ReadingLog open(File directory, int stripes, long segmentSize, long rollAfterMillis, long retentionMillis,
+                                  long maxSize) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create reading log directory " + directory);
+        }
+        if (segmentSize < ReadingSegment.HEADER_SIZE + ReadingSegment.RECORD_SIZE || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size " + segmentSize + " out of range");
+        }
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Expected at least one stripe, got " + stripes);
+        }
+
+        ReadingLog log = new ReadingLog(directory, stripes, (int) segmentSize, rollAfterMillis, retentionMillis, maxSize);
+        long now = System.currentTimeMillis();
+
+        //Segments of the previous run are sealed as they are, appending starts in new ones
+        List<File> previous = new ArrayList<>(segmentFiles(directory).values());
+        long startedAfter = now;
+        for (int i = previous.size() - 1; i >= 0; i--) {
+            File file = previous.get(i);
+            long startedMillis = ReadingSegment.readStartedMillis(file);
+
+            if (startedMillis < 0) {
+                //Allocated ahead of time and never written to
+                file.delete();
+            } else {
+                log.sealed.addFirst(new SealedSegment(file, startedAfter));
+                startedAfter = startedMillis;
+            }
+        }
+
+        log.nextIndex.set(segmentFiles(directory).isEmpty() ? 0 : segmentFiles(directory).lastKey() + 1);
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            log.stripes[stripe] = new Stripe();
+            log.stripes[stripe].current = log.allocate();
+            log.stripes[stripe].current.start(now);
+        }
+
+        return log;
+    }
+
+    /**
+     * Segment files by index, in order.
+     */
+    static TreeMap<Long, File> segmentFiles(File directory) {
+        TreeMap<Long, File> segments = new TreeMap<>();
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = SEGMENT_FILE.matcher(file.getName());
+
+                if (matcher.matches()) {
+                    segments.put(Long.parseLong(matcher.group(1)), file);
+                }
+            }
+        }
+
+        return segments;
+    }
+
+    private ReadingSegment allocate() throws IOException {
+        long index = nextIndex.getAndIncrement();
+
+        return ReadingSegment.allocate(new File(directory, String.format("readings-%010d.wal", index)), index, segmentSize);
+    }
+
+    /**
+     * Runs the sync task every interval on the dispatcher and closes the log when the system terminates.
+     */
+    public void syncEvery(ActorSystem system, FiniteDuration interval, String dispatcher) {
+        syncTask = system.scheduler().schedule(interval, interval, this::sync, system.dispatchers().lookup(dispatcher));
+        system.registerOnTermination(this::close);
+    }
+
+    public void append(String homeName, String deviceId, long timestamp, double value) {
+        final Stripe stripe = stripes[(homeName.hashCode() & Integer.MAX_VALUE) % stripes.length];
+
+        synchronized (stripe) {
+            if (closed) {
+                return;
+            }
+
+            try {
+                if (stripe.current.isFull() || timestamp - stripe.current.getStartedMillis() >= rollAfterMillis) {
+                    roll(stripe, timestamp);
+                }
+
+                stripe.current.append(names.idOf(homeName), names.idOf(deviceId), timestamp, value);
+                IotMetrics.READING_LOG_RECORDS.increment();
+            } catch (IOException exc) {
+                //The home keeps the reading in memory, only its durability is lost
+                IotMetrics.READING_LOG_FAILURES.increment();
+            }
+        }
+    }
+
+    private void roll(Stripe stripe, long now) throws IOException {
+        ReadingSegment next = spare.getAndSet(null);
+        if (next == null) {
+            next = allocate();
+        }
+
+        next.start(now);
+        stripe.toForce.add(stripe.current);
+        stripe.current = next;
+    }
+
+    /**
+     * Forces everything appended so far to disk, seals and retires segments and allocates the next one.
+     */
+    void sync() {
+        synchronized (syncLock) {
+            if (closed) {
+                return;
+            }
+
+            final List<ReadingSegment> open = new ArrayList<>(stripes.length);
+            final List<ReadingSegment> rolled = new ArrayList<>();
+
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    open.add(stripe.current);
+                    rolled.addAll(stripe.toForce);
+                    stripe.toForce.clear();
+                }
+            }
+
+            final long start = System.nanoTime();
+            try {
+                //Names first, so that a record on disk always has its names
+                names.sync();
+
+                for (ReadingSegment full : rolled) {
+                    full.force();
+                    full.close();
+                    sealed.addLast(new SealedSegment(full.getFile(), System.currentTimeMillis()));
+                }
+                for (ReadingSegment segment : open) {
+                    segment.force();
+                }
+                IotMetrics.READING_LOG_FSYNC.recordSince(start);
+
+                retire();
+
+                if (spare.get() == null) {
+                    final ReadingSegment allocated = allocate();
+
+                    if (!spare.compareAndSet(null, allocated)) {
+                        allocated.close();
+                        allocated.getFile().delete();
+                    }
+                }
+            } catch (IOException exc) {
+                IotMetrics.READING_LOG_FAILURES.increment();
+            }
+        }
+    }
+
+    private void retire() {
+        final long now = System.currentTimeMillis();
+        long size = (long) segmentSize * (sealed.size() + stripes.length);
+
+        while (!sealed.isEmpty()
+                && (now - sealed.peekFirst().sealedMillis > retentionMillis || size > maxSize)) {
+            sealed.removeFirst().file.delete();
+            size -= segmentSize;
+        }
+    }
+
+    public void close() {
+        if (syncTask != null) {
+            syncTask.cancel();
+        }
+
+        sync();
+
+        synchronized (syncLock) {
+            if (closed) {
+                return;
+            }
+
+            try {
+                for (Stripe stripe : stripes) {
+                    synchronized (stripe) {
+                        closed = true;
+                        stripe.current.close();
+                    }
+                }
+
+                final ReadingSegment unused = spare.getAndSet(null);
+                if (unused != null) {
+                    unused.close();
+                    unused.getFile().delete();
+                }
+                names.close();
+            } catch (IOException exc) {
+                IotMetrics.READING_LOG_FAILURES.increment();
+            }
+        }
+    }
+}
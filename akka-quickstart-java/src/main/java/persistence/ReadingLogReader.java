@@ -0,0 +1,95 @@
+package persistence;
+
+import device.temperature.CompressedSeries;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the segments of a {@link ReadingLog} back in the order they were written, for recovery
+ * and export. Segments being written to can be read as well, up to their last complete record.
+ * The readings of a device come in the order they were appended, those of different homes may not.
+ *
+ * Exports a reading log as CSV:
+ * java -cp target/app.jar persistence.ReadingLogReader iot-data/readings > readings.csv
+ */
+public final class ReadingLogReader {
+
+    public interface ReadingVisitor {
+        void reading(String homeName, String deviceId, long timestamp, double value);
+    }
+
+    private ReadingLogReader() {
+    }
+
+    public static void read(File directory, ReadingVisitor visitor) throws IOException {
+        NameDictionary names = NameDictionary.read(directory);
+
+        for (Map.Entry<Long, File> segmentFile : ReadingLog.segmentFiles(directory).entrySet()) {
+            ReadingSegment segment;
+
+            try {
+                segment = ReadingSegment.openForReading(segmentFile.getValue(), segmentFile.getKey());
+            } catch (IOException exc) {
+                //Retired since the directory was listed
+                if (!segmentFile.getValue().exists()) {
+                    continue;
+                }
+                throw exc;
+            }
+
+            try {
+                segment.read(names, visitor);
+            } finally {
+                segment.close();
+            }
+        }
+    }
+
+    /**
+     * The last reading and the series of every device, rebuilt from the readings still in the log.
+     * Each series is packed as soon as the log is read, so only the packed series are kept afterwards.
+     */
+    public static LoggedReadings recover(File directory, CompressedSeries.Settings settings) throws IOException {
+        final Map<String, Map<String, Double>> lastReadings = new HashMap<>();
+        final Map<String, Map<String, CompressedSeries>> series = new HashMap<>();
+
+        read(directory, (homeName, deviceId, timestamp, value) -> {
+            //Appended after the names were last synced, before a crash
+            if (homeName == null || deviceId == null) {
+                return;
+            }
+
+            lastReadings.computeIfAbsent(homeName, home -> new HashMap<>()).put(deviceId, value);
+            series.computeIfAbsent(homeName, home -> new HashMap<>())
+                    .computeIfAbsent(deviceId, device -> new CompressedSeries(settings))
+                    .record(timestamp, value);
+        });
+
+        final Map<String, Map<String, byte[]>> packed = new HashMap<>(series.size() * 2);
+        series.forEach((homeName, homeSeries) -> {
+            final Map<String, byte[]> packedHome = new HashMap<>(homeSeries.size() * 2);
+
+            homeSeries.forEach((deviceId, deviceSeries) -> packedHome.put(deviceId, deviceSeries.toBytes()));
+            packed.put(homeName, packedHome);
+        });
+
+        return new LoggedReadings(lastReadings, packed);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: ReadingLogReader <reading log directory>");
+            System.exit(1);
+        }
+
+        final PrintStream out = System.out;
+        out.println("home,device,timestamp,temperature");
+
+        read(new File(args[0]), (homeName, deviceId, timestamp, value) ->
+                out.println(homeName + "," + deviceId + "," + timestamp + "," + value));
+    }
+}
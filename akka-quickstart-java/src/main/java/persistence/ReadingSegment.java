@@ -0,0 +1,136 @@
+package persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * One file of the {@link ReadingLog}, allocated to its full size up front and mapped into memory,
+ * so that appending a reading is four puts into the mapping.
+ *
+ * Layout: a header of magic, record size and the time the segment was started, then records of
+ * home id, device id, timestamp and value. Ids start at 1 and the home id is written last, so the
+ * zeroed tail of the file, or a record cut short, reads as the end of the segment.
+ */
+final class ReadingSegment {
+
+    static final int MAGIC = 0x1077EAD1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 24;
+
+    private static final int HOME = 0;
+    private static final int DEVICE = 4;
+    private static final int TIMESTAMP = 8;
+    private static final int VALUE = 16;
+
+    private final File file;
+    private final long index;
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    private long startedMillis;
+    private int position = HEADER_SIZE;
+
+    private ReadingSegment(File file, long index, RandomAccessFile randomAccessFile, FileChannel.MapMode mode)
+            throws IOException {
+        this.file = file;
+        this.index = index;
+        this.randomAccessFile = randomAccessFile;
+        this.buffer = randomAccessFile.getChannel().map(mode, 0, randomAccessFile.length());
+        this.capacity = buffer.capacity();
+    }
+
+    /**
+     * A new segment of size bytes, not started yet: it has no header until {@link #start(long)}.
+     */
+    static ReadingSegment allocate(File file, long index, int size) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(size);
+
+        return new ReadingSegment(file, index, randomAccessFile, FileChannel.MapMode.READ_WRITE);
+    }
+
+    static ReadingSegment openForReading(File file, long index) throws IOException {
+        return new ReadingSegment(file, index, new RandomAccessFile(file, "r"), FileChannel.MapMode.READ_ONLY);
+    }
+
+    /**
+     * The start time in the header of a segment file, or -1 if it was allocated and never started.
+     */
+    static long readStartedMillis(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.length() < HEADER_SIZE || in.readInt() != MAGIC) {
+                return -1;
+            }
+
+            in.readInt();
+            return in.readLong();
+        }
+    }
+
+    void start(long startedMillis) {
+        this.startedMillis = startedMillis;
+        buffer.putInt(4, RECORD_SIZE);
+        buffer.putLong(8, startedMillis);
+        buffer.putInt(0, MAGIC);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long getIndex() {
+        return index;
+    }
+
+    long getStartedMillis() {
+        return startedMillis;
+    }
+
+    boolean isFull() {
+        return position + RECORD_SIZE > capacity;
+    }
+
+    void append(int homeId, int deviceId, long timestamp, double value) {
+        buffer.putInt(position + DEVICE, deviceId);
+        buffer.putLong(position + TIMESTAMP, timestamp);
+        buffer.putDouble(position + VALUE, value);
+        buffer.putInt(position + HOME, homeId);
+        position += RECORD_SIZE;
+    }
+
+    /**
+     * Hands every record to the visitor in the order written, stopping at the first empty one.
+     */
+    void read(NameDictionary names, ReadingLogReader.ReadingVisitor visitor) {
+        for (int record = HEADER_SIZE; record + RECORD_SIZE <= capacity; record += RECORD_SIZE) {
+            int homeId = buffer.getInt(record + HOME);
+
+            if (homeId == 0) {
+                return;
+            }
+
+            visitor.reading(names.nameOf(homeId),
+                    names.nameOf(buffer.getInt(record + DEVICE)),
+                    buffer.getLong(record + TIMESTAMP),
+                    buffer.getDouble(record + VALUE));
+        }
+    }
+
+    /**
+     * Writes the mapped pages to disk, safe to call while another thread appends.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Closes the file; the mapping itself is released once the segment is garbage collected.
+     */
+    void close() throws IOException {
+        randomAccessFile.close();
+    }
+}
@@ -0,0 +1,122 @@
+package query;
+
+import akka.actor.AbstractExtensionId;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.Extension;
+import akka.actor.ExtensionIdProvider;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One hashed timer wheel per actor system for the deadlines of all outstanding queries, instead of
+ * a scheduler task per query. Registrations are handed over through a concurrent queue and only the
+ * tick, running every {@link #TICK_MILLIS} ms, touches the wheel itself.
+ */
+public final class QueryDeadlines implements Extension {
+
+    private static final long TICK_MILLIS = 50;
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+    private static final int WHEEL_SIZE = 128;
+
+    public static final class Provider extends AbstractExtensionId<QueryDeadlines> implements ExtensionIdProvider {
+        public static final Provider INSTANCE = new Provider();
+
+        private Provider() {
+        }
+
+        @Override
+        public Provider lookup() {
+            return INSTANCE;
+        }
+
+        @Override
+        public QueryDeadlines createExtension(ExtendedActorSystem system) {
+            return new QueryDeadlines(system);
+        }
+    }
+
+    public static QueryDeadlines get(ActorSystem system) {
+        return Provider.INSTANCE.get(system);
+    }
+
+    public static final class Registration {
+        private final ActorRef query;
+        private final long deadlineTick;
+        private volatile boolean cancelled = false;
+
+        private Registration(ActorRef query, long deadlineTick) {
+            this.query = query;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private final Queue<Registration> registrations = new ConcurrentLinkedQueue<>();
+    private final List<ArrayDeque<Registration>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private final long startNanos = System.nanoTime();
+    private long processedTick = 0;
+
+    private QueryDeadlines(ActorSystem system) {
+        for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+            wheel.add(new ArrayDeque<>());
+        }
+
+        FiniteDuration tick = new FiniteDuration(TICK_MILLIS, TimeUnit.MILLISECONDS);
+        system.scheduler().schedule(tick, tick, this::onTick, system.dispatcher());
+    }
+
+    /**
+     * Sends {@link ScatterGatherQuery.CollectionTimeout} to the query once the timeout passed,
+     * unless the registration is cancelled first.
+     */
+    public Registration register(ActorRef query, FiniteDuration timeout) {
+        //Rounded up, so a query never times out before its timeout
+        final long deadlineNanos = System.nanoTime() - startNanos + timeout.toNanos();
+        Registration registration = new Registration(query, (deadlineNanos + TICK_NANOS - 1) / TICK_NANOS);
+        registrations.add(registration);
+
+        return registration;
+    }
+
+    private synchronized void onTick() {
+        final long currentTick = (System.nanoTime() - startNanos) / TICK_NANOS;
+
+        Registration registration;
+        while ((registration = registrations.poll()) != null) {
+            long slotTick = Math.max(registration.deadlineTick, processedTick + 1);
+            wheel.get((int) (slotTick % WHEEL_SIZE)).add(registration);
+        }
+
+        for (long tick = processedTick + 1; tick <= currentTick; tick++) {
+            ArrayDeque<Registration> slot = wheel.get((int) (tick % WHEEL_SIZE));
+
+            //Deadlines more than one revolution away stay in the slot for a later round
+            for (int remaining = slot.size(); remaining > 0; remaining--) {
+                Registration due = slot.poll();
+
+                if (due.cancelled) {
+                    continue;
+                }
+
+                if (due.deadlineTick <= tick) {
+                    due.query.tell(ScatterGatherQuery.CollectionTimeout.INSTANCE, ActorRef.noSender());
+                } else {
+                    slot.add(due);
+                }
+            }
+        }
+
+        processedTick = Math.max(processedTick, currentTick);
+    }
+}
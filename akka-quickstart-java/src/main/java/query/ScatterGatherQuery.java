@@ -0,0 +1,104 @@
+package query;
+
+import akka.actor.AbstractActor;
+import akka.japi.pf.ReceiveBuilder;
+import metrics.QueryMetrics;
+import scala.concurrent.duration.FiniteDuration;
+
+/**
+ * Base of the short lived actors that send one request to many actors and answer once with all replies.
+ * Subclasses keep their replies in structures sized up front and updated in place, call
+ * {@link #replyReceived()} for every expected reply, and get {@link #gather(boolean)} called once:
+ * when the last reply arrives, or with the partial result when the deadline passes.
+ */
+public abstract class ScatterGatherQuery extends AbstractActor {
+
+    public static final class CollectionTimeout {
+        static final CollectionTimeout INSTANCE = new CollectionTimeout();
+
+        private CollectionTimeout() {
+        }
+    }
+
+    private final QueryMetrics metrics;
+    private final FiniteDuration timeout;
+    private final long startNanos = System.nanoTime();
+
+    private QueryDeadlines.Registration deadline;
+    private int stillWaiting;
+    private int answered = 0;
+    private boolean finished = false;
+
+    protected ScatterGatherQuery(QueryMetrics metrics, FiniteDuration timeout) {
+        this.metrics = metrics;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Sends the requests and returns how many replies to wait for.
+     */
+    protected abstract int scatter();
+
+    /**
+     * Adds the handling of the replies, which must call {@link #replyReceived()} once per expected reply.
+     */
+    protected abstract ReceiveBuilder replies(ReceiveBuilder builder);
+
+    /**
+     * Sends the result to the requester.
+     */
+    protected abstract void gather(boolean timedOut);
+
+    @Override
+    public final void preStart() {
+        stillWaiting = scatter();
+
+        if (stillWaiting == 0) {
+            finish(false);
+        } else {
+            deadline = QueryDeadlines.get(getContext().getSystem()).register(getSelf(), timeout);
+        }
+    }
+
+    @Override
+    public final void postStop() {
+        if (deadline != null) {
+            deadline.cancel();
+        }
+    }
+
+    protected final void replyReceived() {
+        answered++;
+
+        if (--stillWaiting == 0) {
+            finish(false);
+        }
+    }
+
+    private void finish(boolean timedOut) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+
+        if (timedOut) {
+            metrics.timedOut(startNanos, answered, stillWaiting);
+        } else {
+            metrics.completed(startNanos, answered);
+        }
+
+        gather(timedOut);
+        getContext().stop(getSelf());
+    }
+
+    protected static int capacityFor(int expected) {
+        return (int) (expected / 0.75f) + 1;
+    }
+
+    @Override
+    public Receive createReceive() {
+        return replies(receiveBuilder())
+                .match(CollectionTimeout.class, t -> finish(true))
+                .build();
+    }
+}
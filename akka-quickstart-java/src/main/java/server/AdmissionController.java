@@ -0,0 +1,87 @@
+package server;
+
+import com.typesafe.config.Config;
+import metrics.Counter;
+import metrics.Gauge;
+import metrics.IotMetrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides whether a request is handled or shed with 503 before anything is asked of the actors.
+ * Reads and writes have separate budgets of requests in flight, so a burst of ingest cannot take
+ * the places of dashboard reads and the other way round. A budget also sheds while the device
+ * manager and home mailboxes together hold more than its max-queue-depth messages, since those
+ * requests would only wait behind the queue until their ask timed out.
+ */
+class AdmissionController {
+
+    static final class Budget {
+        private final int maxInFlight;
+        private final long maxQueueDepth;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final Gauge inFlightGauge;
+        private final Counter shed;
+
+        private Budget(String name, Config config) {
+            this.maxInFlight = config.getInt("max-in-flight");
+            this.maxQueueDepth = config.getLong("max-queue-depth");
+            this.inFlightGauge = IotMetrics.admissionInFlight(name);
+            this.shed = IotMetrics.admissionShed(name);
+        }
+
+        /**
+         * Takes a place in the budget, every admitted request must {@link #release()} it once answered.
+         */
+        boolean tryAcquire(long queueDepth) {
+            if (queueDepth > maxQueueDepth) {
+                shed.increment();
+                return false;
+            }
+
+            if (inFlight.incrementAndGet() > maxInFlight) {
+                inFlight.decrementAndGet();
+                shed.increment();
+                return false;
+            }
+
+            inFlightGauge.increment();
+            return true;
+        }
+
+        void release() {
+            inFlight.decrementAndGet();
+            inFlightGauge.decrement();
+        }
+    }
+
+    private final Budget reads;
+    private final Budget writes;
+    private final long retryAfterSeconds;
+    private final Gauge managerQueueDepth = IotMetrics.mailboxDepth("device_manager");
+    //Writes go straight to the homes, so a backlog there never shows in the manager mailboxes
+    private final Gauge groupQueueDepth = IotMetrics.mailboxDepth("device_group");
+
+    AdmissionController(Config config) {
+        this.reads = new Budget("reads", config.getConfig("reads"));
+        this.writes = new Budget("writes", config.getConfig("writes"));
+        this.retryAfterSeconds = Math.max(1, config.getDuration("retry-after", TimeUnit.SECONDS));
+    }
+
+    Budget reads() {
+        return reads;
+    }
+
+    Budget writes() {
+        return writes;
+    }
+
+    long queueDepth() {
+        return managerQueueDepth.get() + groupQueueDepth.get();
+    }
+
+    long retryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,74 @@
+package server;
+
+import akka.NotUsed;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.http.javadsl.model.sse.ServerSentEvent;
+import akka.japi.Pair;
+import akka.stream.Materializer;
+import akka.stream.OverflowStrategy;
+import akka.stream.javadsl.BroadcastHub;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import group.DeviceGroup;
+import group.HomeUpdateSubscribers;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single broadcast point for {@link DeviceGroup.HomeUpdate} events published on the event stream.
+ * Every update is materialized once and shared by all subscribers, each subscriber only filters
+ * the homes it is interested in.
+ */
+class HomeUpdatesHub {
+
+    private static final int BUFFER_SIZE = 256;
+    private static final int SUBSCRIBER_BUFFER_SIZE = 64;
+    private static final FiniteDuration KEEP_ALIVE = new FiniteDuration(15, TimeUnit.SECONDS);
+
+    //Carries no data, only keeps idle connections from being closed by proxies
+    private static final ServerSentEvent HEARTBEAT = ServerSentEvent.create("", "heartbeat");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Source<DeviceGroup.HomeUpdate, NotUsed> updates;
+    private final HomeUpdateSubscribers subscribers;
+
+    HomeUpdatesHub(ActorSystem system, Materializer materializer) {
+        Pair<ActorRef, Source<DeviceGroup.HomeUpdate, NotUsed>> hub = Source
+                .<DeviceGroup.HomeUpdate>actorRef(BUFFER_SIZE, OverflowStrategy.dropHead())
+                .toMat(BroadcastHub.of(DeviceGroup.HomeUpdate.class, BUFFER_SIZE), Keep.both())
+                .run(materializer);
+
+        system.eventStream().subscribe(hub.first(), DeviceGroup.HomeUpdate.class);
+
+        //Keep draining the hub while nobody is subscribed, otherwise the first subscriber gets stale updates
+        hub.second().runWith(Sink.ignore(), materializer);
+
+        updates = hub.second();
+        subscribers = HomeUpdateSubscribers.get(system);
+    }
+
+    Source<ServerSentEvent, NotUsed> subscribe(Set<String> homeNames) {
+        return updates
+                .filter(update -> homeNames.contains(update.getHouseName()))
+                .buffer(SUBSCRIBER_BUFFER_SIZE, OverflowStrategy.dropHead())
+                .map(this::toServerSentEvent)
+                .keepAlive(KEEP_ALIVE, () -> HEARTBEAT)
+                //Homes only publish their updates while a subscriber is connected
+                .watchTermination((notUsed, done) -> {
+                    subscribers.subscribed();
+                    done.whenComplete((result, exc) -> subscribers.unsubscribed());
+                    return notUsed;
+                });
+    }
+
+    private ServerSentEvent toServerSentEvent(DeviceGroup.HomeUpdate update) throws Exception {
+        String type = update instanceof DeviceGroup.HeatingChanged ? "heating" : "temperature";
+
+        return ServerSentEvent.create(objectMapper.writeValueAsString(update), type);
+    }
+}
@@ -0,0 +1,90 @@
+package server;
+
+import akka.NotUsed;
+import akka.pattern.PatternsCS;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import akka.util.Timeout;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import group.DeviceGroup;
+import manager.DeviceManager;
+import manager.DeviceManagerRouter;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Streams one page of homes with their devices as a JSON document, writing each home as soon as
+ * it answers instead of waiting for the slowest one. Only a bounded number of homes is asked at a
+ * time, so memory does not grow with the size of the page.
+ *
+ * The document is {"homes":{"home":[{"device":temperature},...],...},"nextCursor":"home"},
+ * where nextCursor is the cursor of the next page, or null after the last page.
+ */
+class HomesStream {
+
+    private static final int HOMES_IN_FLIGHT = 16;
+    private static final ByteString COMMA = ByteString.fromString(",");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final DeviceManagerRouter deviceManagers;
+    private final Timeout timeout;
+
+    HomesStream(DeviceManagerRouter deviceManagers, Timeout timeout) {
+        this.deviceManagers = deviceManagers;
+        this.timeout = timeout;
+    }
+
+    Source<ByteString, NotUsed> page(String cursor, int limit) {
+        return Source
+                .fromCompletionStage(deviceManagers.getHomeNames(cursor, limit, timeout))
+                .flatMapConcat(page -> homes(page.getHomeNames(), limit));
+    }
+
+    private Source<ByteString, NotUsed> homes(List<String> homeNames, int limit) throws JsonProcessingException {
+        final String nextCursor = homeNames.size() < limit ? null : homeNames.get(homeNames.size() - 1);
+
+        final ByteString start = ByteString.fromString("{\"homes\":{");
+        final ByteString end = ByteString.fromString("},\"nextCursor\":" + objectMapper.writeValueAsString(nextCursor) + "}");
+
+        return Source.from(homeNames)
+                .mapAsyncUnordered(HOMES_IN_FLIGHT, this::home)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .intersperse(start, COMMA, end);
+    }
+
+    private CompletionStage<Optional<ByteString>> home(String homeName) {
+        return PatternsCS
+                .ask(deviceManagers.toHome(homeName), new DeviceManager.GetHomeTemperature(homeName), timeout)
+                .thenApply(obj -> (DeviceGroup.RespondAllTemperatures) obj)
+                .thenApply(this::toFragment)
+                //A home which does not answer in time is left out of the page rather than failing the whole response
+                .exceptionally(exc -> Optional.empty());
+    }
+
+    private Optional<ByteString> toFragment(DeviceGroup.RespondAllTemperatures home) {
+        //The home was removed after the page of names was read
+        if (home.getTemperatures() == null) {
+            return Optional.empty();
+        }
+
+        List<Map.Entry<String, Double>> devices = new ArrayList<>(home.getTemperatures().size());
+        home.getTemperatures().forEach((deviceName, temperature) ->
+                devices.add(new AbstractMap.SimpleEntry<>(deviceName, temperature)));
+        devices.sort(Map.Entry.comparingByKey());
+
+        try {
+            return Optional.of(ByteString.fromString(
+                    objectMapper.writeValueAsString(home.getHouseName()) + ":" + objectMapper.writeValueAsString(devices)));
+        } catch (JsonProcessingException exc) {
+            return Optional.empty();
+        }
+    }
+}
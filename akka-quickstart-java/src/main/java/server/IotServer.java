@@ -1,21 +1,45 @@
 package server;
 
-import akka.actor.ActorRef;
+import akka.NotUsed;
 import akka.actor.ActorSystem;
+import akka.http.javadsl.ConnectHttp;
+import akka.http.javadsl.Http;
+import akka.http.javadsl.ServerBinding;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.HttpResponse;
 import akka.http.javadsl.server.AllDirectives;
 import akka.http.javadsl.server.Route;
 import akka.stream.ActorMaterializer;
+import akka.stream.ActorMaterializerSettings;
+import akka.stream.javadsl.Flow;
+import dispatch.IotDispatchers;
+import manager.DeviceManagerRouter;
+
+import java.util.concurrent.CompletionStage;
 
 public class IotServer extends AllDirectives {
 
     // set up ActorSystem and other dependencies here
     private final Routes userRoutes;
 
-    public IotServer(ActorSystem system, ActorRef deviceManager) {
-        userRoutes = new Routes(system, deviceManager);
+    public IotServer(ActorSystem system, DeviceManagerRouter deviceManagers) {
+        userRoutes = new Routes(system, deviceManagers);
     }
 
     public Route createRoute() {
         return userRoutes.routes();
     }
+
+    /**
+     * Binds the routes on the given host and port, port 0 picks a free port.
+     */
+    public CompletionStage<ServerBinding> bind(ActorSystem system, String host, int port) {
+        //Route handling and the streams it starts run on their own dispatcher, apart from the actors
+        final ActorMaterializer materializer = ActorMaterializer.create(ActorMaterializerSettings.create(system)
+                .withDispatcher(IotDispatchers.lookup(system, IotDispatchers.HTTP)), system);
+
+        final Flow<HttpRequest, HttpResponse, NotUsed> routeFlow = createRoute().flow(system, materializer);
+
+        return Http.get(system).bindAndHandle(routeFlow, ConnectHttp.toHost(host, port), materializer);
+    }
 }
@@ -0,0 +1,61 @@
+package server;
+
+import metrics.Counter;
+import metrics.IotMetrics;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Single flight for identical reads: while a load for a key is outstanding, further requests for the
+ * same key wait for its result instead of starting their own. Once a flight has maxRequestsPerFlight
+ * requests attached, the next request starts a fresh flight, so a slow load cannot collect an
+ * unbounded number of waiting requests.
+ */
+class RequestCoalescer {
+
+    private static final class Flight {
+        final CompletionStage<?> result;
+        //Only read and written inside ConcurrentHashMap.compute for the flight's key
+        int requests = 1;
+
+        Flight(CompletionStage<?> result) {
+            this.result = result;
+        }
+    }
+
+    private final int maxRequestsPerFlight;
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+    private final Counter requests;
+    private final Counter loads;
+
+    RequestCoalescer(String route, int maxRequestsPerFlight) {
+        this.maxRequestsPerFlight = maxRequestsPerFlight;
+        this.requests = IotMetrics.coalescedRequests(route);
+        this.loads = IotMetrics.coalescedLoads(route);
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> CompletionStage<T> load(String key, Supplier<CompletionStage<T>> load) {
+        final boolean[] started = {false};
+
+        final Flight flight = flights.compute(key, (k, current) -> {
+            if (current != null && current.requests < maxRequestsPerFlight) {
+                current.requests++;
+                return current;
+            }
+
+            started[0] = true;
+            return new Flight(load.get());
+        });
+
+        requests.increment();
+        if (started[0]) {
+            loads.increment();
+            flight.result.whenComplete((result, failure) -> flights.remove(key, flight));
+        }
+
+        return (CompletionStage<T>) flight.result;
+    }
+}
@@ -0,0 +1,37 @@
+package server;
+
+import akka.util.ByteString;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Last rendered body of each cached response, together with the version of the data it was rendered
+ * from. A body is only served for the exact version it was rendered at, a newer version renders again
+ * and replaces it, so there is one body per response key at most.
+ */
+class ResponseCache {
+
+    private static final class Rendered {
+        final long version;
+        final ByteString body;
+
+        Rendered(long version, ByteString body) {
+            this.version = version;
+            this.body = body;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Rendered> responses = new ConcurrentHashMap<>();
+
+    ByteString get(String key, long version) {
+        Rendered rendered = responses.get(key);
+
+        return rendered != null && rendered.version == version ? rendered.body : null;
+    }
+
+    void put(String key, long version, ByteString body) {
+        //Two renders of different versions can finish in any order, keep the newest
+        responses.merge(key, new Rendered(version, body),
+                (current, rendered) -> rendered.version >= current.version ? rendered : current);
+    }
+}
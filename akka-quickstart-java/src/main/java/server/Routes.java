@@ -5,29 +5,58 @@ import akka.actor.ActorSystem;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
 import akka.http.javadsl.marshallers.jackson.Jackson;
+import akka.http.javadsl.marshalling.sse.EventStreamMarshalling;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpEntities;
 import akka.http.javadsl.model.HttpHeader;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.RequestEntity;
 import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.EntityTag;
 import akka.http.javadsl.server.AllDirectives;
 import akka.http.javadsl.server.Route;
+import akka.http.javadsl.unmarshalling.StringUnmarshallers;
 import akka.http.scaladsl.model.headers.RawHeader;
 import akka.pattern.PatternsCS;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.util.ByteString;
 import akka.util.Timeout;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import device.TemperatureDevice;
 import group.DeviceGroup;
+import group.HomeVersions;
 import group.enums.HeatingSettings;
+import heating.HeatingScheduler;
 import manager.DeviceManager;
+import manager.DeviceManagerRouter;
+import metrics.IotMetrics;
+import metrics.RouteMetrics;
 import model.BlockHeating;
+import model.FleetChanges;
 import model.HeatingSetting;
+import model.HeatingStatus;
 import model.Home;
+import model.HomeSeries;
+import model.HomeStats;
+import model.IngestSummary;
 import model.Temperatures;
 import scala.concurrent.duration.Duration;
 import validator.HomeValidator;
 import validator.ValidatorException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
 
 import static akka.http.javadsl.server.PathMatchers.segment;
 
@@ -43,17 +72,71 @@ class Routes extends AllDirectives {
         }
     };
 
-    private final ActorRef deviceManager;
+    private static final RouteMetrics GET_HOMES_NUMBER = IotMetrics.route("get_homes_number");
+    private static final RouteMetrics POST_HOME = IotMetrics.route("post_home");
+    private static final RouteMetrics GET_HOME_EXISTS = IotMetrics.route("get_home_exists");
+    private static final RouteMetrics GET_HOME_HEATING = IotMetrics.route("get_home_heating");
+    private static final RouteMetrics PUT_HOME_HEATING = IotMetrics.route("put_home_heating");
+    private static final RouteMetrics GET_HOME_TEMPERATURE = IotMetrics.route("get_home_temperature");
+    private static final RouteMetrics GET_HOME_STATS = IotMetrics.route("get_home_stats");
+    private static final RouteMetrics GET_DEVICE_HISTORY = IotMetrics.route("get_device_history");
+    private static final RouteMetrics GET_HOME_SERIES = IotMetrics.route("get_home_series");
+    private static final RouteMetrics POST_DEVICE = IotMetrics.route("post_device");
+    private static final RouteMetrics GET_IOT = IotMetrics.route("get_iot");
+    private static final RouteMetrics GET_IOT_CHANGES = IotMetrics.route("get_iot_changes");
+    private static final RouteMetrics POST_IOT = IotMetrics.route("post_iot");
+    private static final RouteMetrics POST_IOT_STREAM = IotMetrics.route("post_iot_stream");
+    private static final RouteMetrics GET_IOT_STREAM = IotMetrics.route("get_iot_stream");
+    private static final RouteMetrics GET_IOT_UPDATES = IotMetrics.route("get_iot_updates");
+    private static final RouteMetrics PUT_IOT_HEATING = IotMetrics.route("put_iot_heating");
+    private static final RouteMetrics GET_IOT_HEATING = IotMetrics.route("get_iot_heating");
+
+    private static final long DEFAULT_HISTORY_RANGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long DEFAULT_HISTORY_STEP_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long DEFAULT_SERIES_RANGE_MILLIS = TimeUnit.DAYS.toMillis(7);
+    private static final long DEFAULT_SERIES_STEP_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long MAXIMUM_HISTORY_BUCKETS = 10000;
+    private static final int DEFAULT_HOMES_PAGE_SIZE = 1000;
+    private static final int MAXIMUM_HOMES_PAGE_SIZE = 10000;
+    private static final int MAXIMUM_COALESCED_REQUESTS = 1000;
+
+    private final DeviceManagerRouter deviceManagers;
     private final LoggingAdapter log;
 
-    Routes(ActorSystem system, ActorRef deviceManager) {
-        this.deviceManager = deviceManager;
-        log = Logging.getLogger(system, this);
-    }
-
     // Required by the `ask` (?) method below
     private Timeout timeout = new Timeout(Duration.create(5, TimeUnit.SECONDS)); // usually we'd obtain the timeout from the system's configuration
 
+    //Differs between runs of the server, so entity tags from a previous run never match
+    private static final String ETAG_PREFIX = Long.toHexString(System.currentTimeMillis()) + "-";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HomeVersions homeVersions;
+    //The versions only count the changes of the homes on this node, which a cluster moves between nodes
+    private final boolean clustered;
+    private final ResponseCache responseCache = new ResponseCache();
+
+    //Identical reads in flight at the same time share one ask
+    private final RequestCoalescer temperatureReads = new RequestCoalescer("get_home_temperature", MAXIMUM_COALESCED_REQUESTS);
+    private final RequestCoalescer heatingReads = new RequestCoalescer("get_home_heating", MAXIMUM_COALESCED_REQUESTS);
+    private final RequestCoalescer statsReads = new RequestCoalescer("get_home_stats", MAXIMUM_COALESCED_REQUESTS);
+    private final RequestCoalescer allDevicesReads = new RequestCoalescer("get_iot", MAXIMUM_COALESCED_REQUESTS);
+
+    private final AdmissionController admission;
+    private final TemperatureIngest temperatureIngest;
+    private final HomesStream homesStream;
+    private final HomeUpdatesHub homeUpdatesHub;
+
+    Routes(ActorSystem system, DeviceManagerRouter deviceManagers) {
+        this.deviceManagers = deviceManagers;
+        log = Logging.getLogger(system, this);
+        homeVersions = HomeVersions.get(system);
+        clustered = system.settings().config().getBoolean("iot.cluster.enabled");
+        admission = new AdmissionController(system.settings().config().getConfig("iot.admission"));
+        temperatureIngest = new TemperatureIngest(deviceManagers, timeout);
+        homesStream = new HomesStream(deviceManagers, timeout);
+        homeUpdatesHub = new HomeUpdatesHub(system, ActorMaterializer.create(system));
+    }
+
     /**
      * This method creates one central route
      */
@@ -69,58 +152,235 @@ class Routes extends AllDirectives {
                 route(
                     getAllDevicesAndHomesRoute(),
                     postTemperatureToDevicesRoute(),
+                    postTemperatureStreamRoute(),
+                    getHomeUpdatesRoute(),
                     putAlterHomesHeatingSystem()
                 )
+        ), metricsRoute());
+    }
+
+    private Route metricsRoute() {
+        return path("metrics", () -> get(() ->
+                complete(HttpResponse.create()
+                        .withEntity(ContentTypes.TEXT_PLAIN_UTF8, IotMetrics.REGISTRY.render()))
         ));
     }
 
+    /**
+     * Records the time until the inner route answers, and whether it answered with a server error.
+     */
+    private Route timed(RouteMetrics metrics, Supplier<Route> inner) {
+        return extract(context -> System.nanoTime(), startNanos ->
+                mapResponse(response -> {
+                    metrics.record(startNanos, response.status().intValue());
+                    return response;
+                }, inner)
+        );
+    }
+
+    /**
+     * Runs the inner route only if the budget has room for it, otherwise answers 503 with Retry-After
+     * at once. The place in the budget is given back when the inner route has answered.
+     */
+    private Route admitted(AdmissionController.Budget budget, Supplier<Route> inner) {
+        if (!budget.tryAcquire(admission.queueDepth())) {
+            return complete(HttpResponse.create()
+                    .withStatus(StatusCodes.SERVICE_UNAVAILABLE)
+                    .addHeaders(HTTP_HEADERS)
+                    .addHeader(new RawHeader("Retry-After", String.valueOf(admission.retryAfterSeconds())))
+                    .withEntity("Server is overloaded, retry later"));
+        }
+
+        return mapRouteResultFuture(result -> result.whenComplete((performed, exc) -> budget.release()), inner);
+    }
+
     private Route putAlterHomesHeatingSystem() {
         return path(segment("heating"), () -> route(
-                put(this::alterHomesHeatingSystem),
+                put(() -> admitted(admission.writes(), () -> timed(PUT_IOT_HEATING, this::alterHomesHeatingSystem))),
+                get(() -> admitted(admission.reads(), () -> timed(GET_IOT_HEATING, this::getHeatingStatus))),
                 options(() -> complete(StatusCodes.OK, HTTP_HEADERS, "OK", Jackson.marshaller()))
         ));
     }
 
     private Route alterHomesHeatingSystem() {
-        PatternsCS.ask(deviceManager, new DeviceManager.AlterHeatingSettings() , timeout);
+        deviceManagers.heatingScheduler().tell(new HeatingScheduler.RunPass(), ActorRef.noSender());
 
         return complete(StatusCodes.OK, HTTP_HEADERS, "Heating system altered", Jackson.marshaller());
     }
 
+    private Route getHeatingStatus() {
+        CompletionStage<HeatingStatus> heatingStatus = PatternsCS
+                .ask(deviceManagers.heatingScheduler(), new HeatingScheduler.GetStatus(), timeout)
+                .thenApply(obj -> (HeatingStatus) obj);
+
+        return onSuccess(() -> heatingStatus,
+                performed -> complete(StatusCodes.OK, HTTP_HEADERS, performed, Jackson.marshaller())
+        );
+    }
+
     private Route getAllDevicesAndHomesRoute() {
-        return pathEnd(() -> get(this::getAllDevicesAndHomes));
+        return pathEnd(() -> get(() -> admitted(admission.reads(), () ->
+                parameterOptional("since", (since) -> since.isPresent()
+                        ? timed(GET_IOT_CHANGES, () -> getChangesSince(since.get()))
+                        : timed(GET_IOT, this::getAllDevicesAndHomes))
+        )));
     }
 
     private Route postTemperatureToDevicesRoute() {
         return pathEnd(() -> route(
-                    post(() -> (
+                    post(() -> admitted(admission.writes(), () -> timed(POST_IOT, () ->
                             entity(
                                     Jackson.unmarshaller(Temperatures.class),
                                     this::postAllTemperatureToDevices
                             )
-                    )),
+                    ))),
                     options(() -> complete(StatusCodes.OK, HTTP_HEADERS, "OK", Jackson.marshaller()))
                 )
         );
     }
 
+    private Route postTemperatureStreamRoute() {
+        return path(segment("stream"), () -> route(
+                post(() -> admitted(admission.writes(), () -> timed(POST_IOT_STREAM, () -> withoutRequestTimeout(() ->
+                        extractMaterializer(materializer ->
+                                extractRequestEntity(entity -> ingestTemperatureStream(entity, materializer))
+                        )
+                )))),
+                get(() -> admitted(admission.reads(), () -> timed(GET_IOT_STREAM, () ->
+                        parameterOptional("cursor", (cursor) ->
+                                parameterOptional(StringUnmarshallers.INTEGER, "limit",
+                                        (limit) -> streamDevicesAndHomes(cursor.orElse(null), limit.orElse(DEFAULT_HOMES_PAGE_SIZE)))
+                        )
+                ))),
+                options(() -> complete(StatusCodes.OK, HTTP_HEADERS, "OK", Jackson.marshaller()))
+        ));
+    }
+
+    private Route streamDevicesAndHomes(String cursor, int limit) {
+        if (limit <= 0 || limit > MAXIMUM_HOMES_PAGE_SIZE) {
+            return complete(StatusCodes.BAD_REQUEST, "Expected 0 < limit <= " + MAXIMUM_HOMES_PAGE_SIZE);
+        }
+
+        return complete(HttpResponse.create()
+                .withStatus(StatusCodes.OK)
+                .addHeaders(HTTP_HEADERS)
+                .withEntity(HttpEntities.createChunked(ContentTypes.APPLICATION_JSON, homesStream.page(cursor, limit))));
+    }
+
+    private Route ingestTemperatureStream(RequestEntity entity, Materializer materializer) {
+        CompletionStage<IngestSummary> summary = temperatureIngest
+                .ingest(entity.withoutSizeLimit().getDataBytes(), materializer);
+
+        return onSuccess(() -> summary,
+                performed -> {
+                    log.info("Streamed {} readings, {} malformed, {} rejected",
+                            performed.getReadings(), performed.getMalformed(), performed.getRejected());
+
+                    return complete(StatusCodes.OK, HTTP_HEADERS, performed, Jackson.marshaller());
+                }
+        );
+    }
+
+    private Route getHomeUpdatesRoute() {
+        return path(segment("updates"), () ->
+                get(() -> timed(GET_IOT_UPDATES, () -> parameter("homes", this::subscribeToHomeUpdates)))
+        );
+    }
+
+    private Route subscribeToHomeUpdates(String homes) {
+        //Homes publish their updates on the event stream of their own node only
+        if (clustered) {
+            return complete(StatusCodes.NOT_IMPLEMENTED, "Updates are not streamed in cluster mode");
+        }
+
+        final Set<String> homeNames = new HashSet<>(Arrays.asList(homes.split(",")));
+
+        log.info("Subscribing to updates for homes: " + homeNames);
+
+        return respondWithHeaders(HTTP_HEADERS, () ->
+                completeOK(homeUpdatesHub.subscribe(homeNames), EventStreamMarshalling.toEventStream())
+        );
+    }
+
     private Route getAllDevicesAndHomes() {
-        CompletionStage<DeviceManager.RespondDevicesInHome> devicesInHome = PatternsCS
-                .ask(deviceManager, new DeviceManager.GetDevicesInHomes(), timeout)
-                .thenApply(obj ->(DeviceManager.RespondDevicesInHome) obj);
+        return versioned("iot", fleetVersion(), version -> allDevicesReads.load("iot@" + version, () -> deviceManagers
+                .getDevicesInHomes(timeout)
+                .thenApply(DeviceManager.RespondDevicesInHome::getHomeToDevices)));
+    }
+
+    /**
+     * Only the homes and devices changed since the token of a previous response, starting with an
+     * empty token. An unknown or outdated token gets everything, marked as full.
+     */
+    private Route getChangesSince(String token) {
+        CompletionStage<FleetChanges> changes = deviceManagers.getChangesSince(token.isEmpty() ? null : token, timeout);
 
-        return onSuccess(() -> devicesInHome,
-                performed -> complete(StatusCodes.OK, HTTP_HEADERS, performed.getHomeToDevices(), Jackson.marshaller())
+        return onSuccess(() -> changes,
+                performed -> complete(StatusCodes.OK, HTTP_HEADERS, performed, Jackson.marshaller())
         );
     }
 
+    /**
+     * Unknown in cluster mode: a home's version on this node misses the changes made while another node hosted it.
+     */
+    private long homeVersion(String homeName) {
+        return clustered ? HomeVersions.UNKNOWN : homeVersions.home(homeName);
+    }
+
+    /**
+     * Unknown in cluster mode: this node only counts the changes of the homes it hosts.
+     */
+    private long fleetVersion() {
+        return clustered ? HomeVersions.UNKNOWN : homeVersions.fleet();
+    }
+
+    /**
+     * Completes with the body rendered from the given version of the data, or 304 Not Modified when the
+     * client sent that version in If-None-Match. The data is only loaded and marshalled when no body
+     * was rendered from this version yet.
+     *
+     * The load is given the version and must only share a load started for the same version: a load
+     * started before a change would otherwise be cached and tagged with the version after it.
+     */
+    private <T> Route versioned(String cacheKey, long version, LongFunction<CompletionStage<T>> load) {
+        if (version == HomeVersions.UNKNOWN) {
+            return onSuccess(() -> load.apply(version), performed -> complete(StatusCodes.OK, HTTP_HEADERS, performed, Jackson.marshaller()));
+        }
+
+        return conditional(EntityTag.create(ETAG_PREFIX + version, false), () -> {
+            final ByteString cached = responseCache.get(cacheKey, version);
+
+            if (cached != null) {
+                return completeJson(cached);
+            }
+
+            return onSuccess(() -> load.apply(version), performed -> {
+                final ByteString rendered;
+                try {
+                    rendered = ByteString.fromArray(objectMapper.writeValueAsBytes(performed));
+                } catch (JsonProcessingException exc) {
+                    return complete(StatusCodes.OK, HTTP_HEADERS, performed, Jackson.marshaller());
+                }
+
+                responseCache.put(cacheKey, version, rendered);
+                return completeJson(rendered);
+            });
+        });
+    }
+
+    private Route completeJson(ByteString body) {
+        return complete(HttpResponse.create()
+                .withStatus(StatusCodes.OK)
+                .addHeaders(HTTP_HEADERS)
+                .withEntity(HttpEntities.create(ContentTypes.APPLICATION_JSON, body)));
+    }
+
     private Route postAllTemperatureToDevices(Temperatures temperatures) {
         String homeName = temperatures.getHomeName();
         Map<String, Double> deviceToTemperature = temperatures.getDeviceToTemperature();
 
-        CompletionStage<DeviceGroup.HomesWithTemperatureChanged> devicesChanged = PatternsCS
-                .ask(deviceManager, new DeviceManager.SetTemperatures(homeName, deviceToTemperature), timeout)
-                .thenApply(obj -> (DeviceGroup.HomesWithTemperatureChanged) obj);
+        CompletionStage<DeviceGroup.HomesWithTemperatureChanged> devicesChanged = deviceManagers
+                .setTemperatures(homeName, deviceToTemperature, timeout);
 
         return onSuccess(() -> devicesChanged,
                 performed -> complete(StatusCodes.OK, HTTP_HEADERS, performed.getHomesWithTemperatureChanged(), Jackson.marshaller())
@@ -128,13 +388,12 @@ class Routes extends AllDirectives {
     }
 
     private Route getNumberOfHomesRoute() {
-        return pathEnd(() -> get(this::getNumberOfHomes));
+        return pathEnd(() -> get(() -> admitted(admission.reads(), () -> timed(GET_HOMES_NUMBER, this::getNumberOfHomes))));
     }
 
     private Route getNumberOfHomes() {
-        CompletionStage<DeviceManager.RespondHomesNumber> numberOfHomes = PatternsCS
-                .ask(deviceManager, new DeviceManager.GetHomesNumber(), timeout)
-                .thenApply(obj ->(DeviceManager.RespondHomesNumber) obj);
+        CompletionStage<DeviceManager.RespondHomesNumber> numberOfHomes = deviceManagers
+                .getHomesNumber(timeout);
 
         return onSuccess(() -> numberOfHomes,
                 performed -> {
@@ -155,24 +414,50 @@ class Routes extends AllDirectives {
 
     private Route createHomeRoute() {
         return pathEnd(() ->
-            post(() ->
+            post(() -> admitted(admission.writes(), () -> timed(POST_HOME, () ->
                     entity(
                             Jackson.unmarshaller(Home.class),
                             this::validateAndCreateHome
                     )
-            )
+            )))
         );
     }
 
     private Route homeRoute() {
         return route(
-                path(segment().slash("exists"), (homeName) -> get(() -> homeExists(homeName))),
+                path(segment().slash("exists"), (homeName) -> get(() -> admitted(admission.reads(), () ->
+                        timed(GET_HOME_EXISTS, () -> homeExists(homeName))
+                ))),
                 path(segment().slash("heating"), (homeName) -> route(
-                        get(() -> getHeatingSettingsForHome(homeName)),
-                        put(() -> alterHeatingSystem(homeName)),
+                        get(() -> admitted(admission.reads(), () -> timed(GET_HOME_HEATING, () -> getHeatingSettingsForHome(homeName)))),
+                        put(() -> admitted(admission.writes(), () -> timed(PUT_HOME_HEATING, () -> alterHeatingSystem(homeName)))),
                         options(() -> complete(StatusCodes.OK, HTTP_HEADERS, "OK", Jackson.marshaller()))
                 )),
-                path(segment().slash("temperature"), (homeName) -> get(() -> getHomeTemperature(homeName))),
+                path(segment().slash("temperature"), (homeName) -> get(() -> admitted(admission.reads(), () -> timed(GET_HOME_TEMPERATURE, () ->
+                        parameterOptional(StringUnmarshallers.LONG, "maxStaleness",
+                                (maxStaleness) -> getHomeTemperature(homeName, maxStaleness.orElse(null)))
+                )))),
+                path(segment().slash("stats"), (homeName) -> get(() -> admitted(admission.reads(), () ->
+                        timed(GET_HOME_STATS, () -> getHomeStats(homeName))
+                ))),
+                path(segment().slash("series"), (homeName) -> get(() -> admitted(admission.reads(), () -> timed(GET_HOME_SERIES, () ->
+                        parameterOptional(StringUnmarshallers.LONG, "from", (from) ->
+                                parameterOptional(StringUnmarshallers.LONG, "to", (to) ->
+                                        parameterOptional(StringUnmarshallers.LONG, "step", (step) ->
+                                                scanHomeSeries(homeName, from, to, step)
+                                        )
+                                )
+                        )
+                )))),
+                path(segment().slash(segment()).slash("history"), (homeName, deviceName) -> get(() -> admitted(admission.reads(), () -> timed(GET_DEVICE_HISTORY, () ->
+                        parameterOptional(StringUnmarshallers.LONG, "from", (from) ->
+                                parameterOptional(StringUnmarshallers.LONG, "to", (to) ->
+                                        parameterOptional(StringUnmarshallers.LONG, "step", (step) ->
+                                                getDeviceHistory(homeName, deviceName, from, to, step)
+                                        )
+                                )
+                        )
+                )))),
                 path(segment().slash(segment()), this::addTemperatureDeviceToHome)
         );
     }
@@ -187,44 +472,120 @@ class Routes extends AllDirectives {
     private Route changeHeatingSystemSetting(BlockHeating blockHeating, String homeName) {
         boolean block = blockHeating.isTurnOff();
 
-        PatternsCS.ask(deviceManager, new DeviceManager.ChangeHeatingSettings(homeName, block) , timeout);
+        PatternsCS.ask(deviceManagers.toHome(homeName), new DeviceManager.ChangeHeatingSettings(homeName, block) , timeout);
 
         return complete(StatusCodes.OK, HTTP_HEADERS, "Heating system changed", Jackson.marshaller());
     }
 
     private Route homeExists(String homeName) {
-        CompletionStage<Boolean> homeExists = PatternsCS
-                .ask(deviceManager, new DeviceManager.IfHomeExists(homeName), timeout)
-                .thenApply(obj ->(Boolean) obj);
+        CompletionStage<Boolean> homeExists = deviceManagers.homeExists(homeName, timeout);
 
         return onSuccess(() -> homeExists,
                 performed -> complete(StatusCodes.OK, HTTP_HEADERS, performed, Jackson.marshaller()));
     }
 
     private Route getHeatingSettingsForHome(String homeName) {
-        CompletionStage<HeatingSetting> heatingSettings = PatternsCS
-                .ask(deviceManager, new DeviceManager.GetHeatingSettings(homeName), timeout)
-                .thenApply(obj ->(HeatingSetting) obj);
-
-        return onSuccess(() -> heatingSettings,
-                performed -> complete(StatusCodes.OK, HTTP_HEADERS, performed, Jackson.marshaller()));
+        return versioned("heating/" + homeName, homeVersion(homeName), version -> heatingReads.load(homeName + "@" + version, () -> PatternsCS
+                .ask(deviceManagers.toHome(homeName), new DeviceManager.GetHeatingSettings(homeName), timeout)
+                .thenApply(obj ->(HeatingSetting) obj)));
     }
 
     private Route addTemperatureDeviceToHome(String home, String deviceName) {
-        return post(() -> {
+        return post(() -> admitted(admission.writes(), () -> timed(POST_DEVICE, () -> {
             CompletionStage<DeviceManager.DeviceRegistered> newGroupDevice = PatternsCS
-                    .ask(deviceManager, new DeviceManager.RequestTrackDevice(home, deviceName), timeout)
+                    .ask(deviceManagers.toHome(home), new DeviceManager.RequestTrackDevice(home, deviceName), timeout)
                     .thenApply(obj ->(DeviceManager.DeviceRegistered) obj);
 
             return onSuccess(() -> newGroupDevice, performed -> complete(StatusCodes.OK, "YAY"))
                     .orElse(complete(StatusCodes.NOT_FOUND, "Not Found"));
-        });
+        })));
+    }
+
+    private Route getDeviceHistory(String homeName,
+                                   String deviceName,
+                                   Optional<Long> from,
+                                   Optional<Long> to,
+                                   Optional<Long> step) {
+        final long historyTo = to.orElse(System.currentTimeMillis());
+        final long historyFrom = from.orElse(historyTo - DEFAULT_HISTORY_RANGE_MILLIS);
+        final long historyStep = step.orElse(DEFAULT_HISTORY_STEP_MILLIS);
+
+        if (!validBuckets(historyFrom, historyTo, historyStep)) {
+            return complete(StatusCodes.BAD_REQUEST, "Expected from < to, 0 < step <= to - from and at most "
+                    + MAXIMUM_HISTORY_BUCKETS + " buckets");
+        }
+
+        CompletionStage<TemperatureDevice.RespondHistory> history = PatternsCS
+                .ask(deviceManagers.toHome(homeName),
+                        new DeviceManager.GetDeviceHistory(homeName, deviceName,
+                                new TemperatureDevice.ReadHistory(historyFrom, historyTo, historyStep)),
+                        timeout)
+                .thenApply(obj -> (TemperatureDevice.RespondHistory) obj);
+
+        return onSuccess(() -> history,
+                performed -> performed.getBuckets() == null
+                        ? complete(StatusCodes.NOT_FOUND, "Not Found")
+                        : complete(StatusCodes.OK, HTTP_HEADERS, performed, Jackson.marshaller())
+        );
+    }
+
+    //Checked without overflowing, whatever the from, to and step of the request
+    private static boolean validBuckets(long from, long to, long step) {
+        final long range = to - from;
+
+        return from < to && range > 0 && step > 0 && step <= range
+                && Math.floorDiv(range - 1, step) + 1 <= MAXIMUM_HISTORY_BUCKETS;
+    }
+
+    private Route scanHomeSeries(String homeName, Optional<Long> from, Optional<Long> to, Optional<Long> step) {
+        final long seriesTo = to.orElse(System.currentTimeMillis());
+        final long seriesFrom = from.orElse(seriesTo - DEFAULT_SERIES_RANGE_MILLIS);
+        final long seriesStep = step.orElse(DEFAULT_SERIES_STEP_MILLIS);
+
+        if (!validBuckets(seriesFrom, seriesTo, seriesStep)) {
+            return complete(StatusCodes.BAD_REQUEST, "Expected from < to, 0 < step <= to - from and at most "
+                    + MAXIMUM_HISTORY_BUCKETS + " buckets");
+        }
+
+        CompletionStage<HomeSeries> series = PatternsCS
+                .ask(deviceManagers.toHome(homeName),
+                        new DeviceManager.ScanHomeSeries(homeName,
+                                new TemperatureDevice.ScanSeries(seriesFrom, seriesTo, seriesStep)),
+                        timeout)
+                .thenApply(obj -> (HomeSeries) obj);
+
+        return onSuccess(() -> series,
+                performed -> performed.getDevices() == null
+                        ? complete(StatusCodes.NOT_FOUND, "Not Found")
+                        : complete(StatusCodes.OK, HTTP_HEADERS, performed, Jackson.marshaller())
+        );
     }
 
-    private Route getHomeTemperature(String homeName) {
-        CompletionStage<DeviceGroup.RespondAllTemperatures> allTemperatures = PatternsCS
-                .ask(deviceManager, new DeviceManager.GetHomeTemperature(homeName), timeout)
-                .thenApply(obj ->(DeviceGroup.RespondAllTemperatures) obj);
+    private Route getHomeStats(String homeName) {
+        CompletionStage<HomeStats> homeStats = statsReads.load(homeName, () -> PatternsCS
+                .ask(deviceManagers.toHome(homeName), new DeviceManager.GetHomeStats(homeName), timeout)
+                .thenApply(obj -> (HomeStats) obj));
+
+        return onSuccess(() -> homeStats,
+                performed -> performed.getHomeName() == null
+                        ? complete(StatusCodes.NOT_FOUND, "Not Found")
+                        : complete(StatusCodes.OK, HTTP_HEADERS, performed, Jackson.marshaller())
+        );
+    }
+
+    private Route getHomeTemperature(String homeName, Long maxStalenessMillis) {
+        //A maximum staleness asks for fresh readings, it is never answered from the cache
+        if (maxStalenessMillis == null) {
+            return versioned("temperature/" + homeName, homeVersion(homeName), version -> temperatureReads.load(homeName + "@" + version, () -> PatternsCS
+                    .ask(deviceManagers.toHome(homeName), new DeviceManager.GetHomeTemperature(homeName), timeout)
+                    .thenApply(obj -> (DeviceGroup.RespondAllTemperatures) obj)));
+        }
+
+        //Requests with the same staleness share one query to the devices
+        CompletionStage<DeviceGroup.RespondAllTemperatures> allTemperatures = temperatureReads
+                .load(homeName + "?maxStaleness=" + maxStalenessMillis, () -> PatternsCS
+                        .ask(deviceManagers.toHome(homeName), new DeviceManager.GetHomeTemperature(homeName, maxStalenessMillis), timeout)
+                        .thenApply(obj ->(DeviceGroup.RespondAllTemperatures) obj));
 
         return onSuccess(() -> allTemperatures,
                 performed -> {
@@ -252,8 +613,8 @@ class Routes extends AllDirectives {
         final List<String> temperatureDevices = home.getTemperatureDevices();
 
         CompletionStage<DeviceManager.HomeCreation> newHome = PatternsCS
-                .ask(deviceManager,
-                        new DeviceManager.CreateHome(homeName, temperatureDevices),
+                .ask(deviceManagers.forHome(homeName),
+                        new DeviceManager.CreateHome(homeName, temperatureDevices, home.getStorage()),
                         timeout)
                 .thenApply(obj -> (DeviceManager.HomeCreation) obj);
 
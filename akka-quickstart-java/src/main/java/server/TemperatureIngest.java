@@ -0,0 +1,133 @@
+package server;
+
+import akka.stream.Materializer;
+import akka.stream.javadsl.Framing;
+import akka.stream.javadsl.FramingTruncation;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import akka.util.Timeout;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import manager.DeviceManagerRouter;
+import model.DeviceReading;
+import model.IngestSummary;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams a newline delimited body of {@link DeviceReading} records into the device manager.
+ * Readings are grouped in small batches and per home, each reading written on its own as a POST
+ * would, with a bounded number of asks in flight, so a slow home slows down the gateway's upload instead of filling mailboxes.
+ */
+class TemperatureIngest {
+
+    private static final ByteString NEW_LINE = ByteString.fromString("\n");
+    private static final int MAXIMUM_LINE_LENGTH = 1024;
+    private static final int BATCH_SIZE = 1000;
+    private static final FiniteDuration BATCH_WINDOW = new FiniteDuration(50, TimeUnit.MILLISECONDS);
+    private static final int BATCHES_IN_FLIGHT = 4;
+
+    private final ObjectReader readingReader = new ObjectMapper().readerFor(DeviceReading.class);
+
+    private final DeviceManagerRouter deviceManagers;
+    private final Timeout timeout;
+
+    TemperatureIngest(DeviceManagerRouter deviceManagers, Timeout timeout) {
+        this.deviceManagers = deviceManagers;
+        this.timeout = timeout;
+    }
+
+    CompletionStage<IngestSummary> ingest(Source<ByteString, ?> body, Materializer materializer) {
+        return body
+                .via(Framing.delimiter(NEW_LINE, MAXIMUM_LINE_LENGTH, FramingTruncation.ALLOW))
+                .map(ByteString::utf8String)
+                .filter(line -> !line.trim().isEmpty())
+                .map(this::parse)
+                .groupedWithin(BATCH_SIZE, BATCH_WINDOW)
+                .mapAsync(BATCHES_IN_FLIGHT, this::writeBatch)
+                .runFold(new IngestSummary(), IngestSummary::merge, materializer);
+    }
+
+    private Optional<DeviceReading> parse(String line) {
+        try {
+            return Optional.of(readingReader.readValue(line));
+        } catch (IOException exc) {
+            return Optional.empty();
+        }
+    }
+
+    private CompletionStage<IngestSummary> writeBatch(List<Optional<DeviceReading>> batch) {
+        //Per home, the k-th write holds the k-th reading of each device in the batch
+        final Map<String, List<Map<String, Double>>> homeToWrites = new HashMap<>();
+        final Map<String, Map<String, Integer>> homeToDeviceReadings = new HashMap<>();
+        long malformed = 0;
+
+        for (Optional<DeviceReading> parsed : batch) {
+            if (!parsed.isPresent()) {
+                malformed++;
+                continue;
+            }
+
+            DeviceReading reading = parsed.get();
+
+            //Not summed with an earlier reading of the same device: like separate POSTs, each reading
+            //gets the heating offset and its own point in the history and the reading log
+            final int write = homeToDeviceReadings
+                    .computeIfAbsent(reading.getHome(), home -> new HashMap<>())
+                    .merge(reading.getDevice(), 1, Integer::sum) - 1;
+            final List<Map<String, Double>> writes =
+                    homeToWrites.computeIfAbsent(reading.getHome(), home -> new ArrayList<>());
+
+            if (writes.size() == write) {
+                writes.add(new HashMap<>());
+            }
+
+            writes.get(write).put(reading.getDevice(), reading.getValue());
+        }
+
+        CompletionStage<IngestSummary> result =
+                CompletableFuture.completedFuture(new IngestSummary(0, malformed, 0, 0));
+
+        for (Map.Entry<String, List<Map<String, Double>>> home : homeToWrites.entrySet()) {
+            result = result.thenCombine(writeHome(home.getKey(), home.getValue()), IngestSummary::merge);
+        }
+
+        return result;
+    }
+
+    /**
+     * Sends the writes of a home one after the other, so its readings are applied in the order of the body.
+     */
+    private CompletionStage<IngestSummary> writeHome(String homeName, List<Map<String, Double>> writes) {
+        final Set<String> devicesUpdated = new HashSet<>();
+        CompletionStage<IngestSummary> result = CompletableFuture.completedFuture(new IngestSummary());
+
+        for (Map<String, Double> deviceToTemperature : writes) {
+            final int readings = deviceToTemperature.size();
+
+            result = result.thenCompose(summary -> deviceManagers
+                    .setTemperatures(homeName, deviceToTemperature, timeout)
+                    .thenApply(changed -> {
+                        final int updatedBefore = devicesUpdated.size();
+                        devicesUpdated.addAll(changed.getHomesWithTemperatureChanged());
+
+                        return summary.merge(new IngestSummary(readings, 0, 0,
+                                devicesUpdated.size() - updatedBefore));
+                    })
+                    .exceptionally(exc -> summary.merge(new IngestSummary(readings, 0, readings, 0))));
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,171 @@
+package cluster;
+
+import akka.actor.ActorSystem;
+import akka.actor.CoordinatedShutdown;
+import akka.cluster.Cluster;
+import akka.cluster.MemberStatus;
+import akka.pattern.PatternsCS;
+import akka.testkit.javadsl.TestKit;
+import akka.util.Timeout;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import device.TemperatureDevice;
+import group.DeviceGroup;
+import heating.HeatingScheduler;
+import manager.DeviceManager;
+import manager.DeviceManagerRouter;
+import model.HeatingStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import persistence.EventJournal;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Two nodes of a cluster in one JVM, each running the sharded managers and a router as IotMain does.
+ */
+public class IotClusterTest {
+
+    private static final Timeout TIMEOUT = Timeout.apply(10, TimeUnit.SECONDS);
+    private static final FiniteDuration CLUSTER_TIMEOUT = new FiniteDuration(30, TimeUnit.SECONDS);
+    private static final int HOMES = 20;
+
+    private ActorSystem first;
+    private ActorSystem second;
+    private DeviceManagerRouter firstRouter;
+    private DeviceManagerRouter secondRouter;
+
+    @Before
+    public void startCluster() {
+        first = node();
+        second = node();
+
+        Cluster.get(first).join(Cluster.get(first).selfAddress());
+        Cluster.get(second).join(Cluster.get(first).selfAddress());
+        awaitMembersUp(first, 2);
+        awaitMembersUp(second, 2);
+
+        firstRouter = IotCluster.start(first, EventJournal.disabled());
+        secondRouter = IotCluster.start(second, EventJournal.disabled());
+    }
+
+    @After
+    public void stopCluster() {
+        TestKit.shutdownActorSystem(second);
+        TestKit.shutdownActorSystem(first);
+    }
+
+    @Test
+    public void reachesEveryHomeFromBothNodes() throws Exception {
+        createHomes(firstRouter);
+
+        for (int home = 0; home < HOMES; home++) {
+            final String homeName = "home-" + home;
+
+            assertTrue(secondRouter.homeExists(homeName, TIMEOUT).toCompletableFuture().get());
+            secondRouter.setTemperatures(homeName, Collections.singletonMap("device", (double) home), TIMEOUT)
+                    .toCompletableFuture().get();
+
+            awaitTemperature(firstRouter, homeName, TemperatureDevice.INITIAL_TEMPERATURE + home);
+        }
+
+        assertEquals(HOMES, (int) firstRouter.getHomesNumber(TIMEOUT).toCompletableFuture().get().homesNumber);
+        assertEquals(HOMES, (int) secondRouter.getHomesNumber(TIMEOUT).toCompletableFuture().get().homesNumber);
+    }
+
+    @Test
+    public void reportsTheHeatingOfTheHomesOnEveryNode() throws Exception {
+        createHomes(firstRouter);
+
+        //Homes are scheduled by the node hosting them once they started
+        new TestKit(second).awaitAssert(() -> {
+            try {
+                final HeatingStatus status = (HeatingStatus) PatternsCS.ask(secondRouter.heatingScheduler(),
+                        new HeatingScheduler.GetStatus(), TIMEOUT).toCompletableFuture().get();
+
+                assertEquals(HOMES, status.getHomes());
+                return status;
+            } catch (Exception exc) {
+                throw new AssertionError(exc);
+            }
+        });
+    }
+
+    @Test
+    public void handsTheHomesOverWhenTheirNodeLeaves() throws Exception {
+        createHomes(secondRouter);
+        for (int home = 0; home < HOMES; home++) {
+            secondRouter.setTemperatures("home-" + home, Collections.singletonMap("device", (double) home), TIMEOUT)
+                    .toCompletableFuture().get();
+            awaitTemperature(secondRouter, "home-" + home, TemperatureDevice.INITIAL_TEMPERATURE + home);
+        }
+
+        CoordinatedShutdown.get(second).runAll().toCompletableFuture().get(30, TimeUnit.SECONDS);
+        awaitMembersUp(first, 1);
+
+        for (int home = 0; home < HOMES; home++) {
+            assertEquals(TemperatureDevice.INITIAL_TEMPERATURE + home,
+                    temperatures(firstRouter, "home-" + home).get("device"), 0.0);
+        }
+    }
+
+    private static ActorSystem node() {
+        final Config config = ConfigFactory.parseString(
+                "akka.remote.netty.tcp.port = 0\n"
+                        + "akka.cluster.seed-nodes = []\n"
+                        + "akka.cluster.jmx.multi-mbeans-in-same-jvm = on\n"
+                        + "akka.loglevel = WARNING")
+                .withFallback(ConfigFactory.load("cluster"));
+
+        return ActorSystem.create("iot-system", config);
+    }
+
+    private static void awaitMembersUp(ActorSystem system, int members) {
+        new TestKit(system).awaitAssert(CLUSTER_TIMEOUT, () -> {
+            final long up = StreamSupport.stream(Cluster.get(system).state().getMembers().spliterator(), false)
+                    .filter(member -> member.status().equals(MemberStatus.up()))
+                    .count();
+
+            assertEquals(members, up);
+            return up;
+        });
+    }
+
+    private static void createHomes(DeviceManagerRouter router) throws Exception {
+        for (int home = 0; home < HOMES; home++) {
+            final String homeName = "home-" + home;
+            final List<String> devices = new ArrayList<>(Collections.singletonList("device"));
+
+            final Object created = PatternsCS.ask(router.forHome(homeName),
+                    new DeviceManager.CreateHome(homeName, devices), TIMEOUT).toCompletableFuture().get();
+            assertTrue(created instanceof DeviceManager.HomeCreated);
+        }
+    }
+
+    //Writes add to the reading, which the home's last readings get from its device right after the write
+    private void awaitTemperature(DeviceManagerRouter router, String homeName, double temperature) {
+        new TestKit(first).awaitAssert(() -> {
+            try {
+                assertEquals(temperature, temperatures(router, homeName).get("device"), 0.0);
+                return temperature;
+            } catch (Exception exc) {
+                throw new AssertionError(exc);
+            }
+        });
+    }
+
+    private static Map<String, Double> temperatures(DeviceManagerRouter router, String homeName) throws Exception {
+        return ((DeviceGroup.RespondAllTemperatures) PatternsCS.ask(router.forHome(homeName),
+                new DeviceManager.GetHomeTemperature(homeName), TIMEOUT).toCompletableFuture().get()).getTemperatures();
+    }
+}
@@ -0,0 +1,100 @@
+package device.temperature;
+
+import model.HistoryBucket;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompressedSeriesTest {
+
+    private static final CompressedSeries.Settings SETTINGS =
+            new CompressedSeries.Settings(TimeUnit.HOURS.toMillis(2), TimeUnit.DAYS.toMillis(90));
+    private static final long START = 1_500_000_000_000L;
+    private static final long STEP = TimeUnit.SECONDS.toMillis(30);
+
+    @Test
+    public void keepsEveryReadingThroughPacking() {
+        CompressedSeries series = recorded(1000);
+
+        CompressedSeries unpacked = CompressedSeries.fromBytes(series.toBytes(), SETTINGS);
+
+        assertEquals(series.count(), unpacked.count());
+        assertEquals(toString(points(series, Long.MIN_VALUE, Long.MAX_VALUE)),
+                toString(points(unpacked, Long.MIN_VALUE, Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void recordsAfterTheReadingsItWasUnpackedWith() {
+        CompressedSeries unpacked = CompressedSeries.fromBytes(recorded(10).toBytes(), SETTINGS);
+
+        unpacked.record(START + 10 * STEP, 30.0);
+
+        assertEquals(11, unpacked.count());
+        assertEquals(30.0, points(unpacked, START + 10 * STEP, Long.MAX_VALUE).get(0)[1], 0.0);
+    }
+
+    @Test
+    public void scansAtLeastTheLatestReadingsInOrder() {
+        //Several blocks, the latest readings span the open one and the last sealed one
+        CompressedSeries series = recorded(1000);
+        List<double[]> latest = new ArrayList<>();
+
+        series.scanLatest(300, (timestamp, value) -> latest.add(new double[]{timestamp, value}));
+
+        List<double[]> all = points(series, Long.MIN_VALUE, Long.MAX_VALUE);
+        List<double[]> expected = all.subList(all.size() - latest.size(), all.size());
+        assertTrue(latest.size() >= 300 && latest.size() < all.size());
+        assertEquals(toString(expected), toString(latest));
+    }
+
+    @Test
+    public void rebuildsTheHistoryFromTheLatestReadings() {
+        ReadingHistory history = new ReadingHistory(100);
+
+        CompressedSeries.fromBytes(recorded(1000).toBytes(), SETTINGS).scanLatest(100, history::record);
+
+        assertEquals(100, history.size());
+        assertEquals(999 % 7 + 20.0, history.range(START + 999 * STEP, START + 1000 * STEP, STEP).get(0).getMax(), 0.0);
+    }
+
+    @Test
+    public void putsEveryReadingInOneBucketForAHugeStep() {
+        CompressedSeries series = recorded(1000);
+
+        List<HistoryBucket> buckets = series.range(START - STEP, START + 1000 * STEP, Long.MAX_VALUE);
+
+        assertEquals(1, buckets.size());
+        assertEquals(1000, buckets.get(0).getCount());
+    }
+
+    private static CompressedSeries recorded(int readings) {
+        CompressedSeries series = new CompressedSeries(SETTINGS);
+
+        for (int reading = 0; reading < readings; reading++) {
+            series.record(START + reading * STEP, reading % 7 + 20.0);
+        }
+
+        return series;
+    }
+
+    private static List<double[]> points(CompressedSeries series, long from, long to) {
+        List<double[]> points = new ArrayList<>();
+
+        series.scan(from, to, (timestamp, value) -> points.add(new double[]{timestamp, value}));
+
+        return points;
+    }
+
+    private static String toString(List<double[]> points) {
+        StringBuilder text = new StringBuilder();
+
+        points.forEach(point -> text.append((long) point[0]).append('=').append(point[1]).append(' '));
+
+        return text.toString();
+    }
+}
@@ -0,0 +1,44 @@
+package device.temperature;
+
+import model.HistoryBucket;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReadingHistoryTest {
+
+    private static final long NOW = 1_500_000_000_000L;
+
+    @Test
+    public void downsamplesTheReadingsInTheRange() {
+        ReadingHistory history = recorded(10);
+
+        List<HistoryBucket> buckets = history.range(NOW, NOW + 10_000, 5_000);
+
+        assertEquals(2, buckets.size());
+        assertEquals(5, buckets.get(0).getCount());
+        assertEquals(NOW + 5_000, buckets.get(1).getFrom());
+    }
+
+    @Test
+    public void putsEveryReadingInOneBucketForAHugeStep() {
+        ReadingHistory history = recorded(10);
+
+        List<HistoryBucket> buckets = history.range(NOW - 3_600_000, NOW + 10_000, Long.MAX_VALUE);
+
+        assertEquals(1, buckets.size());
+        assertEquals(10, buckets.get(0).getCount());
+    }
+
+    private static ReadingHistory recorded(int readings) {
+        ReadingHistory history = new ReadingHistory(readings);
+
+        for (int reading = 0; reading < readings; reading++) {
+            history.record(NOW + reading * 1_000, 20.0 + reading);
+        }
+
+        return history;
+    }
+}
@@ -0,0 +1,90 @@
+package group;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import device.TemperatureDevice;
+import group.enums.HeatingSettings;
+import manager.DeviceManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import persistence.EventJournal;
+import persistence.HomeState;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class DeviceGroupTest {
+
+    private ActorSystem system;
+
+    @Before
+    public void startSystem() {
+        system = ActorSystem.create("device-group-test");
+    }
+
+    @After
+    public void stopSystem() {
+        TestKit.shutdownActorSystem(system);
+    }
+
+    @Test
+    public void forwardsTheRequestsArrivingWhilePassivatedToItsManager() {
+        final TestKit manager = new TestKit(system);
+        final TestKit route = new TestKit(system);
+        final ActorRef home = manager.childActorOf(DeviceGroup.props("home", EventJournal.disabled(), null));
+        manager.watch(home);
+
+        home.tell(new DeviceGroup.Passivate(), manager.getRef());
+        manager.expectMsgClass(DeviceManager.HomePassivated.class);
+
+        //Sent by a route which found the home running just before the manager asked it to passivate
+        home.tell(new DeviceGroup.AddTemperatures(Collections.singletonMap("device", 1.0)), route.getRef());
+        home.tell(new DeviceManager.GetHomeTemperature("home"), route.getRef());
+
+        final DeviceManager.SetTemperatures write = manager.expectMsgClass(DeviceManager.SetTemperatures.class);
+        assertEquals("home", write.getHomeName());
+        assertEquals(route.getRef(), manager.getLastSender());
+        manager.expectMsgClass(DeviceManager.GetHomeTemperature.class);
+        assertEquals(route.getRef(), manager.getLastSender());
+
+        manager.expectTerminated(home);
+    }
+
+    @Test
+    public void evaluatesItsHeatingAsItIsPassivated() {
+        final TestKit manager = new TestKit(system);
+        final ActorRef home = manager.childActorOf(DeviceGroup.props("home", EventJournal.disabled(), null));
+
+        home.tell(new DeviceManager.RequestTrackDevice("home", "device"), manager.getRef());
+        manager.expectMsgClass(DeviceManager.DeviceRegistered.class);
+        //Down to 10 degrees, which the periodic passes never evaluated
+        home.tell(new DeviceGroup.AddTemperatures(Collections.singletonMap("device", -15.0)), manager.getRef());
+        manager.expectMsgClass(DeviceGroup.HomesWithTemperatureChanged.class);
+
+        home.tell(new DeviceGroup.Passivate(), manager.getRef());
+        final DeviceManager.HomePassivated passivated = manager.expectMsgClass(DeviceManager.HomePassivated.class);
+
+        assertEquals(HeatingSettings.VERY_HIGH, HomeState.fromBytes(passivated.getState()).getHeatingSettings());
+    }
+
+    @Test
+    public void answersFromItsLastReadingsWithoutAChangeInFlight() {
+        final TestKit manager = new TestKit(system);
+        final ActorRef home = manager.childActorOf(DeviceGroup.props("home", EventJournal.disabled(), null));
+
+        home.tell(new DeviceManager.RequestTrackDevice("home", "device"), manager.getRef());
+        manager.expectMsgClass(DeviceManager.DeviceRegistered.class);
+        home.tell(new DeviceGroup.AddTemperatures(Collections.singletonMap("device", 1.0)), manager.getRef());
+        manager.expectMsgClass(DeviceGroup.HomesWithTemperatureChanged.class);
+
+        //Stale at once, yet the device already told the home of its change
+        home.tell(new DeviceManager.GetHomeTemperature("home", 0L), manager.getRef());
+
+        final DeviceGroup.RespondAllTemperatures temperatures = manager.expectMsgClass(DeviceGroup.RespondAllTemperatures.class);
+        assertEquals(home, manager.getLastSender());
+        assertEquals(TemperatureDevice.INITIAL_TEMPERATURE + 1.0, temperatures.getTemperatures().get("device"), 0.0);
+    }
+}
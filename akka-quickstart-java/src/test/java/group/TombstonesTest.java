@@ -0,0 +1,55 @@
+package group;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TombstonesTest {
+
+    @Test
+    public void reportsTheRemovalsAfterATokenWithinTheRetention() {
+        Tombstones tombstones = new Tombstones(TimeUnit.HOURS.toMillis(1));
+        tombstones.add("first", 3);
+        tombstones.add("second", 7);
+
+        tombstones.expire();
+
+        assertTrue(tombstones.covers(0));
+        assertEquals(Arrays.asList("first", "second"), tombstones.removedAfter(2));
+        assertEquals(Collections.singletonList("second"), tombstones.removedAfter(3));
+    }
+
+    @Test
+    public void startsOverTheTokensOlderThanAnExpiredRemoval() {
+        Tombstones tombstones = new Tombstones(0);
+        List<String> expired = new ArrayList<>();
+        tombstones.add("first", 3);
+        tombstones.add("second", 7);
+
+        tombstones.expire(expired::add);
+
+        assertEquals(Arrays.asList("first", "second"), expired);
+        assertFalse(tombstones.covers(6));
+        assertTrue(tombstones.covers(7));
+        assertTrue(tombstones.removedAfter(0).isEmpty());
+    }
+
+    @Test
+    public void forgetsARemovalWhenTheNameIsAddedAgain() {
+        Tombstones tombstones = new Tombstones(0);
+        tombstones.add("device", 3);
+        tombstones.remove("device");
+
+        tombstones.expire();
+
+        assertTrue(tombstones.covers(0));
+    }
+}
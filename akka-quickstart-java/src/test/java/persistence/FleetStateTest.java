@@ -0,0 +1,159 @@
+package persistence;
+
+import device.temperature.CompressedSeries;
+import group.enums.DeviceStorage;
+import group.enums.HeatingSettings;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FleetStateTest {
+
+    private static final CompressedSeries.Settings SERIES =
+            new CompressedSeries.Settings(TimeUnit.HOURS.toMillis(2), TimeUnit.DAYS.toMillis(90));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = folder.newFolder("iot-data");
+    }
+
+    @Test
+    public void recoversEveryEventOfTheJournal() throws IOException {
+        writeJournal(0,
+                bytes(new JournalEvent.HomeCreated("home", DeviceStorage.COLUMNAR)),
+                bytes(new JournalEvent.DeviceTracked("home", "device")),
+                bytes(new JournalEvent.ReadingRecorded("home", "device", 21.5)),
+                bytes(new JournalEvent.HeatingChanged("home", HeatingSettings.OFF, true)));
+
+        HomeState home = homes(FleetState.recover(directory)).get("home");
+
+        assertEquals(DeviceStorage.COLUMNAR, home.getStorage());
+        assertEquals(21.5, home.getReadings().get("device"), 0.0);
+        assertEquals(HeatingSettings.OFF, home.getHeatingSettings());
+        assertTrue(home.isBlockHeating());
+    }
+
+    @Test
+    public void endsTheJournalAtARecordTornByACrash() throws IOException {
+        final byte[] whole = concat(
+                bytes(new JournalEvent.HomeCreated("home", DeviceStorage.ACTORS)),
+                bytes(new JournalEvent.ReadingRecorded("home", "device", 19.0)));
+        final byte[] reading = bytes(new JournalEvent.ReadingRecorded("home", "device", 23.0));
+        final File journal = writeJournal(0, whole, Arrays.copyOf(reading, reading.length / 2));
+
+        FleetState recovered = FleetState.recover(directory);
+
+        assertEquals(19.0, homes(recovered).get("home").getReadings().get("device"), 0.0);
+        assertEquals(whole.length, journal.length());
+        assertEquals(1, recovered.getJournalIndex());
+    }
+
+    @Test
+    public void endsTheJournalAtAnUnknownRecordType() throws IOException {
+        final byte[] whole = bytes(new JournalEvent.DeviceTracked("home", "device"));
+        final File journal = writeJournal(0, whole, new byte[]{(byte) 0x7F, 0, 3});
+
+        FleetState recovered = FleetState.recover(directory);
+
+        assertTrue(homes(recovered).get("home").getReadings().containsKey("device"));
+        assertEquals(whole.length, journal.length());
+    }
+
+    @Test
+    public void keepsReplayingTheJournalsWrittenAfterATornOne() throws IOException {
+        final byte[] reading = bytes(new JournalEvent.ReadingRecorded("home", "device", 23.0));
+        writeJournal(0, bytes(new JournalEvent.HomeCreated("home", DeviceStorage.ACTORS)),
+                Arrays.copyOf(reading, reading.length - 1));
+        FleetState.recover(directory);
+
+        //The server started again after the crash and wrote to the next journal
+        writeJournal(1, bytes(new JournalEvent.ReadingRecorded("home", "device", 24.0)));
+        FleetState recovered = FleetState.recover(directory);
+
+        assertEquals(24.0, homes(recovered).get("home").getReadings().get("device"), 0.0);
+        assertEquals(2, recovered.getJournalIndex());
+    }
+
+    @Test
+    public void restoresTheReadingsFromTheReadingLog() throws IOException {
+        final long start = 1_500_000_000_000L;
+        final File readings = new File(directory, "readings");
+        writeJournal(0,
+                bytes(new JournalEvent.HomeCreated("home", DeviceStorage.ACTORS)),
+                bytes(new JournalEvent.DeviceTracked("home", "device")));
+        FleetState.recover(directory).writeSnapshot(directory, 1);
+
+        ReadingLog readingLog = ReadingLog.open(readings, 4, 1 << 20,
+                TimeUnit.HOURS.toMillis(1), TimeUnit.DAYS.toMillis(1), 1L << 30);
+        readingLog.append("home", "device", start, 20.0);
+        readingLog.append("other", "device", start, 30.0);
+        readingLog.append("home", "device", start + 30_000, 21.0);
+        readingLog.append("home", "device", start + 60_000, 22.0);
+        readingLog.close();
+
+        FleetState recovered = FleetState.recover(directory);
+        recovered.restore(ReadingLogReader.recover(readings, SERIES));
+        HomeState home = homes(recovered).get("home");
+        List<Double> values = new ArrayList<>();
+        CompressedSeries.fromBytes(home.getSeries().get("device"), SERIES)
+                .scan(Long.MIN_VALUE, Long.MAX_VALUE, (timestamp, value) -> values.add(value));
+
+        assertEquals(Arrays.asList(20.0, 21.0, 22.0), values);
+        assertEquals(22.0, home.getReadings().get("device"), 0.0);
+        assertTrue(homes(recovered).get("home").getSeries().isEmpty());
+    }
+
+    private File writeJournal(int index, byte[]... records) throws IOException {
+        final File journal = FleetState.journalFile(directory, index);
+
+        try (FileOutputStream out = new FileOutputStream(journal)) {
+            for (byte[] record : records) {
+                out.write(record);
+            }
+        }
+
+        return journal;
+    }
+
+    private static byte[] bytes(JournalEvent event) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        event.write(new DataOutputStream(bytes));
+
+        return bytes.toByteArray();
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] both = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+
+        return both;
+    }
+
+    private static Map<String, HomeState> homes(FleetState state) {
+        Map<String, HomeState> homes = new HashMap<>();
+        state.getHomes().forEach(home -> homes.put(home.getHomeName(), home));
+
+        return homes;
+    }
+}
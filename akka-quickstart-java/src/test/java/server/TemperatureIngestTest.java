@@ -0,0 +1,72 @@
+package server;
+
+import akka.actor.ActorSystem;
+import akka.pattern.PatternsCS;
+import akka.stream.ActorMaterializer;
+import akka.stream.javadsl.Source;
+import akka.testkit.javadsl.TestKit;
+import akka.util.ByteString;
+import akka.util.Timeout;
+import device.TemperatureDevice;
+import manager.DeviceManager;
+import manager.DeviceManagerRouter;
+import model.HistoryBucket;
+import model.IngestSummary;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import persistence.EventJournal;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class TemperatureIngestTest {
+
+    private static final Timeout TIMEOUT = Timeout.apply(3, TimeUnit.SECONDS);
+
+    private ActorSystem system;
+    private DeviceManagerRouter deviceManagers;
+
+    @Before
+    public void startSystem() throws Exception {
+        system = ActorSystem.create("temperature-ingest-test");
+        deviceManagers = DeviceManagerRouter.create(system, EventJournal.disabled());
+
+        PatternsCS.ask(deviceManagers.forHome("home"),
+                new DeviceManager.CreateHome("home", Collections.singletonList("device")), TIMEOUT)
+                .toCompletableFuture().get(3, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void stopSystem() {
+        TestKit.shutdownActorSystem(system);
+    }
+
+    @Test
+    public void writesTwoReadingsOfTheSameDeviceOnTheirOwn() throws Exception {
+        final String body = "{\"home\":\"home\",\"device\":\"device\",\"value\":1.0}\n"
+                + "{\"home\":\"home\",\"device\":\"device\",\"value\":2.0}\n";
+
+        IngestSummary summary = new TemperatureIngest(deviceManagers, TIMEOUT)
+                .ingest(Source.single(ByteString.fromString(body)), ActorMaterializer.create(system))
+                .toCompletableFuture().get(3, TimeUnit.SECONDS);
+
+        assertEquals(2, summary.getReadings());
+        assertEquals(0, summary.getRejected());
+        assertEquals(1, summary.getDevicesUpdated());
+
+        //Two points in the history, as two POSTs would have recorded
+        TemperatureDevice.RespondHistory history = (TemperatureDevice.RespondHistory) PatternsCS
+                .ask(deviceManagers.toHome("home"), new DeviceManager.GetDeviceHistory("home", "device",
+                        new TemperatureDevice.ReadHistory(0, Long.MAX_VALUE, Long.MAX_VALUE)), TIMEOUT)
+                .toCompletableFuture().get(3, TimeUnit.SECONDS);
+        List<HistoryBucket> buckets = history.getBuckets();
+
+        assertEquals(1, buckets.size());
+        assertEquals(2, buckets.get(0).getCount());
+        assertEquals(TemperatureDevice.INITIAL_TEMPERATURE + 3.0, buckets.get(0).getMax(), 0.0);
+    }
+}